@@ -61,6 +61,7 @@ public class AnimationController extends Object3D
 
 	public void setActiveInterval(int start, int end)
 	{
+		setDirty();
 		if (start > end)
 			throw new IllegalArgumentException("AnimationController: start > end");
 		
@@ -80,6 +81,7 @@ public class AnimationController extends Object3D
 
 	public void setSpeed(float speed, int worldTime)
 	{
+		setDirty();
 		this.m_speed = speed;
 	}
 
@@ -90,6 +92,7 @@ public class AnimationController extends Object3D
 
 	public void setPosition(float sequenceTime, int worldTime)
 	{
+		setDirty();
 		this.m_sequenceTime = sequenceTime;
 		this.m_worldTime = worldTime;
 	}
@@ -102,6 +105,7 @@ public class AnimationController extends Object3D
 
 	public void setWeight(float weight)
 	{
+		setDirty();
 		if (weight < 0)
 			throw new IllegalArgumentException("weight < 0");
 		this.m_weight = weight;
@@ -167,7 +171,7 @@ public class AnimationController extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
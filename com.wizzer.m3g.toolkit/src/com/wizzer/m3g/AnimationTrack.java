@@ -75,6 +75,7 @@ public class AnimationTrack extends Object3D
 
 	public void setController(AnimationController controller)
 	{
+		setDirty();
 		m_controller = controller;
 	}
 
@@ -169,7 +170,7 @@ public class AnimationTrack extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -197,7 +198,7 @@ public class AnimationTrack extends Object3D
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		m_keyframeSequence.buildReferenceTable(table);
 		if (m_controller != null)
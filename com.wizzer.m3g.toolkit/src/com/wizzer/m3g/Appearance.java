@@ -58,6 +58,7 @@ public class Appearance extends Object3D
 
 	public void setLayer(int layer)
 	{
+		setDirty();
 		if (layer < -63 || layer > 63)
 			throw new IndexOutOfBoundsException("Appearance: layer is not in [-63, 63]");
 		m_layer = layer;
@@ -70,6 +71,7 @@ public class Appearance extends Object3D
 
 	public void setFog(Fog fog)
 	{
+		setDirty();
 		m_fog = fog;
 	}
 
@@ -80,6 +82,7 @@ public class Appearance extends Object3D
 
 	public void setPolygonMode(PolygonMode polygonMode)
 	{
+		setDirty();
 		m_polygonMode = polygonMode;
 	}
 
@@ -90,6 +93,7 @@ public class Appearance extends Object3D
 
 	public void setCompositingMode(CompositingMode compositingMode)
 	{
+		setDirty();
 		m_compositingMode = compositingMode;
 	}
 
@@ -100,6 +104,7 @@ public class Appearance extends Object3D
 
 	public void setTexture(int index,Texture2D texture)
 	{
+		setDirty();
 		m_textures[index] = texture;
 	}
 
@@ -110,6 +115,7 @@ public class Appearance extends Object3D
 
 	public void setMaterial(Material material)
 	{
+		setDirty();
 		m_material = material;
 	}
 
@@ -246,7 +252,7 @@ public class Appearance extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os, table);
 
@@ -316,7 +322,7 @@ public class Appearance extends Object3D
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		if (m_compositingMode != null)
 			m_compositingMode.buildReferenceTable(table);
@@ -76,6 +76,7 @@ public class Background extends Object3D
 
 	public void setColorClearEnable(boolean enable)
 	{
+		setDirty();
 		m_colorClearEnabled = enable;
 	}
 
@@ -86,6 +87,7 @@ public class Background extends Object3D
 
 	public void setDepthClearEnable(boolean enable)
 	{
+		setDirty();
 		m_depthClearEnabled = enable;
 	}
 
@@ -96,6 +98,7 @@ public class Background extends Object3D
 
 	public void setColor(int ARGB)
 	{
+		setDirty();
 		m_color = ARGB;
 	}
 
@@ -106,6 +109,7 @@ public class Background extends Object3D
 
 	public void setImage(Image2D image)
 	{
+		setDirty();
 		if (image != null && image.getFormat() != Image2D.RGB && image.getFormat() != Image2D.RGBA)
 			throw new IllegalArgumentException("Background: image is not in RGB or RGBA format");
 		
@@ -124,6 +128,7 @@ public class Background extends Object3D
 
 	public void setImageMode(int modeX, int modeY)
 	{
+		setDirty();
 		if ((modeX != BORDER && modeX != REPEAT) || 
 			(modeY != BORDER && modeY != REPEAT))
 			throw new IllegalArgumentException("Background: modeX or modeY is not one of the enumerated values");
@@ -144,6 +149,7 @@ public class Background extends Object3D
 
 	public void setCrop(int cropX, int cropY, int width, int height)
 	{
+		setDirty();
 		if (width < 0)
 			throw new IllegalArgumentException("Background: width < 0");
 		if (height < 0)
@@ -240,7 +246,7 @@ public class Background extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -279,7 +285,7 @@ public class Background extends Object3D
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		if (m_image != null)
 			m_image.buildReferenceTable(table);
@@ -0,0 +1,325 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The <code>BatchLoader</code> is a utility for loading many M3G files
+ * concurrently. It is not a runtime construct called out by the M3G
+ * Specification.
+ * <p>
+ * Each requested file is loaded into its own <code>M3GFile</code> on the
+ * loader's executor, and its result is delivered through a
+ * <code>CompletableFuture</code>. Files are started in the order they are
+ * requested, limited both by the number of loads that may run at once and
+ * by a budget of bytes that may be held by the running loads. A file is
+ * charged its size plus the inflated size of its ZLIB sections, which the
+ * load keeps in memory.
+ * </p><p>
+ * The loads share no state: relative external references are resolved
+ * against the location of the file that contains them.
+ * </p>
+ */
+public class BatchLoader
+{
+	// The executor the loads are run on.
+	private Executor m_executor;
+	// The maximum number of loads that may run at once.
+	private int m_maxConcurrency;
+	// The maximum number of bytes the running loads may hold.
+	private long m_memoryBudget;
+	// The flags the files are loaded with.
+	private int m_flags;
+	// The loads that have not been started yet.
+	private LinkedList<Load> m_pending;
+	// The number of running loads.
+	private int m_running;
+	// The number of bytes reserved by the running loads.
+	private long m_reserved;
+
+	/**
+	 * Create a loader that runs up to one load per processor, with no
+	 * memory budget, on the default executor.
+	 */
+	public BatchLoader()
+	{
+		this(null, Runtime.getRuntime().availableProcessors(), Long.MAX_VALUE, M3GFile.LOAD_EAGER);
+	}
+
+	/**
+	 * Create a loader.
+	 * 
+	 * @param executor The executor to run the loads on. If <b>null</b>,
+	 * a virtual thread per load is used when the Java runtime supports
+	 * them, and a pool of daemon threads otherwise.
+	 * @param maxConcurrency The maximum number of loads that may run at once.
+	 * @param memoryBudget The maximum number of bytes the running loads may
+	 * hold, counting the size of each file and the inflated size of its
+	 * ZLIB sections. A file larger than the budget is loaded on its own.
+	 * @param flags A combination of the <code>M3GFile.LOAD_</code> flags.
+	 */
+	public BatchLoader(Executor executor, int maxConcurrency, long memoryBudget, int flags)
+	{
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("BatchLoader: maxConcurrency < 1");
+		if (memoryBudget < 1)
+			throw new IllegalArgumentException("BatchLoader: memoryBudget < 1");
+
+		m_executor = (executor != null) ? executor : createDefaultExecutor();
+		m_maxConcurrency = maxConcurrency;
+		m_memoryBudget = memoryBudget;
+		m_flags = flags;
+		m_pending = new LinkedList<Load>();
+	}
+
+	/**
+	 * Load the M3G file at the specified path.
+	 * 
+	 * @param path The path of the file.
+	 * 
+	 * @return A future completed with the loaded file, or with the
+	 * exception that prevented it from loading, is returned.
+	 */
+	public CompletableFuture<M3GFile> load(Path path)
+	{
+		return submit(new Load(path, null, getLoadedSize(path)));
+	}
+
+	/**
+	 * Load the M3G file at the specified URL.
+	 * <p>
+	 * <code>file:</code> URLs are loaded as paths. Other URLs are read into
+	 * memory; as their size is not known in advance, each is charged an
+	 * equal share of the memory budget.
+	 * </p>
+	 * 
+	 * @param url The URL of the file.
+	 * 
+	 * @return A future completed with the loaded file, or with the
+	 * exception that prevented it from loading, is returned.
+	 */
+	public CompletableFuture<M3GFile> load(URL url)
+	{
+		if ("file".equals(url.getProtocol()))
+		{
+			try
+			{
+				return load(Paths.get(url.toURI()));
+			} catch (URISyntaxException ex)
+			{
+				// Load it as any other URL.
+			} catch (IllegalArgumentException ex)
+			{
+				// Load it as any other URL.
+			}
+		}
+		return submit(new Load(null, url, m_memoryBudget / m_maxConcurrency));
+	}
+
+	/**
+	 * Load the specified M3G files.
+	 * 
+	 * @param sources The files to load, each a <code>Path</code>,
+	 * <code>File</code> or <code>URL</code>.
+	 * 
+	 * @return A future for each file, in the order of the sources, is
+	 * returned.
+	 */
+	public List<CompletableFuture<M3GFile>> loadAll(Collection<?> sources)
+	{
+		ArrayList<CompletableFuture<M3GFile>> futures = new ArrayList<CompletableFuture<M3GFile>>(sources.size());
+		Iterator<?> iter = sources.iterator();
+		while (iter.hasNext())
+		{
+			Object source = iter.next();
+			if (source instanceof Path)
+				futures.add(load((Path)source));
+			else if (source instanceof File)
+				futures.add(load(((File)source).toPath()));
+			else if (source instanceof URL)
+				futures.add(load((URL)source));
+			else
+				throw new IllegalArgumentException("BatchLoader: unsupported source " + source);
+		}
+		return futures;
+	}
+
+	// Queue the specified load and start as many loads as allowed.
+	private CompletableFuture<M3GFile> submit(Load load)
+	{
+		synchronized (this)
+		{
+			m_pending.add(load);
+		}
+		dispatch();
+		return load.m_future;
+	}
+
+	// Start the pending loads, in order, while the concurrency limit
+	// and memory budget allow.
+	private void dispatch()
+	{
+		ArrayList<Load> started = new ArrayList<Load>();
+		synchronized (this)
+		{
+			while ((! m_pending.isEmpty()) && (m_running < m_maxConcurrency))
+			{
+				Load load = m_pending.getFirst();
+				if ((m_running > 0) && (m_reserved + load.m_cost > m_memoryBudget))
+					break;
+				m_pending.removeFirst();
+				m_running++;
+				m_reserved += load.m_cost;
+				started.add(load);
+			}
+		}
+
+		for (int i = 0; i < started.size(); i++)
+		{
+			Load load = started.get(i);
+			try
+			{
+				m_executor.execute(load);
+			} catch (RejectedExecutionException ex)
+			{
+				load.m_future.completeExceptionally(ex);
+				finished(load);
+			}
+		}
+	}
+
+	// Release what the specified load reserved, and start more loads.
+	private void finished(Load load)
+	{
+		synchronized (this)
+		{
+			m_running--;
+			m_reserved -= load.m_cost;
+		}
+		dispatch();
+	}
+
+	// Create the executor used when none is specified.
+	private static Executor createDefaultExecutor()
+	{
+		try
+		{
+			// Executors.newVirtualThreadPerTaskExecutor() is only
+			// available on newer runtimes.
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (Executor)method.invoke(null);
+		} catch (Exception ex)
+		{
+			// The dispatcher limits how many threads are busy at once.
+			return Executors.newCachedThreadPool(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "BatchLoader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	// Get the number of bytes a load of the file holds: the file itself,
+	// and the inflated data of its ZLIB sections.
+	private static long getLoadedSize(Path path)
+	{
+		try
+		{
+			M3GFileInfo info = M3GFile.probe(path);
+			long size = info.getHeaderObject().getTotalFileSize();
+			SectionDescriptor descriptors[] = info.getSectionDescriptors();
+			for (int i = 0; i < descriptors.length; i++)
+			{
+				if (descriptors[i].getCompressionScheme() == Section.ZLIB)
+					size += descriptors[i].getUncompressedLength() & 0xffffffffL;
+			}
+			return size;
+		} catch (IOException ex)
+		{
+			// The load will report the error.
+			return 0;
+		}
+	}
+
+	// A requested file.
+	private class Load implements Runnable
+	{
+		// The path of the file, if it is loaded from a path.
+		Path m_path;
+		// The URL of the file, if it is loaded from a URL.
+		URL m_url;
+		// The number of bytes of the memory budget the load holds.
+		long m_cost;
+		// The result of the load.
+		CompletableFuture<M3GFile> m_future;
+
+		Load(Path path, URL url, long size)
+		{
+			m_path = path;
+			m_url = url;
+			m_cost = Math.min(size, m_memoryBudget);
+			m_future = new CompletableFuture<M3GFile>();
+		}
+
+		public void run()
+		{
+			try
+			{
+				if (m_path != null)
+					m_future.complete(M3GFile.map(m_path, m_flags));
+				else
+				{
+					InputStream is = m_url.openStream();
+					byte data[];
+					try
+					{
+						data = is.readAllBytes();
+					} finally
+					{
+						is.close();
+					}
+					m_future.complete(M3GFile.load(ByteBuffer.wrap(data), new M3GLoadContext().enter(m_url.toURI(), m_flags)));
+				}
+			} catch (Throwable ex)
+			{
+				m_future.completeExceptionally(ex);
+			} finally
+			{
+				finished(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A growable, in-memory channel. A M3G file is written to it when it is
+ * marshalled to a stream that is not backed by a file, so that the length
+ * fields of the sections can be patched before the file is copied to the
+ * stream.
+ */
+class ByteArrayChannel implements SeekableByteChannel
+{
+	// The data written to the channel.
+	private byte m_data[];
+	// The number of bytes of data.
+	private int m_size;
+	// The position of the next byte written.
+	private int m_position;
+	// Flag indicating whether the channel is open.
+	private boolean m_open;
+
+	/**
+	 * Create an empty channel.
+	 * 
+	 * @param capacity The initial capacity of the channel.
+	 */
+	ByteArrayChannel(int capacity)
+	{
+		m_data = new byte[capacity];
+		m_open = true;
+	}
+
+	public int read(ByteBuffer dst) throws IOException
+	{
+		throw new NonReadableChannelException();
+	}
+
+	public int write(ByteBuffer src) throws IOException
+	{
+		ensureOpen();
+		int length = src.remaining();
+		long end = (long)m_position + length;
+		if (end > Integer.MAX_VALUE)
+			throw new IOException("ByteArrayChannel: too large");
+		if (end > m_data.length)
+		{
+			long capacity = Math.max(end, 2L * m_data.length);
+			byte data[] = new byte[(int)Math.min(capacity, Integer.MAX_VALUE)];
+			System.arraycopy(m_data, 0, data, 0, m_size);
+			m_data = data;
+		}
+		src.get(m_data, m_position, length);
+		m_position += length;
+		if (m_position > m_size)
+			m_size = m_position;
+		return length;
+	}
+
+	public long position() throws IOException
+	{
+		ensureOpen();
+		return m_position;
+	}
+
+	public SeekableByteChannel position(long newPosition) throws IOException
+	{
+		ensureOpen();
+		if ((newPosition < 0) || (newPosition > m_size))
+			throw new IllegalArgumentException("ByteArrayChannel: position out of range");
+		m_position = (int)newPosition;
+		return this;
+	}
+
+	public long size() throws IOException
+	{
+		ensureOpen();
+		return m_size;
+	}
+
+	public SeekableByteChannel truncate(long size) throws IOException
+	{
+		ensureOpen();
+		if (size < 0)
+			throw new IllegalArgumentException("ByteArrayChannel: size < 0");
+		if (size < m_size)
+			m_size = (int)size;
+		if (m_position > m_size)
+			m_position = m_size;
+		return this;
+	}
+
+	public boolean isOpen()
+	{
+		return m_open;
+	}
+
+	public void close()
+	{
+		m_open = false;
+	}
+
+	/**
+	 * Copy the data written to the channel to the specified stream.
+	 * 
+	 * @param os The output stream to write to.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the data.
+	 */
+	void writeTo(OutputStream os) throws IOException
+	{
+		os.write(m_data, 0, m_size);
+	}
+
+	private void ensureOpen() throws IOException
+	{
+		if (! m_open)
+			throw new ClosedChannelException();
+	}
+}
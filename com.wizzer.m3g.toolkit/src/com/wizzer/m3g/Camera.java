@@ -60,6 +60,7 @@ public class Camera extends Node
 
 	public void setParallel(float fovy, float aspectRatio, float near, float far)
 	{
+		setDirty();
 		if (fovy <= 0)
 			throw new IllegalArgumentException("Camera: fovy <= 0");
 		if (aspectRatio <= 0)
@@ -74,6 +75,7 @@ public class Camera extends Node
 
 	public void setPerspective(float fovy, float aspectRatio, float near, float far)
 	{
+		setDirty();
 		if (fovy <= 0)
 			throw new IllegalArgumentException("Camera: fovy <= 0");
 		if (aspectRatio <= 0)
@@ -94,6 +96,7 @@ public class Camera extends Node
 
 	public void setGeneric(Transform transform)
 	{
+		setDirty();
 		m_projectionType = GENERIC;
 		m_projectionMatrix = new Transform(transform);
 	}
@@ -183,7 +186,7 @@ public class Camera extends Node
 		else setGeneric(is.readMatrix());
 	}
 
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -78,6 +78,7 @@ public class CompositingMode extends Object3D
 
 	public void setBlending(int mode)
 	{
+		setDirty();
 		if (mode < ALPHA || mode > REPLACE)
 			throw new IllegalArgumentException("CompositingMode: mode is not one of the symbolic constants");
 		
@@ -91,6 +92,7 @@ public class CompositingMode extends Object3D
 
 	public void setAlphaThreshold(float threshold)
 	{
+		setDirty();
 		if (threshold < 0 || threshold > 1)
 			throw new IllegalArgumentException("CompositingMode: threshold is negative or greater than 1.0");
 		
@@ -104,6 +106,7 @@ public class CompositingMode extends Object3D
 
 	public void setAlphaWriteEnable(boolean enable)
 	{
+		setDirty();
 		m_alphaWriteEnabled = enable;
 	}
 
@@ -114,6 +117,7 @@ public class CompositingMode extends Object3D
 
 	public void setColorWriteEnable(boolean enable)
 	{
+		setDirty();
 		m_colorWriteEnabled = enable;
 	}
 
@@ -124,6 +128,7 @@ public class CompositingMode extends Object3D
 
 	public void setDepthWriteEnable(boolean enable)
 	{
+		setDirty();
 		m_depthWriteEnabled = enable;
 	}
 
@@ -134,6 +139,7 @@ public class CompositingMode extends Object3D
 
 	public void setDepthTestEnable(boolean enable)
 	{
+		setDirty();
 		m_depthTestEnabled = enable;
 	}
 
@@ -144,6 +150,7 @@ public class CompositingMode extends Object3D
 
 	public void setDepthOffset(float factor, float units)
 	{
+		setDirty();
 		m_depthOffsetFactor = factor;
 		m_depthOffsetUnits = units;
 	}
@@ -184,7 +191,7 @@ public class CompositingMode extends Object3D
 		setDepthOffset(is.readFloat32(), is.readFloat32());
 	}
 
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 		
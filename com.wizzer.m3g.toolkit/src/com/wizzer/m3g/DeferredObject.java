@@ -0,0 +1,114 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A <code>DeferredObject</code> holds the place of an object in the
+ * reference table until the object is first resolved.
+ * <p>
+ * It records the type of the object and the location of its data in the
+ * inflated Scene Section. The <code>Object3D</code> is only created and
+ * unmarshalled when it is referenced by another object, or when it is
+ * requested from its <code>SceneSection</code>.
+ * </p>
+ */
+class DeferredObject
+{
+	// The cache of referenced objects.
+	private ArrayList m_table;
+	// The index of the object in the reference table.
+	private int m_index;
+	// The type of the object.
+	private int m_type;
+	// The data of the object, released once it has been unmarshalled.
+	private ByteBuffer m_data;
+	// The factory creating the object.
+	private Object3DFactory m_factory;
+	// The unmarshalled object.
+	private Object3D m_object;
+	// Flag indicating whether the object keeps its data once unmarshalled.
+	private boolean m_keepEncoded;
+
+	DeferredObject(ArrayList table, int index, int type, ByteBuffer data, Object3DFactory factory,
+		boolean keepEncoded)
+	{
+		m_table = table;
+		m_index = index;
+		m_type = type;
+		m_data = data;
+		m_factory = factory;
+		m_keepEncoded = keepEncoded;
+	}
+
+	int getObjectType()
+	{
+		return m_type;
+	}
+
+	/**
+	 * Get the object, unmarshalling it the first time it is requested.
+	 * <p>
+	 * The objects it references are resolved as they are read, and the
+	 * object replaces this placeholder in the reference table.
+	 * </p>
+	 * 
+	 * @return The resolved object is returned, or <b>null</b> if its
+	 * factory skipped it.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * reading the data.
+	 */
+	Object3D resolve() throws IOException
+	{
+		// Objects sharing a reference table may be resolved from
+		// any thread.
+		synchronized (m_table)
+		{
+			if (m_data != null)
+			{
+				Object3D object = m_factory.newObject3D(m_type);
+				if ((object != null) && m_keepEncoded)
+				{
+					M3GInputStream is = new M3GInputStream(m_data);
+					ArrayList positions = new ArrayList();
+					is.setObjectIndexPositions(positions);
+					object.unmarshall(is, m_table);
+					object.setEncoded(m_data, positions, m_table);
+				}
+				else if (object != null)
+					object.unmarshall(new M3GInputStream(m_data.duplicate()), m_table);
+				m_table.set(m_index, object);
+				m_object = object;
+				m_data = null;
+				m_factory = null;
+			}
+			return m_object;
+		}
+	}
+}
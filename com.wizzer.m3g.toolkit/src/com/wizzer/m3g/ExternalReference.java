@@ -28,6 +28,7 @@ import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 // Import M3G Toolkit classes.
 import com.wizzer.m3g.toolkit.png.PNGDecoder;
@@ -44,12 +45,21 @@ import com.wizzer.m3g.toolkit.png.PNGDecoder;
  */
 public class ExternalReference extends M3GObject
 {
+	/** The byte budget of the default resource cache. */
+	public static final long DEFAULT_CACHE_BUDGET = 64 * 1024 * 1024;
+
 	// The Uniform Resource Identifier
 	private String m_uri;
 	// The referenced M3GObject.
 	private M3GObject m_reference;
-	// The current working directory.
+	// The context the reference is resolved in.
+	private M3GLoadContext m_context = null;
+	// The referenced object, while it is being resolved in the background.
+	private CompletableFuture<M3GObject> m_future = null;
+	// The current working directory, used when no location is set.
 	private static File g_cwd = null;
+	// The cache of resolved resources, shared by all files.
+	private static volatile ResourceCache g_cache = new LRUResourceCache(DEFAULT_CACHE_BUDGET);
 
 	ExternalReference()
 	{
@@ -83,6 +93,50 @@ public class ExternalReference extends M3GObject
 			g_cwd = dir;
 	}
 
+	/**
+	 * Get the location that a relative URI is resolved against.
+	 * 
+	 * @return The location of the file the reference was read from is
+	 * returned. If it is not known, the current working directory is
+	 * returned, or <b>null</b> if that is not set either.
+	 */
+	public URI getBase()
+	{
+		if ((m_context != null) && (m_context.getURI() != null))
+			return m_context.getURI();
+		else if (g_cwd != null)
+			return g_cwd.toURI();
+		else
+			return null;
+	}
+
+	void setContext(M3GLoadContext context)
+	{
+		m_context = context;
+	}
+
+	/**
+	 * Get the cache that resolved resources are shared through.
+	 * 
+	 * @return The resource cache is returned, or <b>null</b> if
+	 * resources are not cached.
+	 */
+	public static ResourceCache getResourceCache()
+	{
+		return g_cache;
+	}
+
+	/**
+	 * Set the cache that resolved resources are shared through.
+	 * 
+	 * @param cache The resource cache, or <b>null</b> to resolve every
+	 * reference again.
+	 */
+	public static void setResourceCache(ResourceCache cache)
+	{
+		g_cache = cache;
+	}
+
 	public String getURI()
 	{
 		return m_uri;
@@ -100,6 +154,42 @@ public class ExternalReference extends M3GObject
 	
 	public M3GObject getReference()
 	{
+		try
+		{
+			return resolveReference();
+		} catch (IOException ex)
+		{
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Get the referenced object, waiting for it if it is being resolved
+	 * in the background.
+	 * 
+	 * @return The referenced object is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the reference could
+	 * not be resolved.
+	 */
+	synchronized M3GObject resolveReference() throws IOException
+	{
+		if (m_future != null)
+		{
+			try
+			{
+				m_reference = m_future.get();
+			} catch (InterruptedException ex)
+			{
+				throw new InterruptedIOException("ExternalReference: interrupted while resolving " + m_uri);
+			} catch (ExecutionException ex)
+			{
+				if (ex.getCause() instanceof IOException)
+					throw (IOException)ex.getCause();
+				throw new IOException("ExternalReference: " + ex.getCause());
+			}
+			m_future = null;
+		}
 		return m_reference;
 	}
 
@@ -110,38 +200,23 @@ public class ExternalReference extends M3GObject
 		// If the uri is a PNG file, create an Image2D object.
 		// else, if the URI is a M3G file, create a sub-graph,
 		// else, throw an IO exception.
-		try
-		{
-			URI uri = new URI(m_uri);
-			if (uri.getScheme() == null)
-			{
-				// Not a complete URL, attempt to qualify location using cwd.
-				if (getCwd() != null)
-				{
-					URI path = getCwd().toURI();
-					uri = path.resolve(uri);
-				}
-			}
-			m_reference = resolvePNG(uri.normalize());
-			if (m_reference == null)
-			{
-				// Attempt to open reference as another M3G file.
-				throw new IOException("ExternalReference: external M3G file not implemented");
-			} else return;
-		} catch (URISyntaxException ex)
-		{
-			throw new IOException(ex.getMessage());
-		}
-		
-		//throw new IOException("Invalid external reference.");
+		M3GLoadContext context = m_context;
+		if (context == null)
+			context = new M3GLoadContext().enter(null, M3GFile.LOAD_EAGER);
+		URI uri = context.qualify(m_uri);
+		if (context.getExecutor() == null)
+			m_reference = context.resolve(uri);
+		else
+			// Resolve the reference while the rest of the file is read.
+			m_future = context.resolveAsync(uri);
 	}
 
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		os.writeString(m_uri);
 	}
 
-	private Image2D resolvePNG(URI uri)
+	static Image2D resolvePNG(URI uri)
 	{
 		Image2D image2D = null;
 
@@ -153,14 +228,7 @@ public class ExternalReference extends M3GObject
 				URL url = new URL(uri.toString());
 	
 				InputStream is = url.openStream();
-				BufferedImage image = PNGDecoder.decode(is);
-				int imageType = Image2D.RGB;
-				if (image.getType() == BufferedImage.TYPE_INT_RGB)
-					imageType = Image2D.RGB;
-				else if (image.getType() == BufferedImage.TYPE_INT_ARGB)
-					// XXX - PNG file is an ARGB format, we need an RGBA format.
-					imageType = Image2D.RGBA;
-				image2D = new Image2D(imageType, image);
+				image2D = resolvePNG(is);
 			} catch (IOException ex) {}
 		} else
 		{
@@ -172,14 +240,7 @@ public class ExternalReference extends M3GObject
 				try
 				{
 					FileInputStream is = new FileInputStream(file);
-					BufferedImage image = PNGDecoder.decode(is);
-					int imageType = Image2D.RGB;
-					if (image.getType() == BufferedImage.TYPE_INT_RGB)
-						imageType = Image2D.RGB;
-					else if (image.getType() == BufferedImage.TYPE_INT_ARGB)
-						// XXX - PNG file is an ARGB format, we need an RGBA format.
-						imageType = Image2D.RGBA;
-					image2D = new Image2D(imageType, image);
+					image2D = resolvePNG(is);
 				} catch (FileNotFoundException ex) {
 				} catch (IOException ex) {}
 			}
@@ -187,4 +248,17 @@ public class ExternalReference extends M3GObject
 		
 		return image2D;
 	}
+
+	// Decode a PNG image from the specified stream.
+	static Image2D resolvePNG(InputStream is) throws IOException
+	{
+		BufferedImage image = PNGDecoder.decode(is);
+		int imageType = Image2D.RGB;
+		if (image.getType() == BufferedImage.TYPE_INT_RGB)
+			imageType = Image2D.RGB;
+		else if (image.getType() == BufferedImage.TYPE_INT_ARGB)
+			// XXX - PNG file is an ARGB format, we need an RGBA format.
+			imageType = Image2D.RGBA;
+		return new Image2D(imageType, image);
+	}
 }
@@ -40,6 +40,8 @@ import java.util.*;
 public class ExternalReferencesSection extends Section
 {
 	private ArrayList<ExternalReference> m_externalReferences;
+	// The context references are resolved in.
+	private M3GLoadContext m_context;
 
 	public ExternalReferencesSection()
 	{
@@ -71,6 +73,23 @@ public class ExternalReferencesSection extends Section
 		return m_externalReferences.size();
 	}
 
+	void setContext(M3GLoadContext context)
+	{
+		m_context = context;
+	}
+
+	/**
+	 * Wait for the references being resolved in the background.
+	 * 
+	 * @throws IOException This exception is thrown if a reference could
+	 * not be resolved.
+	 */
+	void awaitReferences() throws IOException
+	{
+		for (int i = 0; i < m_externalReferences.size(); i++)
+			m_externalReferences.get(i).resolveReference();
+	}
+
 	/**
 	 * Read external object references.
 	 * 
@@ -90,6 +109,7 @@ public class ExternalReferencesSection extends Section
 				throw new IOException("ExternalReferencesSection:type = " + type);
 			long length = is.readUInt32();
 			ExternalReference reference = new ExternalReference();
+			reference.setContext(m_context);
 			reference.unmarshall(is, table);
 			m_externalReferences.add(reference);
 			table.add(reference);
@@ -105,7 +125,7 @@ public class ExternalReferencesSection extends Section
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void writeObjects(M3GOutputStream os, ArrayList table) throws IOException
+	protected void writeObjects(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		ExternalReference references[] = getExternalReferences();
 		for (int i = 0; i < references.length; i++)
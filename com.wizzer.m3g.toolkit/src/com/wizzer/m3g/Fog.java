@@ -68,6 +68,7 @@ public class Fog extends Object3D
 
 	public void setMode(int mode)
 	{
+		setDirty();
 		if (mode != LINEAR && mode != EXPONENTIAL)
 			throw new IllegalArgumentException("Fog: mode is not LINEAR or EXPONENTIAL");
 		
@@ -81,6 +82,7 @@ public class Fog extends Object3D
 
 	public void setLinear(float near,float far)
 	{
+		setDirty();
 		m_nearDistance = near;
 		m_farDistance = far;
 	}
@@ -97,6 +99,7 @@ public class Fog extends Object3D
 
 	public void setDensity(float density)
 	{
+		setDirty();
 		if (density < 0)
 			throw new IllegalArgumentException("Fog: density < 0");
 		
@@ -110,6 +113,7 @@ public class Fog extends Object3D
 
 	public void setColor(int RGB)
 	{
+		setDirty();
 		m_color = RGB;
 	}
 
@@ -142,7 +146,7 @@ public class Fog extends Object3D
 		else setDensity(is.readFloat32());
 	}
 
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -48,6 +48,7 @@ public class Group extends Node
 
     public void addChild(Node child)
 	{
+		setDirty();
     	if (child == null)
     		throw new NullPointerException("Group: child is null");
 		if (child == this)
@@ -73,6 +74,7 @@ public class Group extends Node
 
 	public void removeChild(Node child)
 	{
+		setDirty();
 		// TODO: IllegalArgumentException - if removing child would break a connection
 		// between a SkinnedMesh node and one of its transform references.
 		if (m_children.remove(child))
@@ -154,7 +156,7 @@ public class Group extends Node
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -176,7 +178,7 @@ public class Group extends Node
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		for (int i = 0; i < getChildCount(); i++)
 			getChild(i).buildReferenceTable(table);
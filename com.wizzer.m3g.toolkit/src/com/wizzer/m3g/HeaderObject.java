@@ -146,7 +146,7 @@ public class HeaderObject extends M3GObject
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		os.writeByte(m_versionMajor);
 		os.writeByte(m_versionMinor);
@@ -81,7 +81,7 @@ public class HeaderSection extends Section
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void writeObjects(M3GOutputStream os, ArrayList table) throws IOException
+	protected void writeObjects(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		os.writeByte(M3GObject.HEADER);
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
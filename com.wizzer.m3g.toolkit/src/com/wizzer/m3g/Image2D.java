@@ -56,6 +56,8 @@ public class Image2D extends Object3D
 	private byte m_image[];
 	// The palette image.
 	private byte m_palette[];
+	// Flag indicating whether the palette and pixels are skipped when read.
+	private boolean m_skipPixels;
 
     ////////// Methods part of M3G Specification //////////
 	
@@ -151,6 +153,7 @@ public class Image2D extends Object3D
 
 	public void set(int x, int y, int width, int height, byte image[])
 	{
+		setDirty();
 		if (image == null)
 			throw new NullPointerException("Image2D: image is null");
 		if (! m_mutable)
@@ -199,8 +202,20 @@ public class Image2D extends Object3D
 
 	Image2D() {}
 
+	/**
+	 * Set whether the palette and pixels of the image are skipped when
+	 * it is read, leaving only its format and size.
+	 * 
+	 * @param skip <b>true</b> to skip the palette and pixels.
+	 */
+	void setSkipPixels(boolean skip)
+	{
+		m_skipPixels = skip;
+	}
+
 	public void setFormat(int format)
 	{
+		setDirty();
 		if (format < ALPHA || format > RGBA)
 			throw new IllegalArgumentException("Image2D: format is not one of the symbolic constants");
 		m_format = format;
@@ -209,6 +224,7 @@ public class Image2D extends Object3D
 
 	public void setImage(BufferedImage image)
 	{
+		setDirty();
 		if (isMutable())
 			throw new IllegalStateException("Image2D: this image is mutable");
 		int bpp = 1;
@@ -393,6 +409,13 @@ public class Image2D extends Object3D
 		m_width = (int)is.readUInt32();
 		// Read hdight
 		m_height = (int)is.readUInt32();
+		if (! m_mutable && m_skipPixels)
+		{
+			// Skip palette and pixels
+			skip(is, is.readUInt32());
+			skip(is, is.readUInt32());
+			return;
+		}
 		if (! m_mutable)
 		{
 			// Read palette
@@ -407,6 +430,13 @@ public class Image2D extends Object3D
 		m_nativeImage = createNativeImage();
 	}
 
+	// Skip the specified number of bytes of field data.
+	private static void skip(M3GInputStream is, long length) throws IOException
+	{
+		if (is.skip(length) != length)
+			throw new EOFException("Image2D: unexpected end of data");
+	}
+
 	/**
 	 * Write field data.
 	 * 
@@ -416,7 +446,7 @@ public class Image2D extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -428,6 +458,8 @@ public class Image2D extends Object3D
 		os.writeUInt32(m_width);
 		// Write height
 		os.writeUInt32(m_height);
+		if (! m_mutable && m_skipPixels)
+			throw new IOException("Image2D: pixels were not read");
 		if (! m_mutable)
 		{
 			// Write palette
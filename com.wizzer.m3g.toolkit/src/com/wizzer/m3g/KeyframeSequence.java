@@ -84,6 +84,7 @@ public class KeyframeSequence extends Object3D
 
 	public void setKeyframe(int index, int time, float value[])
 	{
+		setDirty();
 		if (value.length < m_componentCount)
 			throw new IllegalArgumentException("KeyframeSequence: value.length <  numComponents");
 		if (time < 0)
@@ -95,6 +96,7 @@ public class KeyframeSequence extends Object3D
 
 	public void setValidRange(int first, int last)
 	{
+		setDirty();
 		if (first < 0 || first >= m_keyframeCount)
 			throw new IllegalArgumentException("KeyframeSequence: (first < 0) || (first >= numKeyframes)");
 		if (last < 0 || last >= m_keyframeCount)
@@ -106,6 +108,7 @@ public class KeyframeSequence extends Object3D
 
 	public void setDuration(int duration)
 	{
+		setDirty();
 		if (duration <= 0)
 			throw new IllegalArgumentException("KeyframeSequence: duration <= 0");
 		
@@ -119,6 +122,7 @@ public class KeyframeSequence extends Object3D
 
 	public void setRepeatMode(int mode)
 	{
+		setDirty();
 		if (mode != CONSTANT && mode != LOOP)
 			throw new IllegalArgumentException("KeyframeSequence: mode is not one of CONSTANT, LOOP");
 		
@@ -245,7 +249,7 @@ public class KeyframeSequence extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
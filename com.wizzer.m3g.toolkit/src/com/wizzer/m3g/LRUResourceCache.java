@@ -0,0 +1,252 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The <code>LRUResourceCache</code> is a <code>ResourceCache</code> holding
+ * up to a budget of bytes of resources. When the budget is exceeded, the
+ * least recently used resources are evicted.
+ * <p>
+ * A request for a URI that is already being loaded waits for that load
+ * rather than starting another. Such a request is counted as a hit.
+ * Resources that could not be resolved are not cached.
+ * </p>
+ */
+public class LRUResourceCache implements ResourceCache
+{
+	/** The size charged for a resource whose size is not known. */
+	public static final long DEFAULT_RESOURCE_SIZE = 4096;
+
+	// The maximum number of bytes of cached resources.
+	private long m_budget;
+	// The number of bytes of cached resources.
+	private long m_size;
+	// The cached resources, in least recently used order.
+	private LinkedHashMap<URI, Entry> m_entries;
+	// The loads in progress.
+	private HashMap<URI, CompletableFuture<M3GObject>> m_loading;
+	// The number of requests served from the cache.
+	private long m_hits;
+	// The number of requests that loaded the resource.
+	private long m_misses;
+
+	/**
+	 * Create a cache.
+	 * 
+	 * @param budget The maximum number of bytes of cached resources.
+	 */
+	public LRUResourceCache(long budget)
+	{
+		if (budget < 0)
+			throw new IllegalArgumentException("LRUResourceCache: budget < 0");
+		m_budget = budget;
+		m_entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true);
+		m_loading = new HashMap<URI, CompletableFuture<M3GObject>>();
+	}
+
+	public M3GObject get(URI uri, Resolver resolver) throws IOException
+	{
+		URI key = uri.normalize();
+		CompletableFuture<M3GObject> future;
+		synchronized (this)
+		{
+			Entry entry = m_entries.get(key);
+			if (entry != null)
+			{
+				m_hits++;
+				return entry.m_object;
+			}
+			future = m_loading.get(key);
+			if (future != null)
+				m_hits++;
+			else
+			{
+				m_misses++;
+				future = new CompletableFuture<M3GObject>();
+				m_loading.put(key, future);
+				future = null;
+			}
+		}
+
+		if (future != null)
+			return await(future);
+		return load(key, resolver);
+	}
+
+	// Load the resource on the calling thread and publish it to the
+	// requests waiting for it. The load is always completed, so that
+	// those requests do not wait forever, whatever the resolver throws.
+	private M3GObject load(URI key, Resolver resolver) throws IOException
+	{
+		M3GObject object = null;
+		Throwable failure = null;
+		try
+		{
+			object = resolver.resolve(key);
+			return object;
+		} catch (Throwable ex)
+		{
+			failure = ex;
+			throw ex;
+		} finally
+		{
+			CompletableFuture<M3GObject> future;
+			synchronized (this)
+			{
+				future = m_loading.remove(key);
+				if ((failure == null) && (object != null))
+					put(key, object);
+			}
+			if (failure != null)
+				future.completeExceptionally(failure);
+			else
+				future.complete(object);
+		}
+	}
+
+	// Wait for a load started by another request.
+	private static M3GObject await(CompletableFuture<M3GObject> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		} catch (InterruptedException ex)
+		{
+			throw new InterruptedIOException("LRUResourceCache: interrupted while loading");
+		} catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException)ex.getCause();
+			throw new IOException("LRUResourceCache: unable to load", ex.getCause());
+		}
+	}
+
+	// Cache the specified resource, evicting the least recently used
+	// resources to stay within the budget.
+	private void put(URI key, M3GObject object)
+	{
+		long size = sizeOf(object);
+		if (size > m_budget)
+			return;
+		Entry old = m_entries.put(key, new Entry(object, size));
+		if (old != null)
+			m_size -= old.m_size;
+		m_size += size;
+
+		Iterator<Entry> iter = m_entries.values().iterator();
+		while (m_size > m_budget)
+		{
+			m_size -= iter.next().m_size;
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Get the number of bytes the specified resource is charged against
+	 * the budget.
+	 * 
+	 * @param object The resource.
+	 * 
+	 * @return The size of the pixels of an image is returned. For other
+	 * resources, <code>DEFAULT_RESOURCE_SIZE</code> is returned.
+	 */
+	protected long sizeOf(M3GObject object)
+	{
+		if (object instanceof Image2D)
+		{
+			Image2D image = (Image2D)object;
+			int bpp;
+			switch (image.getFormat())
+			{
+				case Image2D.ALPHA:
+				case Image2D.LUMINANCE:
+					bpp = 1;
+					break;
+				case Image2D.LUMINANCE_ALPHA:
+					bpp = 2;
+					break;
+				case Image2D.RGB:
+					bpp = 3;
+					break;
+				default:
+					bpp = 4;
+			}
+			return (long)image.getWidth() * image.getHeight() * bpp;
+		}
+		return DEFAULT_RESOURCE_SIZE;
+	}
+
+	/**
+	 * Remove all the cached resources. The hit and miss counts are kept.
+	 */
+	public synchronized void clear()
+	{
+		m_entries.clear();
+		m_size = 0;
+	}
+
+	public synchronized long getHitCount()
+	{
+		return m_hits;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return m_misses;
+	}
+
+	public synchronized long getSize()
+	{
+		return m_size;
+	}
+
+	public long getBudget()
+	{
+		return m_budget;
+	}
+
+	public synchronized int getResourceCount()
+	{
+		return m_entries.size();
+	}
+
+	// A cached resource.
+	private static class Entry
+	{
+		M3GObject m_object;
+		long m_size;
+
+		Entry(M3GObject object, long size)
+		{
+			m_object = object;
+			m_size = size;
+		}
+	}
+}
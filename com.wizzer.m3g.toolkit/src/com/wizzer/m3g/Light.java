@@ -81,6 +81,7 @@ public class Light extends Node
 
 	public void setMode(int mode)
 	{
+		setDirty();
 		if (mode < AMBIENT | mode > SPOT)
 			throw new IllegalArgumentException("Light: mode is not one of AMBIENT, DIRECTIONAL, OMNI, SPOT");
 
@@ -94,6 +95,7 @@ public class Light extends Node
 
 	public void setIntensity(float intensity)
 	{
+		setDirty();
 		m_intensity = intensity;
 	}
 
@@ -104,6 +106,7 @@ public class Light extends Node
 
 	public void setColor(int RGB)
 	{
+		setDirty();
 		m_color = RGB;
 	}
 
@@ -114,6 +117,7 @@ public class Light extends Node
 
 	public void setSpotAngle(float angle)
 	{
+		setDirty();
 		if (angle < 0 || angle > 90)
 			throw new IllegalArgumentException("Light: angle is not in [0, 90]");
 		
@@ -127,6 +131,7 @@ public class Light extends Node
 
 	public void setSpotExponent(float exponent)
 	{
+		setDirty();
 		if (exponent < 0 || exponent > 128)
 			throw new IllegalArgumentException("Light: exponent is not in [0, 128]");
 		
@@ -141,6 +146,7 @@ public class Light extends Node
 
 	public void setAttenuation(float constant,float linear,float quadratic)
 	{
+		setDirty();
 		if (constant < 0 || linear < 0 || quadratic < 0)
 			throw new IllegalArgumentException("Light: any of the parameter values are negative");
 		if (constant == 0 && linear == 0 && quadratic == 0)
@@ -191,7 +197,7 @@ public class Light extends Node
 		setSpotExponent(is.readFloat32());
 	}
 
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
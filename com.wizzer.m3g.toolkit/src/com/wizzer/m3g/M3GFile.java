@@ -25,7 +25,15 @@ package com.wizzer.m3g;
 
 // Import standard Java classes.
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
 
 /**
  * The <code>M3GFile</code> class manages file I/O for the Mobile 3D Graphics
@@ -38,21 +46,80 @@ public class M3GFile
 	/** The file identifier for the M3G file. */
 	public static final byte FILE_IDENTIFIER[]={(byte)0xAB,0x4A,0x53,0x52,0x31,0x38,0x34,(byte)0xBB,0x0D,0x0A,0x1A,0x0A};
 
+	/** Load flag: load every section when the file is opened. */
+	public static final int LOAD_EAGER              = 0x00;
+	/**
+	 * Load flag: only index the Scene Sections when the file is opened;
+	 * each one is inflated and unmarshalled when it is first accessed.
+	 */
+	public static final int LOAD_LAZY_SECTIONS      = 0x01;
+	/**
+	 * Load flag: when several Scene Sections are loaded at once, inflate and
+	 * checksum them concurrently before reading their objects in file order.
+	 */
+	public static final int LOAD_PARALLEL_INFLATE   = 0x02;
+	/**
+	 * Load flag specifying that the objects of a Scene Section are only
+	 * indexed when the section is read, and unmarshalled when first
+	 * referenced or requested from their <code>SceneSection</code>.
+	 */
+	public static final int LOAD_LAZY_OBJECTS       = 0x04;
+	/**
+	 * Load flag specifying that objects keep the encoded fields they are
+	 * read from, so that an object that is unchanged when the file is
+	 * written again is copied rather than marshalled. This keeps the data
+	 * of the Scene Sections in memory, and is only worth it for files
+	 * that are saved again.
+	 */
+	public static final int LOAD_KEEP_ENCODED       = 0x08;
+
+	// The initial capacity of the buffer a file written to a stream is
+	// patched in.
+	private static final int BUFFER_CAPACITY = 65536;
+
 	// The Header Section.
 	private HeaderSection m_headerSection;
 	// The External References Section.
 	private ExternalReferencesSection m_externalReferencesSection;
-	// The collection of Scene Sections.
+	// The collection of loaded Scene Sections.
 	private ArrayList m_sceneSections;
+	// The descriptors of all the sections read from the file.
+	private ArrayList<SectionDescriptor> m_sectionDescriptors;
+	// The descriptors of the Scene Sections that have not been loaded yet.
+	private LinkedList<SectionDescriptor> m_pendingSections;
+	// The file data the pending Scene Sections are loaded from.
+	private ByteBuffer m_source;
+	// The cache of referenced objects, kept while sections are pending.
+	private ArrayList m_table;
+	// The flags the file was loaded with.
+	private int m_flags;
 	
 	// The "current" working directory for this M3G file.
 	private String m_cwd = null;
+	// The context the file is loaded with.
+	private M3GLoadContext m_context = null;
+	// The level ZLIB sections are compressed with by default.
+	private int m_compressionLevel = Deflater.BEST_COMPRESSION;
+	// The strategy ZLIB sections are compressed with by default.
+	private int m_compressionStrategy = Deflater.DEFAULT_STRATEGY;
+	// The size below which ZLIB sections are written uncompressed.
+	private int m_compressionThreshold = 0;
+	// The policy choosing the encoding vertex arrays are written with.
+	private int m_vertexEncodingPolicy = VertexArray.ENCODING_ESTIMATE;
+	// The pool stripification trials run on, or null.
+	private ForkJoinPool m_stripificationPool = ForkJoinPool.commonPool();
+	// The time stripification may take per array, in milliseconds, or 0.
+	private long m_stripificationTimeBudget = 0;
+	// The executor sections are deflated on, or null.
+	private Executor m_compressionExecutor = null;
 
 	public M3GFile()
 	{
 		m_headerSection = new HeaderSection();
 		m_externalReferencesSection = new ExternalReferencesSection();
 		m_sceneSections = new ArrayList();
+		m_sectionDescriptors = new ArrayList<SectionDescriptor>();
+		m_pendingSections = new LinkedList<SectionDescriptor>();
 		
 		// Set the current working directory.
 		m_cwd = System.getProperty("user.dir");
@@ -60,40 +127,388 @@ public class M3GFile
 
 	public M3GFile(File file) throws IOException
 	{
-		m_headerSection = new HeaderSection();
-		m_externalReferencesSection = new ExternalReferencesSection();
-		m_sceneSections = new ArrayList();
-		
-		ArrayList table = new ArrayList();
-		table.add(Boolean.FALSE);
+		this();
 		
 		// Set the current working directory.
 		m_cwd = file.getAbsolutePath();
 		m_cwd = m_cwd.substring(0,m_cwd.lastIndexOf(System.getProperty("file.separator")));
 
-		// Set the current working directory for external references.
-		// This must be done for URIs that are not URLs.
-		ExternalReference.setCwd(m_cwd);
-
+		m_context = new M3GLoadContext().enter(file.toURI(), LOAD_EAGER);
 		M3GInputStream is = new M3GInputStream(new FileInputStream(file));
+		try
+		{
+			unmarshall(is, null, LOAD_EAGER);
+		} finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * Load a M3G file by memory-mapping it.
+	 * <p>
+	 * The sections are parsed directly from the mapped buffer. Uncompressed
+	 * sections are decoded in place and compressed sections are inflated
+	 * straight from the mapping, without an intermediate stream or copy.
+	 * </p>
+	 * 
+	 * @param path The path of the file to load.
+	 * 
+	 * @return The loaded <code>M3GFile</code> is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the file can not be
+	 * mapped or is not a valid M3G file.
+	 */
+	public static M3GFile map(Path path) throws IOException
+	{
+		return map(path, LOAD_EAGER);
+	}
+
+	/**
+	 * Load a M3G file by memory-mapping it, using the specified load flags.
+	 * <p>
+	 * The Header Section and External References Section are always loaded.
+	 * If <code>LOAD_LAZY_SECTIONS</code> is specified, the Scene Sections are
+	 * only indexed; a Scene Section is inflated and unmarshalled the first time
+	 * it, or a section following it, is accessed.
+	 * </p><p>
+	 * If <code>LOAD_PARALLEL_INFLATE</code> is specified, the section headers
+	 * are scanned first and the Scene Sections being loaded are inflated and
+	 * checksummed concurrently on the common <code>ForkJoinPool</code>. Their
+	 * objects are then unmarshalled in file order against the shared reference
+	 * table, so the result is identical to a sequential load.
+	 * </p><p>
+	 * If <code>LOAD_LAZY_OBJECTS</code> is specified, only the type and
+	 * location of each object are recorded when a Scene Section is read.
+	 * Objects are unmarshalled the first time they are referenced by another
+	 * object or requested with <code>SceneSection.getObject3D(int)</code>,
+	 * so the data of objects that are never used is never decoded.
+	 * </p><p>
+	 * If <code>LOAD_KEEP_ENCODED</code> is specified, each object keeps
+	 * the encoded fields it was read from, and is copied rather than
+	 * marshalled when the file is written again, until it is changed.
+	 * </p>
+	 * 
+	 * @param path The path of the file to load.
+	 * @param flags A combination of the <code>LOAD_</code> flags.
+	 * 
+	 * @return The loaded <code>M3GFile</code> is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the file can not be
+	 * mapped or is not a valid M3G file.
+	 */
+	public static M3GFile map(Path path, int flags) throws IOException
+	{
+		return map(path, flags, new M3GLoadContext());
+	}
+
+	/**
+	 * Load a M3G file by memory-mapping it, using the specified load flags
+	 * and context.
+	 * <p>
+	 * External references are resolved through the resource cache of the
+	 * context. Referenced M3G files are loaded with the same flags, and if
+	 * the context has an executor, they are loaded on it while the Scene
+	 * Sections of this file are read.
+	 * </p>
+	 * 
+	 * @param path The path of the file to load.
+	 * @param flags A combination of the <code>LOAD_</code> flags.
+	 * @param context The context to load the file with.
+	 * 
+	 * @return The loaded <code>M3GFile</code> is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the file can not be
+	 * mapped, is not a valid M3G file, or one of its external references
+	 * can not be resolved.
+	 */
+	public static M3GFile map(Path path, int flags, M3GLoadContext context) throws IOException
+	{
+		M3GFile m3gFile = new M3GFile();
+		m3gFile.m_context = context.enter(path.toUri(), flags);
+
+		// Set the current working directory.
+		Path dir = path.toAbsolutePath().getParent();
+		m3gFile.setCwd(dir.toString());
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("M3GFile: file too large to map");
+			// The mapping remains valid after the channel is closed.
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			m3gFile.unmarshall(new M3GInputStream(buffer), buffer, flags);
+		} finally
+		{
+			channel.close();
+		}
+		return m3gFile;
+	}
+
+	/**
+	 * Read the metadata of a M3G file without loading its objects.
+	 * <p>
+	 * Only the Header Section is read and unmarshalled. The location and
+	 * encoding of every other section is read from its first bytes, and
+	 * its data is skipped without being read, inflated or checksummed.
+	 * </p>
+	 * 
+	 * @param path The path of the file to probe.
+	 * 
+	 * @return The header object and section descriptors of the file are
+	 * returned.
+	 * 
+	 * @throws IOException This exception is thrown if the file can not be
+	 * read, or does not start with a valid M3G header.
+	 */
+	public static M3GFileInfo probe(Path path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try
+		{
+			long size = channel.size();
+			ByteBuffer head = ByteBuffer.allocate(FILE_IDENTIFIER.length);
+			readFully(channel, head, 0);
+			if (! Arrays.equals(head.array(),FILE_IDENTIFIER))
+				throw new IOException("M3GFile: FILE_IDENTIFIER");
+
+			ArrayList<SectionDescriptor> descriptors = new ArrayList<SectionDescriptor>();
+			HeaderSection headerSection = new HeaderSection();
+			long offset = FILE_IDENTIFIER.length;
+			head = ByteBuffer.allocate(9);
+			head.order(ByteOrder.LITTLE_ENDIAN);
+			while (offset < size)
+			{
+				head.clear();
+				readFully(channel, head, offset);
+				int compressionScheme = head.get(0) & 0xff;
+				int totalSectionLength = head.getInt(1);
+				int uncompressedLength = head.getInt(5);
+				if ((totalSectionLength < 13) || (offset + totalSectionLength > size))
+					throw new IOException("M3GFile: invalid section at offset " + offset);
+
+				if (descriptors.isEmpty())
+				{
+					// Read the Header Section.
+					ByteBuffer data = ByteBuffer.allocate(totalSectionLength);
+					readFully(channel, data, offset);
+					data.flip();
+					headerSection.unmarshall(new M3GInputStream(data), new ArrayList());
+				}
+				descriptors.add(new SectionDescriptor(offset, compressionScheme, totalSectionLength, uncompressedLength));
+				offset += totalSectionLength;
+			}
+			if (descriptors.isEmpty())
+				throw new IOException("M3GFile: no Header Section");
+
+			return new M3GFileInfo(headerSection.getHeaderObject(),
+				descriptors.toArray(new SectionDescriptor[descriptors.size()]));
+		} finally
+		{
+			channel.close();
+		}
+	}
+
+	// Fill the specified buffer from the channel, starting at the
+	// specified file position.
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int n = channel.read(buffer, position);
+			if (n < 0)
+				throw new EOFException("M3GFile: unexpected end of file");
+			position += n;
+		}
+	}
+
+	// Load the M3G file held in the specified buffer, which starts at the
+	// file identifier, with the context created for it.
+	static M3GFile load(ByteBuffer data, M3GLoadContext context) throws IOException
+	{
+		M3GFile m3gFile = new M3GFile();
+		m3gFile.m_context = context;
+		m3gFile.unmarshall(new M3GInputStream(data), data, context.getFlags());
+		return m3gFile;
+	}
+
+	// Read the sections of the file from the specified stream. If the
+	// source buffer of the stream is given, Scene Sections may be deferred.
+	private void unmarshall(M3GInputStream is, ByteBuffer source, int flags) throws IOException
+	{
+		ArrayList table = new ArrayList();
+		table.add(Boolean.FALSE);
+		m_flags = flags;
+
 		// File Identifier.
 		byte id[] = new byte[FILE_IDENTIFIER.length];
 		is.read(id);
 		if (! Arrays.equals(id,FILE_IDENTIFIER))
 			throw new IOException("M3GFile: FILE_IDENTIFIER");
 		// Header Section.
+		long offset = is.getPosition();
 		m_headerSection.unmarshall(is,table);
+		m_sectionDescriptors.add(new SectionDescriptor(offset, m_headerSection));
 		// External References Section.
 		if (m_headerSection.getHeaderObject().isHasExternalReferences())
+		{
+			// Resolve references in the context of this file rather than
+			// any process-wide state.
+			if (m_context == null)
+				m_context = new M3GLoadContext().enter(null, flags);
+			m_externalReferencesSection.setContext(m_context);
+			offset = is.getPosition();
 			m_externalReferencesSection.unmarshall(is, table);
+			m_sectionDescriptors.add(new SectionDescriptor(offset, m_externalReferencesSection));
+		}
 		// Scene Sections.
-		while (is.available() > 0)
+		if ((source != null) && ((flags & (LOAD_LAZY_SECTIONS | LOAD_PARALLEL_INFLATE)) != 0))
+		{
+			while (is.available() > 0)
+			{
+				SectionDescriptor descriptor = readSectionDescriptor(is);
+				m_sectionDescriptors.add(descriptor);
+				m_pendingSections.add(descriptor);
+			}
+			if (! m_pendingSections.isEmpty())
+			{
+				m_source = source;
+				m_table = table;
+			}
+			if ((flags & LOAD_LAZY_SECTIONS) == 0)
+				loadSceneSections(Integer.MAX_VALUE);
+		}
+		else
 		{
-			SceneSection scene = new SceneSection();
-			scene.unmarshall(is, table);
+			while (is.available() > 0)
+			{
+				offset = is.getPosition();
+				SceneSection scene = newSceneSection();
+				scene.unmarshall(is, table);
+				m_sceneSections.add(scene);
+				m_sectionDescriptors.add(new SectionDescriptor(offset, scene));
+			}
+		}
+
+		// Wait for the references no object has asked for yet, so that
+		// errors resolving them are reported by the load.
+		m_externalReferencesSection.awaitReferences();
+	}
+
+	// Read the fields of the next section and skip past its data.
+	private static SectionDescriptor readSectionDescriptor(M3GInputStream is) throws IOException
+	{
+		long offset = is.getPosition();
+		int compressionScheme = is.readByte();
+		int totalSectionLength = (int)is.readUInt32();
+		int uncompressedLength = (int)is.readUInt32();
+		if (totalSectionLength < 13)
+			throw new IOException("M3GFile: totalSectionLength = " + totalSectionLength);
+		long skip = totalSectionLength - 9;
+		if (is.skip(skip) != skip)
+			throw new IOException("M3GFile: truncated section at offset " + offset);
+		return new SectionDescriptor(offset, compressionScheme, totalSectionLength, uncompressedLength);
+	}
+
+	// Load the pending Scene Sections until there are at least the
+	// specified number of loaded sections.
+	private void loadSceneSections(int count) throws IOException
+	{
+		int n = Math.min(count - m_sceneSections.size(), m_pendingSections.size());
+		if (((m_flags & LOAD_PARALLEL_INFLATE) != 0) && (n > 1))
+			inflateSceneSections(n);
+
+		while ((m_sceneSections.size() < count) && (! m_pendingSections.isEmpty()))
+		{
+			SceneSection scene = newSceneSection();
+			scene.unmarshall(new M3GInputStream(getSectionData(m_pendingSections.getFirst())), m_table);
 			m_sceneSections.add(scene);
+			m_pendingSections.removeFirst();
+		}
+
+		if (m_pendingSections.isEmpty())
+		{
+			// Release the file data.
+			m_source = null;
+			m_table = null;
+		}
+	}
+
+	// Load the next n pending Scene Sections, inflating them concurrently.
+	private void inflateSceneSections(int n) throws IOException
+	{
+		SceneSection scenes[] = new SceneSection[n];
+		ForkJoinTask tasks[] = new ForkJoinTask[n];
+		Iterator<SectionDescriptor> pending = m_pendingSections.iterator();
+		for (int i = 0; i < n; i++)
+		{
+			final SceneSection scene = newSceneSection();
+			final ByteBuffer data = getSectionData(pending.next());
+			scenes[i] = scene;
+			tasks[i] = ForkJoinPool.commonPool().submit(new Callable<ByteBuffer>()
+			{
+				public ByteBuffer call() throws IOException
+				{
+					return scene.inflate(new M3GInputStream(data));
+				}
+			});
+		}
+
+		// Read the objects in file order; a section may reference
+		// objects of any section before it.
+		for (int i = 0; i < n; i++)
+		{
+			ByteBuffer objects;
+			try
+			{
+				objects = (ByteBuffer)tasks[i].get();
+			} catch (InterruptedException ex)
+			{
+				throw new InterruptedIOException("M3GFile: interrupted while inflating");
+			} catch (ExecutionException ex)
+			{
+				if (ex.getCause() instanceof IOException)
+					throw (IOException)ex.getCause();
+				throw new IOException("M3GFile: " + ex.getCause());
+			}
+			scenes[i].readObjects(new M3GInputStream(objects), m_table);
+			m_sceneSections.add(scenes[i]);
+			m_pendingSections.removeFirst();
+		}
+	}
+
+	// Create a Scene Section to read into, according to the load flags.
+	private SceneSection newSceneSection()
+	{
+		SceneSection scene = new SceneSection();
+		scene.setDeferObjects((m_flags & LOAD_LAZY_OBJECTS) != 0);
+		scene.setKeepEncoded((m_flags & LOAD_KEEP_ENCODED) != 0);
+		if (m_context != null)
+			scene.setObjectRegistry(m_context.getObjectRegistry());
+		return scene;
+	}
+
+	// Get the file data of the specified section.
+	private ByteBuffer getSectionData(SectionDescriptor descriptor)
+	{
+		ByteBuffer data = m_source.duplicate();
+		data.position((int)descriptor.getOffset());
+		data.limit((int)descriptor.getOffset() + descriptor.getTotalSectionLength());
+		return data;
+	}
+
+	// Load all the pending Scene Sections, for methods that can not
+	// report an IOException.
+	private void loadSceneSections()
+	{
+		try
+		{
+			loadSceneSections(Integer.MAX_VALUE);
+		} catch (IOException ex)
+		{
+			throw new UncheckedIOException(ex);
 		}
-		is.close();
 	}
 
 	public HeaderSection getHeaderSection()
@@ -108,22 +523,79 @@ public class M3GFile
 
 	public void addSceneSection(SceneSection scene)
 	{
+		loadSceneSections();
 		m_sceneSections.add(scene);
 	}
 
+	/**
+	 * Get the Scene Sections, loading any that are still pending.
+	 * 
+	 * @return An array of Scene Sections is returned.
+	 * 
+	 * @throws UncheckedIOException This exception is thrown if a pending
+	 * section can not be loaded.
+	 */
 	public SceneSection[] getSceneSections()
 	{
+		loadSceneSections();
 		return (SceneSection[])m_sceneSections.toArray(new SceneSection[m_sceneSections.size()]);
 	}
 
+	/**
+	 * Get the Scene Section at the specified index.
+	 * <p>
+	 * If the section, or a section before it, has not been loaded yet, it is
+	 * loaded now. Later sections remain pending.
+	 * </p>
+	 * 
+	 * @param index The index of the Scene Section.
+	 * 
+	 * @return The Scene Section is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the section can not
+	 * be loaded.
+	 */
+	public SceneSection getSceneSection(int index) throws IOException
+	{
+		if ((index < 0) || (index >= getSceneSectionCount()))
+			throw new IndexOutOfBoundsException("M3GFile: scene section index = " + index);
+		loadSceneSections(index + 1);
+		return (SceneSection)m_sceneSections.get(index);
+	}
+
+	/**
+	 * Get the number of Scene Sections, including those not loaded yet.
+	 * 
+	 * @return The number of Scene Sections is returned.
+	 */
+	public int getSceneSectionCount()
+	{
+		return m_sceneSections.size() + m_pendingSections.size();
+	}
+
+	/**
+	 * Get the descriptors of the sections that were read from the file,
+	 * in file order. Sections added after loading have no descriptor.
+	 * 
+	 * @return An array of section descriptors is returned.
+	 */
+	public SectionDescriptor[] getSectionDescriptors()
+	{
+		return m_sectionDescriptors.toArray(new SectionDescriptor[m_sectionDescriptors.size()]);
+	}
+
 	public void removeSceneSection(SceneSection scene)
 	{
+		loadSceneSections();
 		m_sceneSections.remove(scene);
 	}
 
 	public void removeSceneSections()
 	{
 		m_sceneSections.clear();
+		m_pendingSections.clear();
+		m_source = null;
+		m_table = null;
 	}
 	
 	void setCwd(String cwd)
@@ -136,60 +608,306 @@ public class M3GFile
 		return m_cwd;
 	}
 
+	/**
+	 * Set the level ZLIB sections are compressed with when the file is
+	 * written, unless a section specifies its own level.
+	 * 
+	 * @param level A <code>Deflater</code> compression level. The default
+	 * is <code>Deflater.BEST_COMPRESSION</code>.
+	 */
+	public void setCompressionLevel(int level)
+	{
+		if ((level != Deflater.DEFAULT_COMPRESSION) &&
+			((level < Deflater.NO_COMPRESSION) || (level > Deflater.BEST_COMPRESSION)))
+			throw new IllegalArgumentException("M3GFile: invalid compression level " + level);
+		m_compressionLevel = level;
+	}
+
+	public int getCompressionLevel()
+	{
+		return m_compressionLevel;
+	}
+
+	/**
+	 * Set the strategy ZLIB sections are compressed with when the file is
+	 * written, unless a section specifies its own strategy.
+	 * 
+	 * @param strategy A <code>Deflater</code> strategy. The default is
+	 * <code>Deflater.DEFAULT_STRATEGY</code>.
+	 */
+	public void setCompressionStrategy(int strategy)
+	{
+		if ((strategy != Deflater.DEFAULT_STRATEGY) && (strategy != Deflater.FILTERED) &&
+			(strategy != Deflater.HUFFMAN_ONLY))
+			throw new IllegalArgumentException("M3GFile: invalid compression strategy " + strategy);
+		m_compressionStrategy = strategy;
+	}
+
+	public int getCompressionStrategy()
+	{
+		return m_compressionStrategy;
+	}
+
+	/**
+	 * Set the size below which ZLIB sections are written uncompressed,
+	 * since compressing small sections saves little or nothing.
+	 * 
+	 * @param threshold The size of the uncompressed section data, in bytes.
+	 * The default is 0, compressing every ZLIB section.
+	 */
+	public void setCompressionThreshold(int threshold)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("M3GFile: compression threshold < 0");
+		m_compressionThreshold = threshold;
+	}
+
+	public int getCompressionThreshold()
+	{
+		return m_compressionThreshold;
+	}
+
+	/**
+	 * Set the policy choosing the encoding vertex arrays are written with
+	 * when the file is written.
+	 * <p>
+	 * The M3G format stores a vertex array either as is, or as the
+	 * differences between consecutive vertices, whichever deflates smaller.
+	 * ENCODING_THOROUGH deflates both encodings of every array to find out,
+	 * which is slow for large meshes. ENCODING_ESTIMATE, the default,
+	 * deflates up to 16 KB of samples of each encoding at the fastest
+	 * level. ENCODING_ENTROPY, cheaper still, estimates the deflated sizes
+	 * from the byte entropy of each encoding, but misses repeated data.
+	 * ENCODING_RAW and ENCODING_DELTA always choose one encoding. The
+	 * choice does not affect the values read back.
+	 * </p>
+	 * 
+	 * @param policy One of the <code>VertexArray.ENCODING_</code> policies.
+	 */
+	public void setVertexEncodingPolicy(int policy)
+	{
+		if ((policy < VertexArray.ENCODING_THOROUGH) || (policy > VertexArray.ENCODING_DELTA))
+			throw new IllegalArgumentException("M3GFile: invalid vertex encoding policy " + policy);
+		m_vertexEncodingPolicy = policy;
+	}
+
+	public int getVertexEncodingPolicy()
+	{
+		return m_vertexEncodingPolicy;
+	}
+
+	/**
+	 * Set the pool the stripification trials run on when an array of
+	 * explicit indices is written with the file.
+	 * <p>
+	 * The triangles of the array are stripified with minimum strip sizes
+	 * of 1 to 10, with and without stitching, and the strips that deflate
+	 * smallest are written. The trials are independent and run concurrently
+	 * on the pool, the common pool by default.
+	 * </p>
+	 * 
+	 * @param pool The pool, or <b>null</b> to run the trials on the
+	 * writing thread.
+	 */
+	public void setStripificationPool(ForkJoinPool pool)
+	{
+		m_stripificationPool = pool;
+	}
+
+	public ForkJoinPool getStripificationPool()
+	{
+		return m_stripificationPool;
+	}
+
+	/**
+	 * Set the time the stripification trials may take for each array
+	 * written with the file.
+	 * <p>
+	 * Once the time is up, the smallest strips found so far are written,
+	 * or the strips of the array itself if no trial has completed. Such
+	 * a result is not kept, so the next write searches again.
+	 * </p>
+	 * 
+	 * @param millis The time budget in milliseconds, or 0, the default,
+	 * for no limit.
+	 */
+	public void setStripificationTimeBudget(long millis)
+	{
+		if (millis < 0)
+			throw new IllegalArgumentException("M3GFile: time budget < 0");
+		m_stripificationTimeBudget = millis;
+	}
+
+	public long getStripificationTimeBudget()
+	{
+		return m_stripificationTimeBudget;
+	}
+
+	/**
+	 * Set the executor ZLIB sections are compressed on when the file is
+	 * written.
+	 * <p>
+	 * With an executor, sections are split into blocks of 128 KB deflated
+	 * concurrently, each primed with the end of the block before it. The
+	 * blocks still form a single zlib stream per section, slightly larger
+	 * than a stream deflated in one go.
+	 * </p>
+	 * 
+	 * @param executor The executor, for example
+	 * <code>ForkJoinPool.commonPool()</code>, or <b>null</b> to compress
+	 * sections on the writing thread, the default.
+	 */
+	public void setCompressionExecutor(Executor executor)
+	{
+		m_compressionExecutor = executor;
+	}
+
+	public Executor getCompressionExecutor()
+	{
+		return m_compressionExecutor;
+	}
+
+	/**
+	 * Write the file to the specified stream, and close it.
+	 * <p>
+	 * A <code>FileOutputStream</code> is written through its channel.
+	 * Since the sections are patched once written, any other stream is
+	 * written through a growable buffer in memory, and copied to the
+	 * stream once the file is complete.
+	 * </p>
+	 * 
+	 * @param os The output stream to write to.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the file.
+	 */
 	public void marshall(OutputStream os) throws IOException
 	{
-		// Create a table of references..
-		ArrayList table = buildReferenceTable();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		M3GOutputStream out = new M3GOutputStream(baos);
-		if (m_externalReferencesSection.getExternalReferenceCount() > 0)
-			m_externalReferencesSection.marshall(out,table);
-		for (int i = 0; i < m_sceneSections.size(); i++)
+		try
+		{
+			if (os instanceof FileOutputStream)
+				marshall(((FileOutputStream)os).getChannel());
+			else
+			{
+				ByteArrayChannel channel = new ByteArrayChannel(BUFFER_CAPACITY);
+				try
+				{
+					marshall(channel);
+					channel.writeTo(os);
+				} finally
+				{
+					channel.close();
+				}
+			}
+		} finally
 		{
-			SceneSection ss = (SceneSection)m_sceneSections.get(0);
-			ss.marshall(out, table);
+			os.close();
 		}
-		
-		// Header Section.
-		m_headerSection.getHeaderObject().setHasExternalReferences(m_externalReferencesSection.getExternalReferenceCount() > 0);
-		m_headerSection.getHeaderObject().setAuthoringField("M3GToolkit (www.wizzerworks.com)");
-		byte header[] = getSectionBytes(m_headerSection,table);
-		int size = FILE_IDENTIFIER.length + header.length + baos.size();
-		m_headerSection.getHeaderObject().setTotalFileSize(size);
-		m_headerSection.getHeaderObject().setApproximateContentSize(size);
-
-		os.write(FILE_IDENTIFIER);
-		os.write(getSectionBytes(m_headerSection,table));
-		baos.writeTo(os);
-		os.close();
 	}
 
 	public void marshall(File file) throws IOException
 	{
-		marshall(new FileOutputStream(file));
+		FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try
+		{
+			marshall(channel);
+		} finally
+		{
+			channel.close();
+		}
 	}
 
-	private byte[] getSectionBytes(Section section, ArrayList table) throws IOException
+	/**
+	 * Write the file to the specified channel, at its current position.
+	 * <p>
+	 * The objects are compressed and written as they are marshalled, so
+	 * that only the largest object is held in memory. The length fields of
+	 * each section, and the size of the file in the Header Section, are
+	 * patched once known.
+	 * </p>
+	 * 
+	 * @param channel The channel to write to, for example a
+	 * <code>FileChannel</code>. It is not closed.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the file.
+	 */
+	public void marshall(SeekableByteChannel channel) throws IOException
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		section.marshall(new M3GOutputStream(baos), table);
-		return baos.toByteArray();
+		loadSceneSections(Integer.MAX_VALUE);
+
+		// Create a table of references, and find the objects written
+		// by each Scene Section.
+		ReferenceTable table = new ReferenceTable();
+		table.setVertexEncodingPolicy(m_vertexEncodingPolicy);
+		table.setStripificationPool(m_stripificationPool);
+		table.setStripificationTimeBudget(m_stripificationTimeBudget);
+		int sceneEnds[] = buildReferenceTable(table);
+
+		HeaderObject header = m_headerSection.getHeaderObject();
+		header.setHasExternalReferences(m_externalReferencesSection.getExternalReferenceCount() > 0);
+		header.setAuthoringField("M3GToolkit (www.wizzerworks.com)");
+
+		long start = channel.position();
+		ByteBuffer identifier = ByteBuffer.wrap(FILE_IDENTIFIER);
+		while (identifier.hasRemaining())
+			channel.write(identifier);
+
+		SectionWriter writer = new SectionWriter(channel, m_compressionLevel, m_compressionStrategy,
+			m_compressionThreshold, m_compressionExecutor);
+		try
+		{
+			long headerStart = channel.position();
+			writer.writeSection(m_headerSection, table);
+			long headerEnd = channel.position();
+
+			if (m_externalReferencesSection.getExternalReferenceCount() > 0)
+				writer.writeSection(m_externalReferencesSection, table);
+			int first = 2 + m_externalReferencesSection.getExternalReferenceCount();
+			for (int i = 0; i < m_sceneSections.size(); i++)
+			{
+				SceneSection ss = (SceneSection)m_sceneSections.get(i);
+				writer.beginSection(ss);
+				for (int j = first; j < sceneEnds[i]; j++)
+					writer.writeObject((Object3D)table.get(j), table);
+				writer.endSection(ss);
+				first = sceneEnds[i];
+			}
+
+			// Rewrite the Header Section, now that the size is known.
+			long end = channel.position();
+			header.setTotalFileSize(end - start);
+			header.setApproximateContentSize(end - start);
+			channel.position(headerStart);
+			writer.writeSection(m_headerSection, table);
+			if (channel.position() != headerEnd)
+				throw new IOException("M3GFile: header section changed size");
+			channel.position(end);
+		} finally
+		{
+			writer.close();
+		}
 	}
 
-	private ArrayList buildReferenceTable()
+	// Build the table of references, in file order. The index in the table
+	// following the objects of each Scene Section is returned.
+	private int[] buildReferenceTable(ReferenceTable table)
 	{
-		ArrayList table = new ArrayList();
 		table.add(Boolean.FALSE);
 		table.add(m_headerSection.getHeaderObject());
-		// TODO: Create the table of external references.
-		//if (externalReferences.hasExternalReferences()) externalReferences.write(os);
+		ExternalReference references[] = m_externalReferencesSection.getExternalReferences();
+		for (int i = 0; i < references.length; i++)
+			table.add(references[i]);
+		int sceneEnds[] = new int[m_sceneSections.size()];
 		for (int i = 0; i < m_sceneSections.size(); i++)
 		{
 			SceneSection ss = (SceneSection)m_sceneSections.get(i);
 			Object3D objects[] = ss.getObjects3D();
 			for (int j = 0; j < objects.length; j++)
 				objects[j].buildReferenceTable(table);
+			sceneEnds[i] = table.size();
 		}
-		return table;
+		return sceneEnds;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,67 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+/**
+ * The <code>M3GFileInfo</code> holds the metadata of a M3G file read by
+ * <code>M3GFile.probe()</code>: the header object and where each section
+ * is located. It is not a runtime construct called out by the M3G
+ * Specification.
+ */
+public class M3GFileInfo
+{
+	// The header object of the file.
+	private HeaderObject m_headerObject;
+	// The descriptors of all the sections of the file.
+	private SectionDescriptor[] m_sectionDescriptors;
+
+	M3GFileInfo(HeaderObject headerObject, SectionDescriptor[] sectionDescriptors)
+	{
+		m_headerObject = headerObject;
+		m_sectionDescriptors = sectionDescriptors;
+	}
+
+	/**
+	 * Get the header object, holding the version, whether the file has
+	 * external references, the total file size, the approximate content
+	 * size and the authoring field.
+	 * 
+	 * @return The header object of the file is returned.
+	 */
+	public HeaderObject getHeaderObject()
+	{
+		return m_headerObject;
+	}
+
+	/**
+	 * Get the descriptors of the sections, in file order. The first
+	 * section is the Header Section.
+	 * 
+	 * @return The section descriptors are returned.
+	 */
+	public SectionDescriptor[] getSectionDescriptors()
+	{
+		return m_sectionDescriptors.clone();
+	}
+}
@@ -25,20 +25,39 @@ package com.wizzer.m3g;
 
 // Import standard Java classes.
 import java.io.*;
+import java.nio.*;
+import java.util.*;
 import java.util.zip.*;
 
 /**
  * The <code>M3GInputStream</code> is used to unmarshall binary data
  * from an input stream as described by the Mobile 3D Graphics Specification.
+ * <p>
+ * The stream is backed by a little-endian <code>ByteBuffer</code>. When
+ * constructed from an <code>InputStream</code>, data is read ahead in chunks
+ * and primitives are decoded directly from the buffer; when constructed
+ * from a <code>ByteBuffer</code> or byte array, the data is decoded in place.
+ * The Adler-32 checksum is computed over whole runs of consumed bytes rather
+ * than one byte at a time.
+ * </p>
  * 
  * @author Mark Millard
  */
 public class M3GInputStream extends FilterInputStream
 {
+	// The size of the read-ahead buffer used for input streams.
+	private static final int BUFFER_SIZE = 8192;
+
 	// The Adler-32 checksum of the input stream.
 	private Adler32 m_adler32;
-	// Flag indicating whether to block the checksum computation.
-	private boolean m_blockAdler32;
+	// The buffer the data is decoded from.
+	private ByteBuffer m_buffer;
+	// The buffer position of the first byte not yet added to the checksum.
+	private int m_adler32Mark;
+	// The stream position corresponding to the start of the buffer.
+	private long m_base;
+	// The positions of the object indices read, if they are recorded.
+	private ArrayList m_objectIndexPositions;
 
 	/**
 	 * A constructor initializing the input stream.
@@ -49,6 +68,36 @@ public class M3GInputStream extends FilterInputStream
 	{
 		super(in);
 		m_adler32 = new Adler32();
+		m_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		m_buffer.order(ByteOrder.LITTLE_ENDIAN);
+		m_buffer.limit(0);
+	}
+
+	/**
+	 * A constructor initializing the input stream from a buffer.
+	 * <p>
+	 * The remaining bytes of the buffer are decoded in place; the buffer's
+	 * position and limit are not modified.
+	 * </p>
+	 * 
+	 * @param data The buffer containing the data to read.
+	 */
+	public M3GInputStream(ByteBuffer data)
+	{
+		super(null);
+		m_adler32 = new Adler32();
+		m_buffer = data.slice();
+		m_buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * A constructor initializing the input stream from a byte array.
+	 * 
+	 * @param data The array containing the data to read.
+	 */
+	public M3GInputStream(byte data[])
+	{
+		this(ByteBuffer.wrap(data));
 	}
 
 	/**
@@ -61,22 +110,22 @@ public class M3GInputStream extends FilterInputStream
 	 * or an exception is thrown.
 	 * </p>
 	 * 
-	 * @return The byte is returned as an <code>int</code>.
+	 * @return The byte is returned as an int.
 	 * 
 	 * @throws IOException This exception is thrown if an error occurs while
 	 * attempting to read the next byte.
 	 */
 	public int read() throws IOException
 	{
-		int b = super.read();
-		if (! m_blockAdler32)
-			m_adler32.update(b);
-		return b;
+		if (! fill(1))
+			return -1;
+		return (m_buffer.get() & 0xff);
 	}
 
 	/**
 	 * Reads up to <i>len</i> bytes of data from this input stream into an array of bytes.
-	 * This method blocks until some input is available.
+	 * This method blocks until <i>len</i> bytes have been read or the end of the
+	 * stream is detected.
 	 * 
 	 * @param b The buffer into which the data is read.
 	 * @param off The start offset of the data.
@@ -90,11 +139,122 @@ public class M3GInputStream extends FilterInputStream
 	 */
 	public int read(byte b[], int off, int len) throws IOException
 	{
-		m_blockAdler32 = true;
-		len = super.read(b,off,len);
-		m_adler32.update(b,off,len);
-		m_blockAdler32 = false;
-		return len;
+		if (len == 0)
+			return 0;
+
+		int count = 0;
+		while (count < len)
+		{
+			int n = Math.min(m_buffer.remaining(), len - count);
+			if (n > 0)
+			{
+				m_buffer.get(b, off + count, n);
+				count += n;
+			}
+			else if (in == null)
+				break;
+			else if (len - count >= m_buffer.capacity())
+			{
+				// Large reads bypass the read-ahead buffer.
+				updateAdler32();
+				n = in.read(b, off + count, len - count);
+				if (n < 0)
+					break;
+				m_adler32.update(b, off + count, n);
+				m_base += n;
+				count += n;
+			}
+			else if (! fill(1))
+				break;
+		}
+		return (count == 0) ? -1 : count;
+	}
+
+	/**
+	 * Skips over and discards <i>n</i> bytes of data from this input stream.
+	 * The skipped bytes are included in the Adler-32 checksum.
+	 * 
+	 * @param n The number of bytes to be skipped.
+	 * 
+	 * @return The actual number of bytes skipped.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs while
+	 * attempting to skip the data.
+	 */
+	public long skip(long n) throws IOException
+	{
+		long count = 0;
+		while (count < n)
+		{
+			int remaining = (int)Math.min(m_buffer.remaining(), n - count);
+			if (remaining > 0)
+			{
+				m_buffer.position(m_buffer.position() + remaining);
+				count += remaining;
+			}
+			else if (! fill(1))
+				break;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns an estimate of the number of bytes that can be read from this
+	 * input stream without blocking.
+	 * 
+	 * @return The number of bytes that can be read without blocking.
+	 * 
+	 * @throws IOException This exception is thrown if an I/O error occurs.
+	 */
+	public int available() throws IOException
+	{
+		if (in == null)
+			return m_buffer.remaining();
+		else
+			return m_buffer.remaining() + in.available();
+	}
+
+	/**
+	 * Closes this input stream and releases any system resources associated
+	 * with it.
+	 * 
+	 * @throws IOException This exception is thrown if an I/O error occurs.
+	 */
+	public void close() throws IOException
+	{
+		if (in != null)
+			in.close();
+	}
+
+	/**
+	 * The <code>M3GInputStream</code> does not support the <code>mark</code>
+	 * and <code>reset</code> methods.
+	 * 
+	 * @return <b>false</b> is always returned.
+	 */
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * Does nothing; mark is not supported.
+	 * 
+	 * @param readlimit Ignored.
+	 */
+	public void mark(int readlimit)
+	{
+		// Do nothing.
+	}
+
+	/**
+	 * Mark and reset are not supported.
+	 * 
+	 * @throws IOException This exception is always thrown.
+	 */
+	public void reset() throws IOException
+	{
+		throw new IOException("M3GInputStream: mark/reset not supported");
 	}
 
 	/**
@@ -120,9 +280,8 @@ public class M3GInputStream extends FilterInputStream
 	 */
 	public int readInt16() throws IOException
 	{
-		int l = readByte();
-		int h = readByte();
-		return (short)((h << 8) | (l & 0xff));
+		require(2);
+		return m_buffer.getShort();
 	}
 
 	/**
@@ -148,9 +307,8 @@ public class M3GInputStream extends FilterInputStream
 	 */
 	public long readInt32() throws IOException
 	{
-		int l = readUInt16();
-		int h = readUInt16();
-		return (h << 16) | (l & 0xffff);
+		require(4);
+		return m_buffer.getInt();
 	}
 
 	/**
@@ -176,7 +334,8 @@ public class M3GInputStream extends FilterInputStream
 	 */
 	public float readFloat32() throws IOException
 	{
-		return Float.intBitsToFloat((int)(readInt32() & 0xffffffff));
+		require(4);
+		return m_buffer.getFloat();
 	}
 
 	/**
@@ -190,11 +349,65 @@ public class M3GInputStream extends FilterInputStream
 	public String readString() throws IOException
 	{
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		for (int i = -1; (i = read()) > 0;)
-			baos.write(i);
+		while (fill(1))
+		{
+			// Scan the buffered data for the terminating null character.
+			int start = m_buffer.position();
+			int end = start;
+			int limit = m_buffer.limit();
+			while ((end < limit) && (m_buffer.get(end) != 0))
+				end++;
+
+			byte chunk[] = new byte[end - start];
+			m_buffer.get(chunk);
+			baos.write(chunk, 0, chunk.length);
+			if (end < limit)
+			{
+				// Consume the terminator.
+				m_buffer.get();
+				break;
+			}
+		}
 		return new String(baos.toByteArray(),"UTF-8");
 	}
 
+	/**
+	 * Read a run of bytes as a buffer.
+	 * <p>
+	 * If this stream was constructed from a <code>ByteBuffer</code>, the returned
+	 * buffer is a slice sharing the underlying data; no bytes are copied.
+	 * Otherwise, the bytes are read into a new buffer.
+	 * </p>
+	 * 
+	 * @param length The number of bytes to read.
+	 * 
+	 * @return A little-endian <code>ByteBuffer</code> containing the next
+	 * <i>length</i> bytes is returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs while
+	 * attempting to read the data.
+	 */
+	public ByteBuffer readBuffer(int length) throws IOException
+	{
+		ByteBuffer data;
+		if (in == null)
+		{
+			require(length);
+			data = m_buffer.slice();
+			data.limit(length);
+			m_buffer.position(m_buffer.position() + length);
+		}
+		else
+		{
+			byte bytes[] = new byte[length];
+			if ((length > 0) && (read(bytes, 0, length) != length))
+				throw new EOFException("M3GInputStream: unexpected end of stream");
+			data = ByteBuffer.wrap(bytes);
+		}
+		data.order(ByteOrder.LITTLE_ENDIAN);
+		return data;
+	}
+
 	/**
 	 * Read a boolean value.
 	 * 
@@ -279,15 +492,39 @@ public class M3GInputStream extends FilterInputStream
 	 */
 	public long readObjectIndex() throws IOException
 	{
+		if (m_objectIndexPositions != null)
+			m_objectIndexPositions.add(Long.valueOf(getPosition()));
 		return readUInt32();
 	}
 
+	/**
+	 * Record the stream position of every object index subsequently read.
+	 * 
+	 * @param positions The list the positions are added to, as
+	 * <code>Long</code> values, or <b>null</b> to stop recording.
+	 */
+	void setObjectIndexPositions(ArrayList positions)
+	{
+		m_objectIndexPositions = positions;
+	}
+
+	/**
+	 * Get the number of bytes consumed from this stream.
+	 * 
+	 * @return The current position in the stream is returned.
+	 */
+	public long getPosition()
+	{
+		return m_base + m_buffer.position();
+	}
+
 	/**
 	 * Reset the Adler-32 checksum.
 	 */
 	public void resetAdler32()
 	{
 		m_adler32.reset();
+		m_adler32Mark = m_buffer.position();
 	}
 
 	/**
@@ -297,6 +534,83 @@ public class M3GInputStream extends FilterInputStream
 	 */
 	public long getAdler32Value()
 	{
+		updateAdler32();
 		return m_adler32.getValue();
 	}
+
+	/**
+	 * Add the bytes consumed since the last update to the Adler-32 checksum.
+	 */
+	private void updateAdler32()
+	{
+		int position = m_buffer.position();
+		if (position > m_adler32Mark)
+		{
+			if (m_buffer.hasArray())
+			{
+				m_adler32.update(m_buffer.array(),
+					m_buffer.arrayOffset() + m_adler32Mark, position - m_adler32Mark);
+			}
+			else
+			{
+				ByteBuffer consumed = m_buffer.duplicate();
+				consumed.position(m_adler32Mark);
+				consumed.limit(position);
+				m_adler32.update(consumed);
+			}
+		}
+		m_adler32Mark = position;
+	}
+
+	/**
+	 * Make sure at least <i>n</i> bytes are buffered, reading ahead from the
+	 * underlying input stream if necessary.
+	 * 
+	 * @param n The number of bytes required.
+	 * 
+	 * @return <b>true</b> is returned if <i>n</i> bytes are available.
+	 * Otherwise, the end of the stream has been reached and <b>false</b> will
+	 * be returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs while
+	 * attempting to read the data.
+	 */
+	private boolean fill(int n) throws IOException
+	{
+		if (m_buffer.remaining() >= n)
+			return true;
+		if (in == null)
+			return false;
+
+		// Checksum the consumed bytes before they are discarded.
+		updateAdler32();
+		m_base += m_buffer.position();
+		m_buffer.compact();
+		byte data[] = m_buffer.array();
+		while (m_buffer.position() < n)
+		{
+			int count = in.read(data, m_buffer.position(), m_buffer.remaining());
+			if (count < 0)
+				break;
+			m_buffer.position(m_buffer.position() + count);
+		}
+		m_buffer.flip();
+		m_adler32Mark = 0;
+
+		return (m_buffer.remaining() >= n);
+	}
+
+	/**
+	 * Make sure at least <i>n</i> bytes are available for decoding.
+	 * 
+	 * @param n The number of bytes required.
+	 * 
+	 * @throws IOException This exception is thrown if the end of the stream
+	 * is reached before <i>n</i> bytes are available.
+	 */
+	private void require(int n) throws IOException
+	{
+		if (! fill(n))
+			throw new EOFException("M3GInputStream: unexpected end of stream");
+	}
 }
\ No newline at end of file
@@ -0,0 +1,461 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The <code>M3GLoadContext</code> holds the state of a load that is shared
+ * with the files it references. It is not a runtime construct called out by
+ * the M3G Specification.
+ * <p>
+ * A context supplies the cache that resolved external references are
+ * memoized in, and optionally an executor that referenced files are loaded
+ * on. Each file being loaded has its own context, chained to the context of
+ * the file referencing it, which locates its relative references and
+ * detects cyclic references.
+ * </p><p>
+ * A referenced M3G file resolves to its first root object. The file is
+ * memoized in the cache as a <code>SubGraph</code>, and each reference to
+ * it gets its own copy of the Nodes reachable from the root, which can be
+ * attached to its own parent. The other objects of the file are shared.
+ * </p><p>
+ * A load waiting for a referenced file is recorded in a wait-for graph
+ * shared by all contexts, so that a cycle is reported even when the files
+ * forming it are being loaded by different top-level loads.
+ * </p>
+ */
+public class M3GLoadContext
+{
+	// The context of the file referencing this file.
+	private M3GLoadContext m_parent;
+	// The location of the file loaded with this context.
+	private URI m_uri;
+	// The flags the file is loaded with.
+	private int m_flags;
+	// The cache resolved references are memoized in.
+	private ResourceCache m_cache;
+	// The executor referenced files are loaded on.
+	private Executor m_executor;
+	// The registry of the factories creating the objects read.
+	private Object3DRegistry m_registry;
+
+	// The files each file being loaded is waiting for, keyed by URI.
+	private static final HashMap<URI, ArrayList<URI>> g_waits = new HashMap<URI, ArrayList<URI>>();
+
+	/**
+	 * Create a context that resolves references through the default
+	 * resource cache, on the loading thread.
+	 */
+	public M3GLoadContext()
+	{
+		this(ExternalReference.getResourceCache(), null);
+	}
+
+	/**
+	 * Create a context.
+	 * 
+	 * @param cache The cache resolved references are memoized in, or
+	 * <b>null</b> to resolve every reference again.
+	 * @param executor The executor referenced files are loaded on while
+	 * the referencing file is read, or <b>null</b> to load them on the
+	 * loading thread. Since a load waits for the files it references, an
+	 * executor with a fixed number of threads may deadlock on nested
+	 * references; a <code>ForkJoinPool</code> is recommended.
+	 */
+	public M3GLoadContext(ResourceCache cache, Executor executor)
+	{
+		m_cache = cache;
+		m_executor = executor;
+		m_registry = Object3DRegistry.getDefault();
+	}
+
+	/**
+	 * Get the location of the file loaded with this context.
+	 * 
+	 * @return The URI of the file is returned, or <b>null</b> if it is
+	 * not known.
+	 */
+	public URI getURI()
+	{
+		return m_uri;
+	}
+
+	int getFlags()
+	{
+		return m_flags;
+	}
+
+	public ResourceCache getResourceCache()
+	{
+		return m_cache;
+	}
+
+	public Executor getExecutor()
+	{
+		return m_executor;
+	}
+
+	/**
+	 * Set the registry of the factories creating the objects read by
+	 * this context, and the files it references.
+	 * 
+	 * @param registry The object registry.
+	 */
+	public void setObjectRegistry(Object3DRegistry registry)
+	{
+		if (registry == null)
+			throw new NullPointerException("M3GLoadContext: registry is null");
+		m_registry = registry;
+	}
+
+	public Object3DRegistry getObjectRegistry()
+	{
+		return m_registry;
+	}
+
+	/**
+	 * Create the context of a file loaded by this context.
+	 * 
+	 * @param uri The location of the file, or <b>null</b> if it is not known.
+	 * @param flags The flags the file is loaded with.
+	 * 
+	 * @return The context of the file is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the file is already
+	 * being loaded by this context or a context referencing it.
+	 */
+	M3GLoadContext enter(URI uri, int flags) throws IOException
+	{
+		if (uri != null)
+		{
+			uri = canonicalize(uri);
+			if (isLoading(uri))
+				throw new IOException("M3GLoadContext: cyclic reference to " + uri);
+		}
+		M3GLoadContext context = new M3GLoadContext(m_cache, m_executor);
+		context.m_registry = m_registry;
+		context.m_parent = this;
+		context.m_uri = uri;
+		context.m_flags = flags;
+		return context;
+	}
+
+	// Determine whether the specified file is being loaded by this
+	// context, or a context referencing it.
+	private boolean isLoading(URI uri)
+	{
+		for (M3GLoadContext context = this; context != null; context = context.m_parent)
+		{
+			if (uri.equals(context.m_uri))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Qualify the specified reference against the location of the file.
+	 * 
+	 * @param reference The URI of an external reference.
+	 * 
+	 * @return The absolute URI of the reference is returned. If neither
+	 * the location of the file nor the current working directory is known,
+	 * a relative URI is returned unchanged.
+	 * 
+	 * @throws IOException This exception is thrown if the reference is not
+	 * a valid URI.
+	 */
+	URI qualify(String reference) throws IOException
+	{
+		URI uri;
+		try
+		{
+			uri = new URI(reference);
+		} catch (URISyntaxException ex)
+		{
+			throw new IOException(ex.getMessage());
+		}
+		if (uri.getScheme() == null)
+		{
+			// Not a complete URL, attempt to qualify location using
+			// the location of the file, or cwd.
+			if (m_uri != null)
+				uri = m_uri.resolve(uri);
+			else if (ExternalReference.getCwd() != null)
+				uri = ExternalReference.getCwd().toURI().resolve(uri);
+		}
+		return canonicalize(uri.normalize());
+	}
+
+	/**
+	 * Resolve the specified reference, through the resource cache.
+	 * 
+	 * @param uri The qualified URI of the reference.
+	 * 
+	 * @return The referenced object is returned.
+	 * 
+	 * @throws IOException This exception is thrown if the reference
+	 * can not be resolved.
+	 */
+	M3GObject resolve(URI uri) throws IOException
+	{
+		// Check for a cycle before waiting for a load that may be
+		// waiting for this one.
+		if (isLoading(uri))
+			throw new IOException("M3GLoadContext: cyclic reference to " + uri);
+
+		ResourceCache.Resolver resolver = new ResourceCache.Resolver()
+		{
+			public M3GObject resolve(URI uri) throws IOException
+			{
+				if ((uri.getScheme() == null) || "file".equals(uri.getScheme()))
+				{
+					if (isM3G(uri))
+						return loadRoot(uri, null);
+					return ExternalReference.resolvePNG(uri);
+				}
+
+				// Fetch any other resource once, and tell its type from
+				// the bytes read.
+				byte data[];
+				try
+				{
+					data = read(uri);
+				} catch (IOException ex)
+				{
+					// Report it as a resource that can not be resolved.
+					return null;
+				}
+				if (isM3G(data))
+					return loadRoot(uri, data);
+				try
+				{
+					return ExternalReference.resolvePNG(new ByteArrayInputStream(data));
+				} catch (IOException ex)
+				{
+					return null;
+				}
+			}
+		};
+		M3GObject object;
+		beginWait(uri);
+		try
+		{
+			object = (m_cache != null) ? m_cache.get(uri, resolver) : resolver.resolve(uri);
+		} finally
+		{
+			endWait(uri);
+		}
+		if (object == null)
+			throw new IOException("M3GLoadContext: unable to resolve " + uri);
+		if (object instanceof SubGraph)
+			object = ((SubGraph)object).newInstance();
+		return object;
+	}
+
+	// Record that this file is waiting for the specified file, failing
+	// if that file is, directly or not, waiting for this one.
+	private void beginWait(URI uri) throws IOException
+	{
+		if (m_uri == null)
+			return;
+		synchronized (g_waits)
+		{
+			if (isWaiting(uri, m_uri, new HashSet<URI>()))
+				throw new IOException("M3GLoadContext: cyclic reference to " + uri);
+			ArrayList<URI> waits = g_waits.get(m_uri);
+			if (waits == null)
+			{
+				waits = new ArrayList<URI>();
+				g_waits.put(m_uri, waits);
+			}
+			waits.add(uri);
+		}
+	}
+
+	// Record that this file is no longer waiting for the specified file.
+	private void endWait(URI uri)
+	{
+		if (m_uri == null)
+			return;
+		synchronized (g_waits)
+		{
+			ArrayList<URI> waits = g_waits.get(m_uri);
+			waits.remove(uri);
+			if (waits.isEmpty())
+				g_waits.remove(m_uri);
+		}
+	}
+
+	// Determine whether the first file is waiting for the second,
+	// directly or through other files.
+	private static boolean isWaiting(URI from, URI to, HashSet<URI> visited)
+	{
+		if (from.equals(to))
+			return true;
+		if (! visited.add(from))
+			return false;
+		ArrayList<URI> waits = g_waits.get(from);
+		if (waits != null)
+		{
+			for (int i = 0; i < waits.size(); i++)
+			{
+				if (isWaiting(waits.get(i), to, visited))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Resolve the specified reference on the executor, or on the calling
+	 * thread if there is none.
+	 * 
+	 * @param uri The qualified URI of the reference.
+	 * 
+	 * @return A future completed with the referenced object is returned.
+	 */
+	CompletableFuture<M3GObject> resolveAsync(final URI uri)
+	{
+		final CompletableFuture<M3GObject> future = new CompletableFuture<M3GObject>();
+		Runnable task = new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					future.complete(resolve(uri));
+				} catch (Throwable ex)
+				{
+					future.completeExceptionally(ex);
+				}
+			}
+		};
+		if (m_executor != null)
+			m_executor.execute(task);
+		else
+			task.run();
+		return future;
+	}
+
+	// Load the referenced M3G file, from the data already read if given,
+	// and get the sub-graph of its first root object.
+	private M3GObject loadRoot(URI uri, byte data[]) throws IOException
+	{
+		M3GFile m3gFile;
+		if (data == null)
+			m3gFile = M3GFile.map(toPath(uri), m_flags, this);
+		else
+			m3gFile = M3GFile.load(ByteBuffer.wrap(data), enter(uri, m_flags));
+
+		SceneSection scenes[] = m3gFile.getSceneSections();
+		for (int i = 0; i < scenes.length; i++)
+		{
+			Object3D objects[] = scenes[i].getObjects3D();
+			for (int j = 0; j < objects.length; j++)
+			{
+				if (objects[j].isRoot())
+					return new SubGraph(objects[j], m_registry);
+			}
+		}
+		throw new IOException("M3GLoadContext: no root object in " + uri);
+	}
+
+	// Determine whether the file at the specified URI is a M3G file.
+	private static boolean isM3G(URI uri)
+	{
+		try
+		{
+			InputStream is = Files.newInputStream(toPath(uri));
+			try
+			{
+				byte id[] = new byte[M3GFile.FILE_IDENTIFIER.length];
+				int n = is.readNBytes(id, 0, id.length);
+				return (n == id.length) && Arrays.equals(id, M3GFile.FILE_IDENTIFIER);
+			} finally
+			{
+				is.close();
+			}
+		} catch (IOException ex)
+		{
+			// Let the image resolver report it.
+			return false;
+		} catch (RuntimeException ex)
+		{
+			return false;
+		}
+	}
+
+	// Determine whether the data read is a M3G file.
+	private static boolean isM3G(byte data[])
+	{
+		int length = M3GFile.FILE_IDENTIFIER.length;
+		return (data.length >= length) &&
+			Arrays.equals(Arrays.copyOf(data, length), M3GFile.FILE_IDENTIFIER);
+	}
+
+	// Read the whole resource at the specified URI.
+	private static byte[] read(URI uri) throws IOException
+	{
+		InputStream is = uri.toURL().openStream();
+		try
+		{
+			return is.readAllBytes();
+		} finally
+		{
+			is.close();
+		}
+	}
+
+	// Get the path of a file URI, or of a URI without a scheme.
+	private static Path toPath(URI uri)
+	{
+		if (uri.getScheme() == null)
+			return Paths.get(uri.getPath());
+		return Paths.get(uri);
+	}
+
+	// Give file URIs a single form, so that the same file is always
+	// represented by an equal URI.
+	private static URI canonicalize(URI uri)
+	{
+		if ("file".equals(uri.getScheme()))
+		{
+			try
+			{
+				return Paths.get(uri).toAbsolutePath().normalize().toUri();
+			} catch (RuntimeException ex)
+			{
+				// Not a local file; use the URI as it is.
+			}
+		}
+		return uri;
+	}
+}
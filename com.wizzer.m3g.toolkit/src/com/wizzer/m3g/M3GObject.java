@@ -65,9 +65,9 @@ public abstract class M3GObject
 
 	protected abstract void unmarshall(M3GInputStream is, ArrayList table) throws IOException;
 
-	protected abstract void marshall(M3GOutputStream os, ArrayList table) throws IOException;
+	protected abstract void marshall(M3GOutputStream os, ReferenceTable table) throws IOException;
 
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		if (! table.contains(this)) table.add(this);
 	}
@@ -81,20 +81,30 @@ public abstract class M3GObject
 	 * 
 	 * @return If the object exists at the specified index and it is of the correct
 	 * type, then it is returned. Otherwise, <b>null</b> will be returned.
+	 * 
+	 * @throws IOException This exception is thrown if the object has not
+	 * been unmarshalled yet and an error occurs reading its data.
 	 */
-	protected M3GObject getObjectAtIndex(ArrayList table, long index, int type)
+	protected M3GObject getObjectAtIndex(ArrayList table, long index, int type) throws IOException
 	{
 		if (index > 0 && index < table.size())
 		{
 			Object obj = table.get((int)(index & 0xffffffff));
+			if (obj instanceof DeferredObject)
+			{
+				// The object was only indexed; unmarshall it now.
+				obj = ((DeferredObject) obj).resolve();
+			}
+			if (obj instanceof ExternalReference)
+			{
+				// The object is an external reference; it stands for the
+				// object it resolves to, which must be of the correct type.
+				obj = ((ExternalReference) obj).resolveReference();
+			}
 			if ((obj instanceof M3GObject) && (type == -1 || ((M3GObject) obj).getObjectType() == type))
 			{
 				((M3GObject) obj).m_root = false;
 				return (M3GObject) obj;
-			} else  if ((obj instanceof M3GObject) && ((M3GObject) obj).getObjectType() == M3GObject.EXTERNAL_REFERENCE)
-			{
-				// The object is an external reference.
-				return ((ExternalReference) obj).getReference();
 			}
 			else return null;
 		}
@@ -37,8 +37,6 @@ public class M3GOutputStream extends FilterOutputStream
 {
 	// The Adler-32 checksum of the input stream.
 	private Adler32 m_adler32;
-	// Flag indicating whether to block the checksum computation.
-	private boolean m_blockAdler32;
 
 	/**
 	 * A constructor initializing the output stream.
@@ -62,8 +60,7 @@ public class M3GOutputStream extends FilterOutputStream
 	public void write(int b) throws IOException
 	{
 		super.write(b);
-		if (! m_blockAdler32)
-			m_adler32.update(b);
+		m_adler32.update(b);
 	}
 
 	/**
@@ -78,10 +75,9 @@ public class M3GOutputStream extends FilterOutputStream
 	 */
 	public void write(byte b[], int off, int len) throws IOException
 	{
-		m_blockAdler32 = true;
-		super.write(b, off, len);
+		// Write the bytes in bulk, rather than one at a time.
+		out.write(b, off, len);
 		m_adler32.update(b, off, len);
-		m_blockAdler32 = false;
 	}
 
 	/**
@@ -0,0 +1,83 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.IOException;
+
+/**
+ * The <code>M3GStreamListener</code> receives the contents of a M3G file as
+ * it is being parsed by a <code>M3GStreamReader</code>.
+ * <p>
+ * No <code>Object3D</code> instances are created by the reader; it is up to
+ * the listener to decode whatever it needs from the object data.
+ * </p>
+ */
+public interface M3GStreamListener
+{
+	/**
+	 * Called at the start of each section.
+	 * 
+	 * @param index The index of the section in the file, starting with
+	 * the Header Section at 0.
+	 * @param compressionScheme The compression scheme of the section,
+	 * either <code>Section.UNCOMPRESSED</code> or <code>Section.ZLIB</code>.
+	 * @param totalSectionLength The total length of the section, in bytes.
+	 * @param uncompressedLength The length of the section's object data
+	 * once uncompressed, in bytes.
+	 * 
+	 * @return <b>true</b> should be returned to receive the objects of the
+	 * section. If <b>false</b> is returned, the section is skipped without
+	 * being inflated; its checksum is still verified.
+	 * 
+	 * @throws IOException This exception may be thrown to abort parsing.
+	 */
+	public boolean onSection(int index, int compressionScheme,
+		long totalSectionLength, long uncompressedLength) throws IOException;
+
+	/**
+	 * Called for each object, including the header object.
+	 * <p>
+	 * The <i>view</i> is bounded to the object's data and is only valid for
+	 * the duration of the call. Any data not read by the listener is skipped.
+	 * </p>
+	 * 
+	 * @param type The object type, for example <code>M3GObject.MESH</code>.
+	 * @param length The length of the object's data, in bytes.
+	 * @param view The stream from which the object's data may be read.
+	 * 
+	 * @throws IOException This exception may be thrown to abort parsing.
+	 */
+	public void onObject(int type, long length, M3GInputStream view) throws IOException;
+
+	/**
+	 * Called for each object in the External References Section.
+	 * 
+	 * @param uri The URI of the external reference, exactly as it is
+	 * stored in the file.
+	 * 
+	 * @throws IOException This exception may be thrown to abort parsing.
+	 */
+	public void onExternalReference(String uri) throws IOException;
+}
@@ -0,0 +1,240 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * The <code>M3GStreamReader</code> is an event-driven parser for the
+ * Mobile 3D Graphics file format (.m3g extension).
+ * <p>
+ * Unlike <code>M3GFile</code>, which builds the complete scene graph, the
+ * reader pushes each section and object to a <code>M3GStreamListener</code>
+ * as it is encountered and keeps nothing alive afterwards. Compressed sections
+ * are inflated as a stream, so arbitrarily large files are parsed in constant
+ * memory. Section checksums are verified as each section is finished.
+ * </p>
+ */
+public class M3GStreamReader
+{
+	// The listener receiving the parse events.
+	private M3GStreamListener m_listener;
+
+	/**
+	 * A constructor specifying the listener to notify.
+	 * 
+	 * @param listener The listener receiving the parse events.
+	 */
+	public M3GStreamReader(M3GStreamListener listener)
+	{
+		if (listener == null)
+			throw new NullPointerException("M3GStreamReader: listener is null");
+		m_listener = listener;
+	}
+
+	/**
+	 * Parse the specified file.
+	 * 
+	 * @param file The M3G file to parse.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * reading the file, if the file is not a valid M3G file, or if the
+	 * listener aborts parsing.
+	 */
+	public void read(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			read(in);
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Parse the specified input stream. The stream is not closed.
+	 * 
+	 * @param in The stream to parse.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * reading the stream, if the data is not a valid M3G file, or if the
+	 * listener aborts parsing.
+	 */
+	public void read(InputStream in) throws IOException
+	{
+		M3GInputStream is = new M3GInputStream(in);
+
+		// File Identifier.
+		byte id[] = new byte[M3GFile.FILE_IDENTIFIER.length];
+		if ((is.read(id) != id.length) || (! Arrays.equals(id, M3GFile.FILE_IDENTIFIER)))
+			throw new IOException("M3GStreamReader: FILE_IDENTIFIER");
+
+		for (int index = 0; ; index++)
+		{
+			is.resetAdler32();
+			int compressionScheme = is.read();
+			if (compressionScheme < 0)
+				break;
+			readSection(is, index, compressionScheme);
+		}
+	}
+
+	// Parse the remainder of a section, starting after the compression scheme.
+	private void readSection(M3GInputStream is, int index, int compressionScheme) throws IOException
+	{
+		long totalSectionLength = is.readUInt32() & 0xffffffffL;
+		long uncompressedLength = is.readUInt32() & 0xffffffffL;
+		if (totalSectionLength < 13)
+			throw new IOException("M3GStreamReader: totalSectionLength = " + totalSectionLength);
+
+		BoundedInputStream payload = new BoundedInputStream(is, totalSectionLength - 13);
+		if (m_listener.onSection(index, compressionScheme, totalSectionLength, uncompressedLength))
+		{
+			InputStream data;
+			Inflater inflater = null;
+			if (compressionScheme == Section.ZLIB)
+			{
+				inflater = new Inflater(false);
+				data = new InflaterInputStream(payload, inflater);
+			}
+			else if (compressionScheme == Section.UNCOMPRESSED)
+				data = payload;
+			else
+				throw new IOException("M3GStreamReader: compressionScheme = " + compressionScheme);
+
+			try
+			{
+				readObjects(new M3GInputStream(new BoundedInputStream(data, uncompressedLength)));
+			} finally
+			{
+				if (inflater != null)
+					inflater.end();
+			}
+		}
+		// Consume whatever is left so that it is included in the checksum.
+		payload.skipRemaining();
+
+		int checksum_is = (int)is.getAdler32Value();
+		int checksum = (int)is.readUInt32();
+		if (checksum != checksum_is)
+			throw new IOException("M3GStreamReader: section " + index + " checksum = " + checksum);
+	}
+
+	// Parse the objects of an uncompressed section.
+	private void readObjects(M3GInputStream is) throws IOException
+	{
+		for (int type; (type = is.read()) >= 0; )
+		{
+			long length = is.readUInt32() & 0xffffffffL;
+			BoundedInputStream body = new BoundedInputStream(is, length);
+			M3GInputStream view = new M3GInputStream(body);
+
+			if (type == M3GObject.EXTERNAL_REFERENCE)
+				m_listener.onExternalReference(view.readString());
+			else
+				m_listener.onObject(type, length, view);
+
+			// Skip the part of the object the listener did not read.
+			body.skipRemaining();
+		}
+	}
+
+	/**
+	 * An input stream limited to a fixed number of bytes of an underlying
+	 * stream. Closing it does not close the underlying stream.
+	 */
+	private static class BoundedInputStream extends FilterInputStream
+	{
+		// The number of bytes left to read.
+		private long m_remaining;
+
+		BoundedInputStream(InputStream in, long length)
+		{
+			super(in);
+			m_remaining = length;
+		}
+
+		public int read() throws IOException
+		{
+			if (m_remaining <= 0)
+				return -1;
+			int b = in.read();
+			if (b >= 0)
+				m_remaining--;
+			return b;
+		}
+
+		public int read(byte b[], int off, int len) throws IOException
+		{
+			if (m_remaining <= 0)
+				return -1;
+			int count = in.read(b, off, (int)Math.min(len, m_remaining));
+			if (count > 0)
+				m_remaining -= count;
+			return count;
+		}
+
+		public long skip(long n) throws IOException
+		{
+			long count = in.skip(Math.min(n, m_remaining));
+			if (count > 0)
+				m_remaining -= count;
+			return count;
+		}
+
+		public int available() throws IOException
+		{
+			return (int)Math.min(in.available(), m_remaining);
+		}
+
+		public void close()
+		{
+			// Do not close the underlying stream.
+		}
+
+		public boolean markSupported()
+		{
+			return false;
+		}
+
+		// Skip to the end of the bounded region.
+		void skipRemaining() throws IOException
+		{
+			while (m_remaining > 0)
+			{
+				if (skip(m_remaining) <= 0)
+				{
+					// Skip made no progress; make sure we are not at the end.
+					if (read() < 0)
+						throw new EOFException("M3GStreamReader: unexpected end of stream");
+				}
+			}
+		}
+	}
+}
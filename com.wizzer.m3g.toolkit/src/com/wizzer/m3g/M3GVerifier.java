@@ -0,0 +1,301 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * The <code>M3GVerifier</code> checks the integrity of a M3G file without
+ * unmarshalling any of its objects. It is not a runtime construct called
+ * out by the M3G Specification.
+ * <p>
+ * The file is streamed and the Adler32 checksum of every section is
+ * verified. Optionally, compressed sections are also inflated to confirm
+ * that they decompress to their <code>uncompressedLength</code>. Reading
+ * and checksumming run on the calling thread while a second thread
+ * inflates the sections already read, the two stages being connected by a
+ * small bounded queue.
+ * </p>
+ */
+public class M3GVerifier
+{
+	// The number of sections that may wait to be inflated.
+	private static final int QUEUE_SIZE = 2;
+	// Marks the end of the sections to inflate.
+	private static final Job END = new Job(-1, null, 0);
+
+	// Flag indicating whether compressed sections are inflated.
+	private boolean m_inflate;
+
+	/**
+	 * Create a verifier that checks the section checksums only.
+	 */
+	public M3GVerifier()
+	{
+		this(false);
+	}
+
+	/**
+	 * Create a verifier.
+	 * 
+	 * @param inflate <b>true</b> if compressed sections should also be
+	 * inflated to verify their uncompressed length.
+	 */
+	public M3GVerifier(boolean inflate)
+	{
+		m_inflate = inflate;
+	}
+
+	/**
+	 * Determine whether the specified file is intact.
+	 * 
+	 * @param file The M3G file to verify.
+	 * 
+	 * @return <b>true</b> is returned if the file passes verification.
+	 * Otherwise, <b>false</b> will be returned.
+	 */
+	public boolean isIntact(File file)
+	{
+		try
+		{
+			verify(file);
+			return true;
+		} catch (IOException ex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Verify the specified file.
+	 * 
+	 * @param file The M3G file to verify.
+	 * 
+	 * @return The descriptors of the sections of the file are returned.
+	 * 
+	 * @throws IOException This exception is thrown if the file can not be
+	 * read or fails verification. The message identifies the section.
+	 */
+	public SectionDescriptor[] verify(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			return verify(in);
+		} finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Verify the M3G file read from the specified stream. The stream is
+	 * read to the end of the file, but is not closed.
+	 * 
+	 * @param in The stream to read the file from.
+	 * 
+	 * @return The descriptors of the sections of the file are returned.
+	 * 
+	 * @throws IOException This exception is thrown if the stream can not be
+	 * read or the file fails verification. The message identifies the
+	 * section.
+	 */
+	public SectionDescriptor[] verify(InputStream in) throws IOException
+	{
+		M3GInputStream is = new M3GInputStream(in);
+
+		byte id[] = new byte[M3GFile.FILE_IDENTIFIER.length];
+		if ((is.read(id) != id.length) || (! Arrays.equals(id, M3GFile.FILE_IDENTIFIER)))
+			throw new IOException("M3GVerifier: FILE_IDENTIFIER");
+
+		Inflation inflation = null;
+		if (m_inflate)
+		{
+			inflation = new Inflation();
+			Thread thread = new Thread(inflation, "M3GVerifier");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		ArrayList<SectionDescriptor> descriptors = new ArrayList<SectionDescriptor>();
+		try
+		{
+			while (true)
+			{
+				long offset = is.getPosition();
+				is.resetAdler32();
+				int compressionScheme = is.read();
+				if (compressionScheme < 0)
+					break;
+
+				int index = descriptors.size();
+				long totalSectionLength = is.readUInt32();
+				long uncompressedLength = is.readUInt32();
+				if ((totalSectionLength < 13) || (totalSectionLength > Integer.MAX_VALUE))
+					throw new IOException("M3GVerifier: section " + index + " totalSectionLength = " + totalSectionLength);
+				if ((compressionScheme != Section.UNCOMPRESSED) && (compressionScheme != Section.ZLIB))
+					throw new IOException("M3GVerifier: section " + index + " compressionScheme = " + compressionScheme);
+				if ((compressionScheme == Section.UNCOMPRESSED) && (uncompressedLength != totalSectionLength - 13))
+					throw new IOException("M3GVerifier: section " + index + " uncompressedLength = " + uncompressedLength);
+
+				ByteBuffer data = is.readBuffer((int)totalSectionLength - 13);
+				int checksum = (int)is.getAdler32Value();
+				if ((int)is.readUInt32() != checksum)
+					throw new IOException("M3GVerifier: section " + index + " checksum");
+
+				if ((inflation != null) && (compressionScheme == Section.ZLIB))
+					inflation.put(new Job(index, data, uncompressedLength));
+				descriptors.add(new SectionDescriptor(offset, compressionScheme, (int)totalSectionLength, (int)uncompressedLength));
+			}
+		} catch (IOException ex)
+		{
+			// Report this error rather than one of the inflation stage.
+			if (inflation != null)
+			{
+				try
+				{
+					inflation.finish();
+				} catch (IOException ignored) {}
+			}
+			throw ex;
+		}
+		if (inflation != null)
+			inflation.finish();
+
+		if (descriptors.isEmpty())
+			throw new IOException("M3GVerifier: no Header Section");
+		return descriptors.toArray(new SectionDescriptor[descriptors.size()]);
+	}
+
+	// A compressed section to inflate.
+	private static class Job
+	{
+		int m_index;
+		ByteBuffer m_data;
+		long m_uncompressedLength;
+
+		Job(int index, ByteBuffer data, long uncompressedLength)
+		{
+			m_index = index;
+			m_data = data;
+			m_uncompressedLength = uncompressedLength;
+		}
+	}
+
+	// The second stage of the pipeline, inflating the compressed sections
+	// on its own thread.
+	private static class Inflation implements Runnable
+	{
+		// The sections waiting to be inflated.
+		private BlockingQueue<Job> m_queue = new ArrayBlockingQueue<Job>(QUEUE_SIZE);
+		// The first error found.
+		private volatile IOException m_error;
+		// Signalled when the thread is done.
+		private CountDownLatch m_done = new CountDownLatch(1);
+
+		public void run()
+		{
+			Inflater inflater = new Inflater(false);
+			byte buffer[] = new byte[64 * 1024];
+			try
+			{
+				while (true)
+				{
+					Job job = m_queue.take();
+					if (job == END)
+						break;
+					// Keep draining the queue after an error.
+					if (m_error == null)
+						inflate(inflater, buffer, job);
+				}
+			} catch (InterruptedException ex)
+			{
+				m_error = new InterruptedIOException("M3GVerifier: interrupted");
+			} finally
+			{
+				inflater.end();
+				m_done.countDown();
+			}
+		}
+
+		private void inflate(Inflater inflater, byte buffer[], Job job)
+		{
+			inflater.reset();
+			inflater.setInput(job.m_data);
+			long length = 0;
+			try
+			{
+				while (! inflater.finished())
+				{
+					int n = inflater.inflate(buffer);
+					if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+						break;
+					length += n;
+				}
+			} catch (DataFormatException ex)
+			{
+				m_error = new IOException("M3GVerifier: section " + job.m_index + " ZLIB: " + ex.getMessage());
+				return;
+			}
+			if (! inflater.finished())
+				m_error = new IOException("M3GVerifier: section " + job.m_index + " truncated ZLIB stream");
+			else if (length != job.m_uncompressedLength)
+				m_error = new IOException("M3GVerifier: section " + job.m_index + " uncompressedLength = " + job.m_uncompressedLength + ", inflated " + length);
+		}
+
+		// Queue a section, reporting any error found so far.
+		void put(Job job) throws IOException
+		{
+			if (m_error != null)
+				throw m_error;
+			try
+			{
+				m_queue.put(job);
+			} catch (InterruptedException ex)
+			{
+				throw new InterruptedIOException("M3GVerifier: interrupted");
+			}
+		}
+
+		// Wait for the queued sections, reporting any error found.
+		void finish() throws IOException
+		{
+			try
+			{
+				m_queue.put(END);
+				m_done.await();
+			} catch (InterruptedException ex)
+			{
+				throw new InterruptedIOException("M3GVerifier: interrupted");
+			}
+			if (m_error != null)
+				throw m_error;
+		}
+	}
+}
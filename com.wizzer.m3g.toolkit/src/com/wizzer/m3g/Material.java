@@ -73,6 +73,7 @@ public class Material extends Object3D
 
 	public void setColor(int target, int ARGB)
 	{
+		setDirty();
 		int ambient = (target & AMBIENT);
 		int diffuse = (target & DIFFUSE);
 		int emissive = (target & EMISSIVE);
@@ -97,6 +98,7 @@ public class Material extends Object3D
 
 	public void setShininess(float shininess)
 	{
+		setDirty();
 		if (shininess < 0 || shininess > 128)
 			throw new IllegalArgumentException("Material: shininess is not in [0, 128]");
 		m_shininess=shininess;
@@ -109,6 +111,7 @@ public class Material extends Object3D
 
 	public void setVertexColorTrackingEnabled(boolean enable)
 	{
+		setDirty();
 		m_vertexColorTrackingEnabled = enable;
 	}
 
@@ -142,7 +145,7 @@ public class Material extends Object3D
 		setVertexColorTrackingEnabled(is.readBoolean());
 	}
 
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -64,6 +64,7 @@ public class Mesh extends Node
 
 	public void setAppearance(int index,Appearance appearance)
 	{
+		setDirty();
 		m_appearances[index] = appearance;
 	}
 
@@ -179,7 +180,7 @@ public class Mesh extends Node
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -218,7 +219,7 @@ public class Mesh extends Node
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		m_vertexBuffer.buildReferenceTable(table);
 		for (int i = 0; i < getSubmeshCount(); i++)
@@ -0,0 +1,627 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Import Wizzer Works M3G Toolkit classes.
+import com.wizzer.m3g.nvtristrip.*;
+
+/**
+ * The <code>MeshOptimizer</code> reorders the triangles of meshes for the
+ * post-transform vertex cache. It is not a runtime construct called out by
+ * the M3G Specification.
+ * <p>
+ * The triangles of each <code>TriangleStripArray</code> of explicit indices
+ * are reordered with a <code>VertexCacheOptimizer</code> and joined into
+ * strips, and those strips are written as they are, in place of the
+ * stripification search normally done when the array is written. This
+ * takes a small fraction of the time of the search.
+ * </p><p>
+ * Optionally, the vertices are also renumbered in the order the submeshes
+ * first use them, and the vertex arrays rewritten to match, so that the
+ * indices become mostly ascending and deflate better. Vertices are not
+ * reordered for a <code>MorphingMesh</code> or a <code>SkinnedMesh</code>,
+ * whose morph targets and bones refer to the vertices by number, nor for
+ * a mesh with a submesh of implicit indices. Nor are they reordered for a
+ * mesh whose vertex buffer, vertex arrays or index buffers are referenced
+ * by any other object found, since renumbering the vertices in place would
+ * corrupt that object.
+ * </p><p>
+ * The optimizer can also run, ahead of writing, the stripification search
+ * for every array reachable from a <code>World</code> or a
+ * <code>SceneSection</code>. The trials of all the arrays are shared among
+ * a bounded number of threads, and the strips found are kept by the arrays
+ * and written without searching again.
+ * </p>
+ */
+public class MeshOptimizer
+{
+	// The referrer of the objects passed to the optimizer.
+	private static final Object g_caller = new Object();
+
+	// The size of the cache to optimize for.
+	private int m_cacheSize;
+	// Flag indicating whether vertices are reordered.
+	private boolean m_reorderVertices;
+	// The maximum number of threads stripification runs on at once.
+	private int m_parallelism;
+	// The executor stripification runs on, or null.
+	private Executor m_executor;
+
+	/**
+	 * Create an optimizer for the default cache size, which does not
+	 * reorder vertices, and stripifies on up to one thread per processor.
+	 */
+	public MeshOptimizer()
+	{
+		m_cacheSize = VertexCacheOptimizer.DEFAULT_CACHE_SIZE;
+		m_parallelism = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Set the size of the cache to optimize for.
+	 * 
+	 * @param cacheSize The number of vertices the cache holds.
+	 */
+	public void setCacheSize(int cacheSize)
+	{
+		if (cacheSize < 1)
+			throw new IllegalArgumentException("MeshOptimizer: cacheSize must be positive");
+		m_cacheSize = cacheSize;
+	}
+
+	public int getCacheSize()
+	{
+		return m_cacheSize;
+	}
+
+	/**
+	 * Set whether vertices are renumbered in the order they are first used.
+	 * <p>
+	 * The vertex arrays of a mesh's vertex buffer are rewritten in place,
+	 * so a mesh's vertices are only renumbered if its vertex buffer, the
+	 * arrays of the vertex buffer and its index buffers are referenced by
+	 * the mesh alone among the objects searched.
+	 * </p>
+	 * 
+	 * @param reorderVertices <b>true</b> to reorder vertices.
+	 */
+	public void setReorderVertices(boolean reorderVertices)
+	{
+		m_reorderVertices = reorderVertices;
+	}
+
+	public boolean getReorderVertices()
+	{
+		return m_reorderVertices;
+	}
+
+	/**
+	 * Set the maximum number of threads stripification runs on at once,
+	 * including the calling thread.
+	 * 
+	 * @param parallelism The number of threads.
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("MeshOptimizer: parallelism must be positive");
+		m_parallelism = parallelism;
+	}
+
+	public int getParallelism()
+	{
+		return m_parallelism;
+	}
+
+	/**
+	 * Set the executor stripification runs on, besides the calling thread.
+	 * 
+	 * @param executor The executor, or <b>null</b>, the default, to start
+	 * threads of its own for each stripification.
+	 */
+	public void setExecutor(Executor executor)
+	{
+		m_executor = executor;
+	}
+
+	public Executor getExecutor()
+	{
+		return m_executor;
+	}
+
+	/**
+	 * Optimize the submeshes of a mesh.
+	 * <p>
+	 * The scene graph the mesh belongs to, from the root of its ancestors,
+	 * is searched for other objects referencing the buffers of the mesh.
+	 * Objects outside that scene graph are not seen; pass them, with the
+	 * mesh, to <code>optimize(Object3D[])</code> to search them too.
+	 * </p>
+	 * 
+	 * @param mesh The mesh to optimize.
+	 */
+	public void optimize(Mesh mesh)
+	{
+		Node root = mesh;
+		while (root.getParent() != null)
+			root = root.getParent();
+		IdentityHashMap referrers = new IdentityHashMap();
+		findReferrers(new Object3D[] { root }, referrers);
+		optimize(mesh, newVertexCacheOptimizer(), referrers, new IdentityHashMap());
+	}
+
+	/**
+	 * Optimize every mesh reachable from a world.
+	 * 
+	 * @param world The world to optimize.
+	 * 
+	 * @return The number of meshes optimized is returned.
+	 * 
+	 * @see #optimize(Object3D[])
+	 */
+	public int optimize(World world)
+	{
+		return optimize(new Object3D[] { world });
+	}
+
+	/**
+	 * Optimize every mesh reachable from the objects of a section.
+	 * 
+	 * @param section The section to optimize.
+	 * 
+	 * @return The number of meshes optimized is returned.
+	 * 
+	 * @see #optimize(Object3D[])
+	 */
+	public int optimize(SceneSection section)
+	{
+		return optimize(section.getObjects3D());
+	}
+
+	/**
+	 * Optimize every mesh reachable from the objects.
+	 * <p>
+	 * Each index buffer is optimized once, however many meshes use it. The
+	 * vertices of a mesh are only reordered if its buffers are referenced
+	 * by no other object reachable from the objects, nor passed in the
+	 * objects themselves.
+	 * </p>
+	 * 
+	 * @param objects The objects to optimize.
+	 * 
+	 * @return The number of meshes optimized is returned.
+	 */
+	public int optimize(Object3D objects[])
+	{
+		IdentityHashMap referrers = new IdentityHashMap();
+		ArrayList found = findReferrers(objects, referrers);
+		VertexCacheOptimizer optimizer = newVertexCacheOptimizer();
+		IdentityHashMap optimized = new IdentityHashMap();
+		int count = 0;
+		for (int i = 0; i < found.size(); i++)
+		{
+			if (found.get(i) instanceof Mesh)
+			{
+				optimize((Mesh)found.get(i), optimizer, referrers, optimized);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stripify every array of explicit indices reachable from a world.
+	 * 
+	 * @param world The world to stripify.
+	 * 
+	 * @return The number of arrays stripified is returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * stripifying an array, in which case no array keeps its strips.
+	 * 
+	 * @see #stripify(Object3D[])
+	 */
+	public int stripify(World world) throws IOException
+	{
+		return stripify(new Object3D[] { world });
+	}
+
+	/**
+	 * Stripify every array of explicit indices reachable from the objects
+	 * of a section.
+	 * 
+	 * @param section The section to stripify.
+	 * 
+	 * @return The number of arrays stripified is returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * stripifying an array, in which case no array keeps its strips.
+	 * 
+	 * @see #stripify(Object3D[])
+	 */
+	public int stripify(SceneSection section) throws IOException
+	{
+		return stripify(section.getObjects3D());
+	}
+
+	/**
+	 * Stripify every array of explicit indices reachable from the objects.
+	 * <p>
+	 * This runs the search a <code>TriangleStripArray</code> otherwise does
+	 * when it is written, for all the arrays at once. An array shared by
+	 * several meshes is searched once. Arrays ordered for the vertex cache,
+	 * and arrays already searched since they last changed, are skipped.
+	 * The stripification time budget set on <code>M3GFile</code> does not
+	 * apply.
+	 * </p><p>
+	 * The strips are kept by the arrays only once every search has
+	 * completed, and an array keeps its strips only if it has not changed
+	 * during the search.
+	 * </p>
+	 * 
+	 * @param objects The objects to stripify.
+	 * 
+	 * @return The number of arrays stripified is returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * stripifying an array, in which case no array keeps its strips.
+	 */
+	public int stripify(Object3D objects[]) throws IOException
+	{
+		// Gather the arrays, each once however many objects refer to it.
+		ArrayList searches = new ArrayList();
+		IdentityHashMap visited = new IdentityHashMap();
+		ArrayList stack = new ArrayList(Arrays.asList(objects));
+		while (! stack.isEmpty())
+		{
+			Object3D object = (Object3D)stack.remove(stack.size() - 1);
+			if ((object == null) || visited.containsKey(object))
+				continue;
+			visited.put(object, object);
+			if (object instanceof TriangleStripArray)
+			{
+				TriangleStripArray.StripSearch search = ((TriangleStripArray)object).newStripSearch();
+				if (search != null)
+					searches.add(search);
+			}
+			Object3D references[] = new Object3D[object.getReferences(null)];
+			object.getReferences(references);
+			for (int i = references.length - 1; i >= 0; i--)
+				stack.add(references[i]);
+		}
+		if (searches.isEmpty())
+			return 0;
+
+		// Start with the largest arrays, so that they do not finish last.
+		Collections.sort(searches, new Comparator()
+		{
+			public int compare(Object o1, Object o2)
+			{
+				return ((TriangleStripArray.StripSearch)o2).getFaceCount() -
+					((TriangleStripArray.StripSearch)o1).getFaceCount();
+			}
+		});
+		StripPass pass = new StripPass((TriangleStripArray.StripSearch[])searches.toArray(
+			new TriangleStripArray.StripSearch[searches.size()]));
+		pass.run(m_parallelism, m_executor);
+
+		int count = 0;
+		for (int i = 0; i < pass.m_searches.length; i++)
+		{
+			TriangleStripArray.StripSearch search = pass.m_searches[i];
+			if (search.getArray().keepStrippedData(search, search.getResult()))
+				count++;
+		}
+		return count;
+	}
+
+	// Create a vertex cache optimizer for the cache size.
+	private VertexCacheOptimizer newVertexCacheOptimizer()
+	{
+		VertexCacheOptimizer optimizer = new VertexCacheOptimizer();
+		optimizer.setCacheSize(m_cacheSize);
+		return optimizer;
+	}
+
+	// Optimize the submeshes of the mesh, skipping the index buffers
+	// already optimized.
+	private void optimize(Mesh mesh, VertexCacheOptimizer optimizer, IdentityHashMap referrers,
+		IdentityHashMap optimized)
+	{
+		for (int i = 0; i < mesh.getSubmeshCount(); i++)
+		{
+			IndexBuffer submesh = mesh.getIndexBuffer(i);
+			if ((submesh instanceof TriangleStripArray) && ! optimized.containsKey(submesh))
+			{
+				optimized.put(submesh, submesh);
+				((TriangleStripArray)submesh).optimizeVertexCache(optimizer);
+			}
+		}
+		if (m_reorderVertices)
+			reorderVertices(mesh, referrers);
+	}
+
+	// Find the objects reachable from the objects, in the order they are
+	// first reached, and the objects referencing each of them. The objects
+	// themselves are also referenced by the caller.
+	private static ArrayList findReferrers(Object3D objects[], IdentityHashMap referrers)
+	{
+		ArrayList found = new ArrayList();
+		ArrayList stack = new ArrayList();
+		for (int i = objects.length - 1; i >= 0; i--)
+		{
+			if (objects[i] == null)
+				continue;
+			addReferrer(referrers, objects[i], g_caller);
+			stack.add(objects[i]);
+		}
+		IdentityHashMap visited = new IdentityHashMap();
+		while (! stack.isEmpty())
+		{
+			Object3D object = (Object3D)stack.remove(stack.size() - 1);
+			if (visited.containsKey(object))
+				continue;
+			visited.put(object, object);
+			found.add(object);
+			Object3D references[] = new Object3D[object.getReferences(null)];
+			object.getReferences(references);
+			for (int i = references.length - 1; i >= 0; i--)
+			{
+				if (references[i] == null)
+					continue;
+				addReferrer(referrers, references[i], object);
+				stack.add(references[i]);
+			}
+		}
+		return found;
+	}
+
+	private static void addReferrer(IdentityHashMap referrers, Object object, Object referrer)
+	{
+		ArrayList list = (ArrayList)referrers.get(object);
+		if (list == null)
+		{
+			list = new ArrayList();
+			referrers.put(object, list);
+		}
+		for (int i = 0; i < list.size(); i++)
+		{
+			if (list.get(i) == referrer)
+				return;
+		}
+		list.add(referrer);
+	}
+
+	// Determine whether the object is referenced by the specified object alone.
+	private static boolean isReferencedBy(IdentityHashMap referrers, Object object, Object referrer)
+	{
+		ArrayList list = (ArrayList)referrers.get(object);
+		return (list != null) && (list.size() == 1) && (list.get(0) == referrer);
+	}
+
+	// Renumber the vertices of the mesh in the order they are first used.
+	private void reorderVertices(Mesh mesh, IdentityHashMap referrers)
+	{
+		if ((mesh instanceof MorphingMesh) || (mesh instanceof SkinnedMesh))
+			return;
+		VertexBuffer vertices = mesh.getVertexBuffer();
+		int numVertices = vertices.getVertexCount();
+		if (numVertices == 0)
+			return;
+		if (! isReferencedBy(referrers, vertices, mesh))
+			return;
+
+		// Gather the arrays of the vertex buffer, each once, since an
+		// array may be used for more than one attribute.
+		ArrayList arrays = new ArrayList();
+		Object3D references[] = new Object3D[vertices.getReferences(null)];
+		vertices.getReferences(references);
+		for (int i = 0; i < references.length; i++)
+		{
+			if (! (references[i] instanceof VertexArray) || arrays.contains(references[i]))
+				continue;
+			if (! isReferencedBy(referrers, references[i], vertices))
+				return;
+			arrays.add(references[i]);
+		}
+
+		// Gather the submeshes, each once, and all their indices.
+		ArrayList submeshes = new ArrayList();
+		int numIndices = 0;
+		for (int i = 0; i < mesh.getSubmeshCount(); i++)
+		{
+			IndexBuffer submesh = mesh.getIndexBuffer(i);
+			if (submeshes.contains(submesh))
+				continue;
+			if (! (submesh instanceof TriangleStripArray))
+				return;
+			if (! isReferencedBy(referrers, submesh, mesh))
+				return;
+			int indices[] = ((TriangleStripArray)submesh).getIndices();
+			if (indices == null)
+				return;
+			submeshes.add(submesh);
+			numIndices += indices.length;
+		}
+		int indices[] = new int[numIndices];
+		numIndices = 0;
+		for (int i = 0; i < submeshes.size(); i++)
+		{
+			int submeshIndices[] = ((TriangleStripArray)submeshes.get(i)).getIndices();
+			for (int j = 0; j < submeshIndices.length; j++)
+			{
+				// An index past the vertices would fail to render anyway.
+				if (submeshIndices[j] >= numVertices)
+					return;
+			}
+			System.arraycopy(submeshIndices, 0, indices, numIndices, submeshIndices.length);
+			numIndices += submeshIndices.length;
+		}
+		int remap[] = VertexCacheOptimizer.remapVertices(indices, numVertices);
+
+		// Renumber the indices and move the vertices to match.
+		for (int i = 0; i < submeshes.size(); i++)
+			((TriangleStripArray)submeshes.get(i)).remapIndices(remap);
+		for (int i = 0; i < arrays.size(); i++)
+			reorder((VertexArray)arrays.get(i), remap);
+	}
+
+	// Move each vertex of the array to its new number.
+	private void reorder(VertexArray array, int remap[])
+	{
+		int numVertices = array.getVertexCount();
+		int numComponents = array.getComponentCount();
+		if (array.getComponentSize() == 1)
+		{
+			byte values[] = new byte[numVertices * numComponents];
+			byte reordered[] = new byte[values.length];
+			array.get(0, numVertices, values);
+			for (int v = 0; v < numVertices; v++)
+				System.arraycopy(values, v * numComponents, reordered, remap[v] * numComponents, numComponents);
+			array.set(0, numVertices, reordered);
+		}
+		else
+		{
+			short values[] = new short[numVertices * numComponents];
+			short reordered[] = new short[values.length];
+			array.get(0, numVertices, values);
+			for (int v = 0; v < numVertices; v++)
+				System.arraycopy(values, v * numComponents, reordered, remap[v] * numComponents, numComponents);
+			array.set(0, numVertices, reordered);
+		}
+	}
+
+	// The trials of a set of searches, taken in turn by each thread.
+	private static class StripPass implements Runnable
+	{
+		// The searches.
+		private TriangleStripArray.StripSearch m_searches[];
+		// The number of trials of each search, including trial -1.
+		private int m_trialCount;
+		// The next trial to run, counting through every search.
+		private AtomicInteger m_next;
+		// The first error, or null.
+		private volatile Throwable m_failure;
+		// Counts the threads still running, besides the calling thread.
+		private CountDownLatch m_running;
+
+		StripPass(TriangleStripArray.StripSearch searches[])
+		{
+			m_searches = searches;
+			m_trialCount = searches[0].getTrialCount() + 1;
+			m_next = new AtomicInteger();
+		}
+
+		// Run the trials on up to the specified number of threads, one of
+		// them the calling thread.
+		void run(int parallelism, Executor executor) throws IOException
+		{
+			int total = m_searches.length * m_trialCount;
+			int threads = Math.min(parallelism, total) - 1;
+			ExecutorService ownExecutor = null;
+			if ((threads > 0) && (executor == null))
+			{
+				ownExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+				{
+					public Thread newThread(Runnable r)
+					{
+						Thread thread = new Thread(r, "MeshOptimizer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				executor = ownExecutor;
+			}
+
+			m_running = new CountDownLatch(threads);
+			try
+			{
+				for (int i = 0; i < threads; i++)
+				{
+					try
+					{
+						executor.execute(this);
+					} catch (RejectedExecutionException ex)
+					{
+						// The other threads take its share.
+						m_running.countDown();
+					}
+				}
+				runTrials();
+				m_running.await();
+			} catch (InterruptedException ex)
+			{
+				m_failure = ex;
+				throw new InterruptedIOException("MeshOptimizer: interrupted");
+			} finally
+			{
+				if (ownExecutor != null)
+					ownExecutor.shutdown();
+			}
+
+			Throwable failure = m_failure;
+			if (failure instanceof IOException)
+				throw (IOException)failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			if (failure instanceof Error)
+				throw (Error)failure;
+		}
+
+		public void run()
+		{
+			try
+			{
+				runTrials();
+			} finally
+			{
+				m_running.countDown();
+			}
+		}
+
+		// Run trials until there are none left, or one has failed.
+		private void runTrials()
+		{
+			int total = m_searches.length * m_trialCount;
+			int next;
+			while ((m_failure == null) && ((next = m_next.getAndIncrement()) < total))
+			{
+				try
+				{
+					m_searches[next / m_trialCount].runTrial((next % m_trialCount) - 1);
+				} catch (Throwable ex)
+				{
+					if (m_failure == null)
+						m_failure = ex;
+				}
+			}
+		}
+	}
+}
@@ -64,6 +64,7 @@ public class MorphingMesh extends Mesh
 	
 	public void setWeights(float[] weights)
 	{
+		setDirty();
 		if (weights == null)
 			throw new NullPointerException("MorphingMesh: weights is null");
 		if (weights.length < m_morphTargetCount)
@@ -132,7 +133,7 @@ public class MorphingMesh extends Mesh
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
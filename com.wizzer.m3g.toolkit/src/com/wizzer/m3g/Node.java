@@ -64,6 +64,7 @@ public abstract class Node extends Transformable
 
 	public void setRenderingEnable(boolean enable)
 	{
+		setDirty();
 		m_renderingEnabled = enable;
 	}
 
@@ -74,6 +75,7 @@ public abstract class Node extends Transformable
 
 	public void setPickingEnable(boolean enable)
 	{
+		setDirty();
 		m_pickingEnabled = enable;
 	}
 
@@ -84,6 +86,7 @@ public abstract class Node extends Transformable
 
 	public void setScope(int scope)
 	{
+		setDirty();
 		m_scope = scope;
 	}
 
@@ -94,6 +97,7 @@ public abstract class Node extends Transformable
 
 	public void setAlphaFactor(float alphaFactor)
 	{
+		setDirty();
 		if (alphaFactor < 0 || alphaFactor > 1)
 			throw new IllegalArgumentException("Node: alphaFactor is negative or greater than 1.0");
 
@@ -168,6 +172,7 @@ public abstract class Node extends Transformable
 
 	public void setAlignment(Node zRef, int zTarget, Node yRef, int yTarget)
 	{
+		setDirty();
 		if (zTarget < NONE || zTarget > Z_AXIS || yTarget < NONE || yTarget > Z_AXIS)
 			throw new IllegalArgumentException("Node: yTarget or zTarget is not one of the symbolic constants");
 		if ((zRef == yRef) && ((zTarget == yTarget) && (yTarget != NONE)))
@@ -274,7 +279,7 @@ public abstract class Node extends Transformable
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -302,7 +307,7 @@ public abstract class Node extends Transformable
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		if (m_zReference != null) m_zReference.buildReferenceTable(table);
 		if (m_yReference != null) m_yReference.buildReferenceTable(table);
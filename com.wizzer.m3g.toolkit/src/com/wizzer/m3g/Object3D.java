@@ -25,6 +25,7 @@ package com.wizzer.m3g;
 
 // Import standard Java classes.
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import java.util.logging.*;
 
@@ -38,6 +39,12 @@ public abstract class Object3D extends M3GObject
 	private Hashtable m_parameters;
 	// The associated user object.
 	private Object m_userObject;
+	// The encoded fields the object was read from, while it is unchanged.
+	private ByteBuffer m_encoded;
+	// The offsets of the object indices in the encoded fields.
+	private int m_referenceOffsets[];
+	// The objects the encoded object indices refer to.
+	private Object m_references[];
 
     ////////// Methods part of M3G Specification //////////
 	
@@ -77,6 +84,7 @@ public abstract class Object3D extends M3GObject
 
 	public void setUserID(int userID)
 	{
+		setDirty();
 		m_userID = userID;
 	}
 
@@ -101,6 +109,7 @@ public abstract class Object3D extends M3GObject
 		if (animationTrack == null)
 			throw new NullPointerException();
 		
+		setDirty();
 		m_animationTracks.add(animationTrack);
 	}
 
@@ -111,6 +120,7 @@ public abstract class Object3D extends M3GObject
 
 	public void removeAnimationTrack(AnimationTrack animationTrack)
 	{
+		setDirty();
 		m_animationTracks.remove(animationTrack);
 	}
 
@@ -121,6 +131,120 @@ public abstract class Object3D extends M3GObject
 
     ////////// Methods not part of M3G Specification //////////
 	
+	/**
+	 * Mark the object as changed.
+	 * <p>
+	 * An object read from a file loaded with
+	 * <code>M3GFile.LOAD_KEEP_ENCODED</code> keeps its encoded fields until
+	 * it is changed, and is written again by copying them, rewriting only the
+	 * indices of the objects it references. The setters of the object call
+	 * this method; call it after changing the object through an array
+	 * returned by one of its getters.
+	 * </p>
+	 */
+	public void setDirty()
+	{
+		m_encoded = null;
+		m_referenceOffsets = null;
+		m_references = null;
+	}
+
+	/**
+	 * Determine whether the object has to be marshalled when written.
+	 * 
+	 * @return <b>true</b> is returned if the object was not read from a
+	 * file, or has changed since. Otherwise, <b>false</b> is returned.
+	 */
+	public boolean isDirty()
+	{
+		return (m_encoded == null);
+	}
+
+	/**
+	 * Keep the encoded fields the object was just unmarshalled from.
+	 * 
+	 * @param data The encoded fields.
+	 * @param positions The positions of the object indices in the
+	 * encoded fields, as <code>Long</code> values.
+	 * @param table The cache of referenced objects the fields were
+	 * read with.
+	 */
+	void setEncoded(ByteBuffer data, ArrayList positions, ArrayList table)
+	{
+		int offsets[] = new int[positions.size()];
+		Object references[] = new Object[positions.size()];
+		for (int i = 0; i < offsets.length; i++)
+		{
+			offsets[i] = ((Long)positions.get(i)).intValue();
+			long index = data.getInt(offsets[i]) & 0xffffffffL;
+			if (index == 0)
+				continue;
+			Object obj = (index < table.size()) ? table.get((int)index) : null;
+			if (obj instanceof ExternalReference)
+			{
+				// The object holds the resolved object, which is what the
+				// table written for it will contain.
+				try
+				{
+					obj = ((ExternalReference)obj).resolveReference();
+				} catch (IOException ex)
+				{
+					obj = null;
+				}
+			}
+			if (! (obj instanceof M3GObject))
+			{
+				// The reference can not be rewritten.
+				setDirty();
+				return;
+			}
+			references[i] = obj;
+		}
+		m_encoded = data;
+		m_referenceOffsets = offsets;
+		m_references = references;
+	}
+
+	/**
+	 * Get the encoded fields the object was read from, with the indices
+	 * of the objects it references rewritten for the specified table.
+	 * 
+	 * @param table The cache of referenced objects.
+	 * 
+	 * @return The encoded fields are returned, or <b>null</b> if the object
+	 * is dirty, or references an object missing from the table, and has to
+	 * be marshalled instead.
+	 */
+	byte[] getEncoded(ReferenceTable table)
+	{
+		ByteBuffer encoded = m_encoded;
+		int offsets[] = m_referenceOffsets;
+		Object references[] = m_references;
+		if (encoded == null)
+			return null;
+
+		int indices[] = new int[references.length];
+		for (int i = 0; i < references.length; i++)
+		{
+			if (references[i] == null)
+				continue;
+			indices[i] = table.indexOf(references[i]);
+			if (indices[i] <= 0)
+				return null;
+		}
+
+		byte data[] = new byte[encoded.limit()];
+		encoded.duplicate().get(data);
+		for (int i = 0; i < offsets.length; i++)
+		{
+			data[offsets[i]] = (byte)indices[i];
+			data[offsets[i] + 1] = (byte)(indices[i] >> 8);
+			data[offsets[i] + 2] = (byte)(indices[i] >> 16);
+			data[offsets[i] + 3] = (byte)(indices[i] >> 24);
+		}
+		return data;
+	}
+
 	/**
 	 * Read field data.
 	 * 
@@ -168,7 +292,7 @@ public abstract class Object3D extends M3GObject
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		// Write userID
 		os.writeUInt32(m_userID);
@@ -201,7 +325,7 @@ public abstract class Object3D extends M3GObject
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		for (int i = 0; i < m_animationTracks.size(); i++)
 			((AnimationTrack)m_animationTracks.get(i)).buildReferenceTable(table);
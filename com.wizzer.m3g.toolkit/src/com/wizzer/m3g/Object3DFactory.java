@@ -21,20 +21,33 @@
 // COPYRIGHT_END
 
 // Declare package.
-package com.wizzer.m3g.nvtristrip;;
+package com.wizzer.m3g;
 
-// An edge class that knows its
-// indices, the two faces, and the next edge using
-// the lesser of the indices.
-class NvEdgeInfo
-{
-	public int m_v0, m_v1;
-	public NvFaceInfo m_face0, m_face1;
-	public NvEdgeInfo m_nextV0, m_nextV1;
+// Import standard Java classes.
+import java.io.*;
 
-	public NvEdgeInfo(int v0,int v1)
-	{
-		m_v0 = v0;
-		m_v1 = v1;
-	}
+/**
+ * An <code>Object3DFactory</code> creates the objects read from a Scene
+ * Section. It is not a runtime construct called out by the M3G Specification.
+ * <p>
+ * Factories are registered per object type with an
+ * <code>Object3DRegistry</code>. The object a factory creates is
+ * unmarshalled by the section, so it must be an empty object of the
+ * requested type.
+ * </p>
+ */
+public interface Object3DFactory
+{
+	/**
+	 * Create an object of the specified type.
+	 * 
+	 * @param type The M3G object type, for example <code>M3GObject.MESH</code>.
+	 * 
+	 * @return A new, empty object is returned, or <b>null</b> if objects
+	 * of this type are to be skipped.
+	 * 
+	 * @throws IOException This exception is thrown if the object can not
+	 * be created.
+	 */
+	public Object3D newObject3D(int type) throws IOException;
 }
@@ -0,0 +1,256 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+
+/**
+ * The <code>Object3DRegistry</code> maps the object types of a Scene Section
+ * to the factories creating them. It is not a runtime construct called out by
+ * the M3G Specification.
+ * <p>
+ * The factory of an object type is looked up by the type byte. A new
+ * registry creates the objects of every type defined by the M3G
+ * Specification; applications may replace the factory of a type, for
+ * example to skip the objects they have no use for. A registry is used
+ * for loads through <code>M3GLoadContext.setObjectRegistry()</code>.
+ * </p><p>
+ * Skipped objects do not appear in their section, and any object
+ * referencing a skipped object fails to load.
+ * </p>
+ */
+public class Object3DRegistry
+{
+	/** A factory skipping the objects of its type. */
+	public static final Object3DFactory SKIP = new Object3DFactory()
+	{
+		public Object3D newObject3D(int type)
+		{
+			return null;
+		}
+	};
+
+	/**
+	 * A factory for <code>Image2D</code> objects that reads the format and
+	 * the size of an image, but skips its palette and pixels. The images
+	 * can not be rendered or written.
+	 */
+	public static final Object3DFactory IMAGE2D_HEADER = new Object3DFactory()
+	{
+		public Object3D newObject3D(int type)
+		{
+			Image2D image = new Image2D();
+			image.setSkipPixels(true);
+			return image;
+		}
+	};
+
+	// The factories of the object types defined by the M3G Specification.
+	private static final Object3DFactory g_defaultFactories[] = createDefaultFactories();
+	// The registry used unless another one is specified.
+	private static final Object3DRegistry g_default = new Object3DRegistry();
+
+	// The factories, indexed by object type. The array is replaced, not
+	// modified, so that it may be read without locking.
+	private volatile Object3DFactory m_factories[];
+
+	/**
+	 * Create a registry with the factories of every object type defined by
+	 * the M3G Specification.
+	 */
+	public Object3DRegistry()
+	{
+		m_factories = g_defaultFactories.clone();
+	}
+
+	/**
+	 * Create a registry with the same factories as the specified registry.
+	 * 
+	 * @param registry The registry to copy.
+	 */
+	public Object3DRegistry(Object3DRegistry registry)
+	{
+		m_factories = registry.m_factories.clone();
+	}
+
+	/**
+	 * Get the registry used by loads that do not specify one.
+	 * 
+	 * @return The default registry is returned. Changes to it affect
+	 * every such load.
+	 */
+	public static Object3DRegistry getDefault()
+	{
+		return g_default;
+	}
+
+	/**
+	 * Set the factory of the specified object type.
+	 * 
+	 * @param type The M3G object type, for example <code>M3GObject.MESH</code>.
+	 * @param factory The factory creating the objects of the type, or
+	 * <b>null</b> to treat the type as an error.
+	 * 
+	 * @throws IllegalArgumentException This exception is thrown if
+	 * the type is not a Scene Section object type.
+	 */
+	public synchronized void setFactory(int type, Object3DFactory factory)
+	{
+		if ((type < M3GObject.ANIMATION_CONTROLLER) || (type > M3GObject.WORLD))
+			throw new IllegalArgumentException("Object3DRegistry: invalid type " + type);
+		Object3DFactory factories[] = m_factories.clone();
+		factories[type] = factory;
+		m_factories = factories;
+	}
+
+	/**
+	 * Get the factory of the specified object type.
+	 * 
+	 * @param type The M3G object type.
+	 * 
+	 * @return The factory is returned, or <b>null</b> if there is none.
+	 */
+	public Object3DFactory getFactory(int type)
+	{
+		Object3DFactory factories[] = m_factories;
+		if ((type < 0) || (type >= factories.length))
+			return null;
+		return factories[type];
+	}
+
+	/**
+	 * Create an object of the specified type.
+	 * 
+	 * @param type The M3G object type.
+	 * 
+	 * @return A new, empty object is returned, or <b>null</b> if the
+	 * object is to be skipped.
+	 * 
+	 * @throws IOException This exception is thrown if there is no
+	 * factory for the type, or the object can not be created.
+	 */
+	public Object3D newObject3D(int type) throws IOException
+	{
+		Object3DFactory factory = getFactory(type);
+		if (factory == null)
+			throw new IOException("SceneSection.type=" + type);
+		return factory.newObject3D(type);
+	}
+
+	// Create a factory for each object type defined by the M3G Specification.
+	private static Object3DFactory[] createDefaultFactories()
+	{
+		Object3DFactory factories[] = new Object3DFactory[M3GObject.WORLD + 1];
+		factories[M3GObject.ANIMATION_CONTROLLER] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new AnimationController(); }
+		};
+		factories[M3GObject.ANIMATION_TRACK] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new AnimationTrack(); }
+		};
+		factories[M3GObject.APPEARANCE] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Appearance(); }
+		};
+		factories[M3GObject.BACKGROUND] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Background(); }
+		};
+		factories[M3GObject.CAMERA] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Camera(); }
+		};
+		factories[M3GObject.COMPOSITING_MODE] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new CompositingMode(); }
+		};
+		factories[M3GObject.FOG] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Fog(); }
+		};
+		factories[M3GObject.POLYGON_MODE] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new PolygonMode(); }
+		};
+		factories[M3GObject.GROUP] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Group(); }
+		};
+		factories[M3GObject.IMAGE2D] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Image2D(); }
+		};
+		factories[M3GObject.TRIANGLE_STRIP_ARRAY] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new TriangleStripArray(); }
+		};
+		factories[M3GObject.LIGHT] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Light(); }
+		};
+		factories[M3GObject.MATERIAL] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Material(); }
+		};
+		factories[M3GObject.MESH] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Mesh(); }
+		};
+		factories[M3GObject.MORPHING_MESH] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new MorphingMesh(); }
+		};
+		factories[M3GObject.SKINNED_MESH] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new SkinnedMesh(); }
+		};
+		factories[M3GObject.TEXTURE2D] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Texture2D(); }
+		};
+		factories[M3GObject.SPRITE3D] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new Sprite3D(); }
+		};
+		factories[M3GObject.KEYFRAME_SEQUENCE] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new KeyframeSequence(); }
+		};
+		factories[M3GObject.VERTEX_ARRAY] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new VertexArray(); }
+		};
+		factories[M3GObject.VERTEX_BUFFER] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new VertexBuffer(); }
+		};
+		factories[M3GObject.WORLD] = new Object3DFactory()
+		{
+			public Object3D newObject3D(int type) { return new World(); }
+		};
+		return factories;
+	}
+}
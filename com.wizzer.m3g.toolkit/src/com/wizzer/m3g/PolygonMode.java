@@ -67,6 +67,7 @@ public class PolygonMode extends Object3D
 
 	public void setCulling(int mode)
 	{
+		setDirty();
 		if (mode < CULL_BACK || mode > CULL_NONE)
 			new IllegalArgumentException("PolygonMode: mode is not one of CULL_BACK, CULL_FRONT, CULL_NONE");
 		
@@ -80,6 +81,7 @@ public class PolygonMode extends Object3D
 
 	public void setWinding(int mode)
 	{
+		setDirty();
 		if (mode < WINDING_CCW || mode > WINDING_CW)
 			new IllegalArgumentException("PolygonMode: mode is not one of WINDING_CCW, WINDING_CW");
 		
@@ -93,6 +95,7 @@ public class PolygonMode extends Object3D
 
 	public void setShading(int mode)
 	{
+		setDirty();
 		if (mode < SHADE_FLAT || mode > SHADE_SMOOTH)
 			new IllegalArgumentException("PolygonMode: mode is not one of SHADE_FLAT, SHADE_SMOOTH");
 
@@ -106,6 +109,7 @@ public class PolygonMode extends Object3D
 
 	public void setTwoSidedLightingEnable(boolean enable)
 	{
+		setDirty();
 		m_twoSidedLightingEnabled = enable;
 	}
 
@@ -116,6 +120,7 @@ public class PolygonMode extends Object3D
 
 	public void setLocalCameraLightingEnable(boolean enable)
 	{
+		setDirty();
 		m_localCameraLightingEnabled = enable;
 	}
 
@@ -126,6 +131,7 @@ public class PolygonMode extends Object3D
 
 	public void setPerspectiveCorrectionEnable(boolean enable)
 	{
+		setDirty();
 		m_perspectiveCorrectionEnabled = enable;
 	}
 
@@ -159,7 +165,7 @@ public class PolygonMode extends Object3D
 		setPerspectiveCorrectionEnable(is.readBoolean());
 	}
 
-	protected void marshall(M3GOutputStream os,ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os,ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
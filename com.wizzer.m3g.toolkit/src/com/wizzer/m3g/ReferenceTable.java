@@ -0,0 +1,156 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The <code>ReferenceTable</code> is the cache of referenced objects used
+ * while marshalling a M3G file. It is not a runtime construct called out by
+ * the M3G Specification.
+ * <p>
+ * The objects are kept in file order, and are also indexed by identity so
+ * that <code>indexOf()</code> and <code>contains()</code> do not scan the
+ * table. Objects are only looked up by identity; M3G objects do not
+ * override <code>equals()</code>. The table is only ever appended to.
+ * </p><p>
+ * The table is created for each file written, and also carries the
+ * settings of the write that objects use when they are marshalled.
+ * </p>
+ */
+public final class ReferenceTable
+{
+	// The objects, in file order.
+	private ArrayList m_objects;
+	// The index of the first occurrence of each object.
+	private IdentityHashMap m_indices;
+	// The policy choosing the encoding vertex arrays are written with.
+	private int m_vertexEncodingPolicy;
+	// The pool stripification trials run on, or null.
+	private ForkJoinPool m_stripificationPool;
+	// The time stripification may take per array, in milliseconds, or 0.
+	private long m_stripificationTimeBudget;
+
+	public ReferenceTable()
+	{
+		m_objects = new ArrayList();
+		m_indices = new IdentityHashMap();
+		m_vertexEncodingPolicy = VertexArray.ENCODING_ESTIMATE;
+		m_stripificationPool = ForkJoinPool.commonPool();
+		m_stripificationTimeBudget = 0;
+	}
+
+	void setVertexEncodingPolicy(int policy)
+	{
+		m_vertexEncodingPolicy = policy;
+	}
+
+	/**
+	 * Get the policy choosing the encoding vertex arrays are written with.
+	 * 
+	 * @return One of the <code>VertexArray.ENCODING_</code> policies is
+	 * returned.
+	 */
+	public int getVertexEncodingPolicy()
+	{
+		return m_vertexEncodingPolicy;
+	}
+
+	void setStripificationPool(ForkJoinPool pool)
+	{
+		m_stripificationPool = pool;
+	}
+
+	/**
+	 * Get the pool the stripification trials of triangle strip arrays
+	 * run on.
+	 * 
+	 * @return The pool is returned, or <b>null</b> if the trials run on
+	 * the writing thread.
+	 */
+	public ForkJoinPool getStripificationPool()
+	{
+		return m_stripificationPool;
+	}
+
+	void setStripificationTimeBudget(long millis)
+	{
+		m_stripificationTimeBudget = millis;
+	}
+
+	/**
+	 * Get the time the stripification trials may take for each triangle
+	 * strip array.
+	 * 
+	 * @return The time budget in milliseconds is returned, or 0 for no
+	 * limit.
+	 */
+	public long getStripificationTimeBudget()
+	{
+		return m_stripificationTimeBudget;
+	}
+
+	/**
+	 * Append an object to the table.
+	 * 
+	 * @param obj The object to add.
+	 */
+	public void add(Object obj)
+	{
+		if (! m_indices.containsKey(obj))
+			m_indices.put(obj, Integer.valueOf(m_objects.size()));
+		m_objects.add(obj);
+	}
+
+	public Object get(int index)
+	{
+		return m_objects.get(index);
+	}
+
+	public int size()
+	{
+		return m_objects.size();
+	}
+
+	public boolean contains(Object obj)
+	{
+		return m_indices.containsKey(obj);
+	}
+
+	/**
+	 * Get the index of an object.
+	 * 
+	 * @param obj The object to look up.
+	 * 
+	 * @return The index of the first occurrence of the object is returned,
+	 * or -1 if it is not in the table.
+	 */
+	public int indexOf(Object obj)
+	{
+		Integer index = (Integer)m_indices.get(obj);
+		return (index != null) ? index.intValue() : -1;
+	}
+}
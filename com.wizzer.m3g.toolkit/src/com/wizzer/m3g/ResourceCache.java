@@ -0,0 +1,76 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.net.URI;
+
+/**
+ * A <code>ResourceCache</code> holds the objects that external references
+ * resolve to, so that a resource shared by several files is only loaded
+ * once. It is not a runtime construct called out by the M3G Specification.
+ * <p>
+ * Resources are keyed by their normalized URI. An implementation must be
+ * safe to use from several threads, and concurrent requests for the same
+ * URI should share a single load.
+ * </p>
+ */
+public interface ResourceCache
+{
+	/**
+	 * Get the resource at the specified URI, resolving it if it is not
+	 * cached.
+	 * 
+	 * @param uri The absolute URI of the resource.
+	 * @param resolver The resolver used to load the resource if it is not
+	 * cached.
+	 * 
+	 * @return The resource is returned, or <b>null</b> if the resolver
+	 * could not resolve it.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * resolving the resource.
+	 */
+	public M3GObject get(URI uri, Resolver resolver) throws IOException;
+
+	/**
+	 * A <code>Resolver</code> loads a resource that is not cached.
+	 */
+	public interface Resolver
+	{
+		/**
+		 * Load the resource at the specified URI.
+		 * 
+		 * @param uri The normalized, absolute URI of the resource.
+		 * 
+		 * @return The resource is returned, or <b>null</b> if it can not
+		 * be resolved.
+		 * 
+		 * @throws IOException This exception is thrown if an error occurs
+		 * reading the resource.
+		 */
+		public M3GObject resolve(URI uri) throws IOException;
+	}
+}
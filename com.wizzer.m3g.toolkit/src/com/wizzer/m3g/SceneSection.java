@@ -25,6 +25,7 @@ package com.wizzer.m3g;
 
 // Import standard Java classes.
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 /**
@@ -40,180 +41,255 @@ import java.util.*;
 public class SceneSection extends Section
 {
 	private ArrayList<Object3D> m_objects3D;
+	// The placeholders of the objects that have not been unmarshalled yet.
+	private ArrayList<DeferredObject> m_deferredObjects;
+	// Flag indicating whether objects are unmarshalled when first resolved.
+	private boolean m_deferObjects;
+	// Flag indicating whether objects keep the encoded fields they are read from.
+	private boolean m_keepEncoded;
+	// The registry of the factories creating the objects read.
+	private Object3DRegistry m_registry;
 
 	public SceneSection()
 	{
 		m_objects3D = new ArrayList<Object3D>();
+		m_deferredObjects = new ArrayList<DeferredObject>();
+		m_registry = Object3DRegistry.getDefault();
 	}
 
 	public void addObject3D(Object3D object)
 	{
 		m_objects3D.add(object);
+		m_deferredObjects.add(null);
 	}
 
 	public Object3D[] getObjects3D()
 	{
-		return (Object3D[])m_objects3D.toArray(new Object3D[m_objects3D.size()]);
+		ArrayList<Object3D> objects = new ArrayList<Object3D>();
+		try
+		{
+			for (int i = 0; i < m_objects3D.size(); i++)
+			{
+				Object3D object = getObject3D(i);
+				if (object != null)
+					objects.add(object);
+			}
+		} catch (IOException ex)
+		{
+			throw new UncheckedIOException(ex);
+		}
+		return objects.toArray(new Object3D[objects.size()]);
 	}
 
-	public void removeObject3D(Object3D object)
+	/**
+	 * Get the number of objects in this section.
+	 * 
+	 * @return The number of objects, including those that have not been
+	 * unmarshalled yet, is returned.
+	 */
+	public int getObjectCount()
 	{
-		m_objects3D.remove(object);
+		return m_objects3D.size();
 	}
 
-	public void removeObjects3D()
+	/**
+	 * Get the type of the object at the specified index, without
+	 * unmarshalling it.
+	 * 
+	 * @param index The index of the object in this section.
+	 * 
+	 * @return The object type is returned.
+	 */
+	public synchronized int getObjectType(int index)
 	{
-		m_objects3D.clear();
+		Object3D object = m_objects3D.get(index);
+		if (object != null)
+			return object.getObjectType();
+		return m_deferredObjects.get(index).getObjectType();
 	}
 
 	/**
-	 * Read object references.
+	 * Get the object at the specified index, unmarshalling it and the
+	 * objects it references if this has not been done yet.
+	 * <p>
+	 * Note that an object is only known not to be a root once an object
+	 * referencing it has been unmarshalled.
+	 * </p>
 	 * 
-	 * @param is The input stream to read from.
-	 * @param table The cache of referenced objects.
+	 * @param index The index of the object in this section.
+	 * 
+	 * @return The object is returned, or <b>null</b> if its factory
+	 * skipped it.
 	 * 
 	 * @throws IOException This exception is thrown if an error occurs
 	 * reading the data.
 	 */
-	protected void readObjects(M3GInputStream is, ArrayList table) throws IOException
+	public synchronized Object3D getObject3D(int index) throws IOException
 	{
-		while (is.available() > 0)
+		Object3D object = m_objects3D.get(index);
+		if ((object == null) && (m_deferredObjects.get(index) != null))
 		{
-			byte type = (byte)is.readByte();
-			long length = is.readUInt32();
-			Object3D object = null;
-			if (type == M3GObject.ANIMATION_CONTROLLER) object = new AnimationController();
-			else if (type == M3GObject.ANIMATION_TRACK) object = new AnimationTrack();
-			else if (type == M3GObject.APPEARANCE) object = new Appearance();
-			else if (type == M3GObject.BACKGROUND) object = new Background();
-			else if (type == M3GObject.CAMERA) object = new Camera();
-			else if (type == M3GObject.COMPOSITING_MODE) object = new CompositingMode();
-			else if (type == M3GObject.FOG) object = new Fog();
-			else if (type == M3GObject.POLYGON_MODE) object = new PolygonMode();
-			else if (type == M3GObject.GROUP) object = new Group();
-			else if (type == M3GObject.IMAGE2D) object = new Image2D();
-			else if (type == M3GObject.TRIANGLE_STRIP_ARRAY) object = new TriangleStripArray();
-			else if (type == M3GObject.LIGHT) object = new Light();
-			else if (type == M3GObject.MATERIAL) object = new Material();
-			else if (type == M3GObject.MESH) object = new Mesh();
-			else if (type == M3GObject.MORPHING_MESH) object = null;
-			else if (type == M3GObject.SKINNED_MESH) object = new SkinnedMesh();
-			else if (type == M3GObject.TEXTURE2D) object = new Texture2D();
-			else if (type == M3GObject.SPRITE3D) object = new Sprite3D();
-			else if (type == M3GObject.KEYFRAME_SEQUENCE) object = new KeyframeSequence();
-			else if (type == M3GObject.VERTEX_ARRAY) object = new VertexArray();
-			else if (type == M3GObject.VERTEX_BUFFER) object = new VertexBuffer();
-			else if (type == M3GObject.WORLD) object = new World();
-			else throw new IOException("SceneSection.type=" + type);
-
-			object.unmarshall(is,table);
-			m_objects3D.add(object);
-			table.add(object);
+			object = m_deferredObjects.get(index).resolve();
+			if (object != null)
+			{
+				m_objects3D.set(index, object);
+				m_deferredObjects.set(index, null);
+			}
 		}
+		return object;
 	}
 
 	/**
-	 * Write object references.
+	 * Get the objects of the specified type. Objects of other types
+	 * are not unmarshalled, unless they are referenced.
 	 * 
-	 * @param os The output stream to write to.
-	 * @param table The cache of referenced objects.
+	 * @param type The type of the objects to get.
+	 * 
+	 * @return The objects of the specified type are returned.
 	 * 
 	 * @throws IOException This exception is thrown if an error occurs
-	 * writing the data.
+	 * reading the data.
 	 */
-	protected void writeObjects(M3GOutputStream os, ArrayList table) throws IOException
+	public Object3D[] getObjects3D(int type) throws IOException
 	{
-		for (int i = 0; i < table.size(); i++)
+		ArrayList<Object3D> objects = new ArrayList<Object3D>();
+		for (int i = 0; i < m_objects3D.size(); i++)
 		{
-			Object obj = table.get(i);
-
-			if (obj instanceof Object3D)
+			if (getObjectType(i) == type)
 			{
-				Object3D o3d = (Object3D)obj;
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				o3d.marshall(new M3GOutputStream(baos),table);
-				os.writeByte(o3d.getObjectType());
-				os.writeUInt32(baos.size());
-				baos.writeTo(os);
+				Object3D object = getObject3D(i);
+				if (object != null)
+					objects.add(object);
 			}
 		}
+		return objects.toArray(new Object3D[objects.size()]);
+	}
+
+	public synchronized void removeObject3D(Object3D object)
+	{
+		int index = m_objects3D.indexOf(object);
+		if (index != -1)
+		{
+			m_objects3D.remove(index);
+			m_deferredObjects.remove(index);
+		}
+	}
+
+	public synchronized void removeObjects3D()
+	{
+		m_objects3D.clear();
+		m_deferredObjects.clear();
+	}
+
+	/**
+	 * Specify whether the objects read from the section are unmarshalled
+	 * as they are read, or only when they are first resolved.
+	 * 
+	 * @param defer <b>true</b> if the objects should only be indexed.
+	 */
+	void setDeferObjects(boolean defer)
+	{
+		m_deferObjects = defer;
+	}
+
+	/**
+	 * Specify whether the objects read from the section keep the encoded
+	 * fields they are read from, so that they are copied rather than
+	 * marshalled again while they are unchanged.
+	 * 
+	 * @param keep <b>true</b> if the encoded fields should be kept.
+	 */
+	void setKeepEncoded(boolean keep)
+	{
+		m_keepEncoded = keep;
 	}
 
-	//////////////////////// DEBUG ////////////////////////
-	
-	// TODO: readObjectsDebug.
-	protected void readObjects2(M3GInputStream is, ArrayList table) throws IOException
+	/**
+	 * Set the registry of the factories creating the objects read.
+	 * 
+	 * @param registry The object registry.
+	 */
+	void setObjectRegistry(Object3DRegistry registry)
 	{
-		String names[] = { "HEADER", "ANIMATION_CONTROLLER", "ANIMATION_TRACK",
-				"APPEARANCE", "BACKGROUND", "CAMERA", "COMPOSITING_MODE", "FOG",
-				"POLYGON_MODE", "GROUP", "IMAGE2D", "TRIANGLE_STRIP_ARRAY",
-				"LIGHT", "MATERIAL", "MESH", "MORPHING_MESH", "SKINNED_MESH",
-				"TEXTURE2D", "SPRITE3D", "KEYFRAME_SEQUENCE", "VERTEX_ARRAY",
-				"VERTEX_BUFFER", "WORLD" };
-		ArrayList datas = new ArrayList();
+		m_registry = registry;
+	}
 
+	/**
+	 * Read object references.
+	 * 
+	 * @param is The input stream to read from.
+	 * @param table The cache of referenced objects.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * reading the data.
+	 */
+	protected void readObjects(M3GInputStream is, ArrayList table) throws IOException
+	{
 		while (is.available() > 0)
 		{
 			byte type = (byte)is.readByte();
 			long length = is.readUInt32();
-			byte data[] = new byte[(int)length];
-			is.read(data);
-			Object3D object = null;
-			if (type == M3GObject.ANIMATION_CONTROLLER) object = new AnimationController();
-			else if (type == M3GObject.ANIMATION_TRACK) object = new AnimationTrack();
-			else if (type == M3GObject.APPEARANCE) object = new Appearance();
-			else if (type == M3GObject.BACKGROUND) object = new Background();
-			else if (type == M3GObject.CAMERA) object = new Camera();
-			else if (type == M3GObject.COMPOSITING_MODE) object = new CompositingMode();
-			else if (type == M3GObject.FOG) object = new Fog();
-			else if (type == M3GObject.POLYGON_MODE) object = new PolygonMode();
-			else if (type == M3GObject.GROUP) object = new Group();
-			else if (type == M3GObject.IMAGE2D) object = new Image2D();
-			else if (type == M3GObject.TRIANGLE_STRIP_ARRAY) object = new TriangleStripArray();
-			else if (type == M3GObject.LIGHT) object = new Light();
-			else if (type == M3GObject.MATERIAL) object = new Material();
-			else if (type == M3GObject.MESH) object = new Mesh();
-			else if (type == M3GObject.MORPHING_MESH) object = null;
-			else if (type == M3GObject.SKINNED_MESH) object = new SkinnedMesh();
-			else if (type == M3GObject.TEXTURE2D) object = new Texture2D();
-			else if (type == M3GObject.SPRITE3D) object = new Sprite3D();
-			else if (type == M3GObject.KEYFRAME_SEQUENCE) object = new KeyframeSequence();
-			else if (type == M3GObject.VERTEX_ARRAY) object = new VertexArray();
-			else if (type == M3GObject.VERTEX_BUFFER) object = new VertexBuffer();
-			else if (type == M3GObject.WORLD) object = new World();
-			else throw new IOException("SceneSection.type=" + type);
-
-			object.unmarshall(new M3GInputStream(new ByteArrayInputStream(data)), table);
-			m_objects3D.add(object);
-			table.add(object);
-
-			datas.add(object);
-			datas.add(data);
-		}
+			Object3DFactory factory = m_registry.getFactory(type);
+			if (factory == null)
+				throw new IOException("SceneSection.type=" + type);
+			if (factory == Object3DRegistry.SKIP)
+			{
+				// Skip the object, keeping its index in the reference table.
+				if (is.skip(length) != length)
+					throw new EOFException("SceneSection: unexpected end of data");
+				table.add(null);
+				continue;
+			}
+			if (m_deferObjects)
+			{
+				// Index the object, it is unmarshalled when first resolved.
+				DeferredObject deferred = new DeferredObject(table, table.size(), type, is.readBuffer((int)length), factory, m_keepEncoded);
+				m_objects3D.add(null);
+				m_deferredObjects.add(deferred);
+				table.add(deferred);
+				continue;
+			}
+			Object3D object = factory.newObject3D(type);
+			if (object == null)
+			{
+				if (is.skip(length) != length)
+					throw new EOFException("SceneSection: unexpected end of data");
+				table.add(null);
+				continue;
+			}
 
-		for (int i = 0; i < datas.size(); i += 2)
-		{
-			Object3D object = (Object3D)datas.get(i);
-			byte data[] = (byte[])datas.get(i+1);
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			object.marshall(new M3GOutputStream(baos), table);
-			byte data2[] = baos.toByteArray();
-
-			System.out.println(names[object.getObjectType()] + " (" +
-				data.length + "/" + data2.length + "/" + Arrays.equals(data,data2) + ")");
-			if (! Arrays.equals(data,data2))
+			if (m_keepEncoded)
 			{
-				System.out.println("");
-				System.out.println("--");
-				for (int u = 0; u < data.length; u++)
-					System.out.print(Integer.toHexString(data[u] & 0xff) + ",");
-				System.out.println("\n--\n");
-				for (int u = 0; u < data2.length; u++)
-					System.out.print(Integer.toHexString(data2[u] & 0xff) + ",");
-				System.out.println("");
-				System.out.println("--");
-				System.out.println("");
+				ByteBuffer data = is.readBuffer((int)length);
+				M3GInputStream ois = new M3GInputStream(data);
+				ArrayList positions = new ArrayList();
+				ois.setObjectIndexPositions(positions);
+				object.unmarshall(ois,table);
+				object.setEncoded(data, positions, table);
 			}
+			else
+				object.unmarshall(is,table);
+			m_objects3D.add(object);
+			m_deferredObjects.add(null);
+			table.add(object);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Write object references.
+	 * <p>
+	 * The objects of a Scene Section are not known from the table alone;
+	 * <code>M3GFile.marshall()</code> writes them one at a time, each
+	 * section with the objects it adds to the table.
+	 * </p>
+	 * 
+	 * @param os The output stream to write to.
+	 * @param table The cache of referenced objects.
+	 * 
+	 * @throws IOException This exception is always thrown.
+	 */
+	protected void writeObjects(M3GOutputStream os, ReferenceTable table) throws IOException
+	{
+		throw new IOException("SceneSection: scene sections are written by M3GFile");
+	}
+}
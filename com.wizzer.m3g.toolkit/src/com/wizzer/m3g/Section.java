@@ -25,6 +25,7 @@ package com.wizzer.m3g;
 
 // Import standard Java classes.
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.zip.*;
 import java.util.*;
 
@@ -38,8 +39,15 @@ public abstract class Section
 	public static final int UNCOMPRESSED    = 0;
 	public static final int ZLIB            = 1;
 
+	/** Use the compression level or strategy of the file. */
+	public static final int FILE_DEFAULT    = -2;
+
 	// The section's compression scheme.
 	private int m_compressionScheme;
+	// The level ZLIB data is compressed with.
+	private int m_compressionLevel;
+	// The strategy ZLIB data is compressed with.
+	private int m_compressionStrategy;
 	// The total size of the section.
 	private int m_totalSectionLength;
 	// The uncompressed size of the section.
@@ -53,6 +61,8 @@ public abstract class Section
 	public Section()
 	{
 		m_compressionScheme = ZLIB;
+		m_compressionLevel = FILE_DEFAULT;
+		m_compressionStrategy = FILE_DEFAULT;
 	}
 
 	/**
@@ -85,6 +95,49 @@ public abstract class Section
 		return m_compressionScheme;
 	}
 
+	/**
+	 * Set the level the section is compressed with, if its compression
+	 * scheme is ZLIB.
+	 * 
+	 * @param level A <code>Deflater</code> compression level, from
+	 * <code>Deflater.NO_COMPRESSION</code> to
+	 * <code>Deflater.BEST_COMPRESSION</code>, or FILE_DEFAULT to use the
+	 * level of the file.
+	 */
+	public void setCompressionLevel(int level)
+	{
+		if ((level != FILE_DEFAULT) && (level != Deflater.DEFAULT_COMPRESSION) &&
+			((level < Deflater.NO_COMPRESSION) || (level > Deflater.BEST_COMPRESSION)))
+			throw new IllegalArgumentException("Section: invalid compression level " + level);
+		m_compressionLevel = level;
+	}
+
+	public int getCompressionLevel()
+	{
+		return m_compressionLevel;
+	}
+
+	/**
+	 * Set the strategy the section is compressed with, if its compression
+	 * scheme is ZLIB.
+	 * 
+	 * @param strategy A <code>Deflater</code> strategy, such as
+	 * <code>Deflater.FILTERED</code>, or FILE_DEFAULT to use the
+	 * strategy of the file.
+	 */
+	public void setCompressionStrategy(int strategy)
+	{
+		if ((strategy != FILE_DEFAULT) && (strategy != Deflater.DEFAULT_STRATEGY) &&
+			(strategy != Deflater.FILTERED) && (strategy != Deflater.HUFFMAN_ONLY))
+			throw new IllegalArgumentException("Section: invalid compression strategy " + strategy);
+		m_compressionStrategy = strategy;
+	}
+
+	public int getCompressionStrategy()
+	{
+		return m_compressionStrategy;
+	}
+
 	public int getTotalSectionLength()
 	{
 		return m_totalSectionLength;
@@ -110,16 +163,38 @@ public abstract class Section
 	 * reading the data.
 	 */
 	protected void unmarshall(M3GInputStream is, ArrayList table) throws IOException
+	{
+		readObjects(new M3GInputStream(inflate(is)), table);
+	}
+
+	/**
+	 * Read the section's fields and data and verify its checksum, without
+	 * reading the objects.
+	 * <p>
+	 * This does not touch the reference table, so sections may be inflated
+	 * concurrently as long as their objects are read in file order.
+	 * </p>
+	 * 
+	 * @param is The input stream to read from.
+	 * 
+	 * @return The uncompressed object data of the section is returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * reading the data.
+	 */
+	ByteBuffer inflate(M3GInputStream is) throws IOException
 	{
 		is.resetAdler32();
 		m_compressionScheme = is.readByte();
 		m_totalSectionLength = (int)is.readUInt32();
 		m_uncompressedLength = (int)is.readUInt32();
-		byte data[] = new byte[m_uncompressedLength];
+		ByteBuffer data;
 		if (m_compressionScheme == ZLIB)
 		{
-			byte compressed[] = new byte[m_totalSectionLength - 13];
-			is.read(compressed);
+			ByteBuffer compressed = is.readBuffer(m_totalSectionLength - 13);
+			// Inflate into direct memory so that the object data can
+			// be handed to OpenGL without copying it again.
+			data = ByteBuffer.allocateDirect(m_uncompressedLength);
 			try
 			{
 				Inflater inflater = new Inflater(false);
@@ -131,51 +206,34 @@ public abstract class Section
 			{
 				throw new IOException("Section:ZLIB");
 			}
+			data.flip();
 		}
 		else if (m_compressionScheme == UNCOMPRESSED)
-			is.read(data);
+			// Decode the section in place.
+			data = is.readBuffer(m_uncompressedLength);
+		else
+			throw new IOException("Section:compressionScheme = " + m_compressionScheme);
 
 		int checksum_is = (int)is.getAdler32Value();
 		m_checksum = (int)is.readUInt32();
 		if (getChecksum() != checksum_is)
 			throw new IOException("Section:checksum = " + m_checksum);
 
-		readObjects(new M3GInputStream(new ByteArrayInputStream(data)), table);
+		return data;
 	}
 
 	/**
-	 * Write field data.
+	 * Record the fields of the section as they were written.
 	 * 
-	 * @param os The output stream to write to.
-	 * @param table The cache of referenced objects.
-	 * 
-	 * @throws IOException This exception is thrown if an error occurs
-	 * writing the data.
+	 * @param totalSectionLength The total size of the section.
+	 * @param uncompressedLength The uncompressed size of the section.
+	 * @param checksum The checksum of the section.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	void setWritten(int totalSectionLength, int uncompressedLength, int checksum)
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		writeObjects(new M3GOutputStream(baos),table);
-		m_uncompressedLength = baos.size();
-		byte data[] = baos.toByteArray();
-		if (m_compressionScheme == ZLIB)
-		{
-			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION,false);
-			deflater.setInput(data);
-			deflater.finish();
-			byte compressed[] = new byte[data.length<<1];
-			int length = deflater.deflate(compressed);
-			data = new byte[length];
-			System.arraycopy(compressed,0,data,0,length);
-			deflater.end();
-		}
-
-		os.resetAdler32();
-		os.writeByte(m_compressionScheme);
-		os.writeUInt32(m_totalSectionLength=data.length+13);
-		os.writeUInt32(m_uncompressedLength);
-		os.write(data);
-		os.writeUInt32(m_checksum=(int)os.getAdler32Value());
+		m_totalSectionLength = totalSectionLength;
+		m_uncompressedLength = uncompressedLength;
+		m_checksum = checksum;
 	}
 
 	/**
@@ -198,5 +256,5 @@ public abstract class Section
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected abstract void writeObjects(M3GOutputStream os, ArrayList table) throws IOException;
+	protected abstract void writeObjects(M3GOutputStream os, ReferenceTable table) throws IOException;
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+/**
+ * The <code>SectionDescriptor</code> records where a section is located in
+ * a M3G file and how it is encoded, without holding any of its data.
+ */
+public class SectionDescriptor
+{
+	// The offset of the section from the start of the file.
+	private long m_offset;
+	// The section's compression scheme.
+	private int m_compressionScheme;
+	// The total size of the section.
+	private int m_totalSectionLength;
+	// The uncompressed size of the section.
+	private int m_uncompressedLength;
+
+	/**
+	 * A constructor initializing the descriptor.
+	 * 
+	 * @param offset The offset of the section from the start of the file.
+	 * @param compressionScheme The section's compression scheme.
+	 * @param totalSectionLength The total size of the section.
+	 * @param uncompressedLength The uncompressed size of the section's objects.
+	 */
+	SectionDescriptor(long offset, int compressionScheme, int totalSectionLength, int uncompressedLength)
+	{
+		m_offset = offset;
+		m_compressionScheme = compressionScheme;
+		m_totalSectionLength = totalSectionLength;
+		m_uncompressedLength = uncompressedLength;
+	}
+
+	/**
+	 * A constructor initializing the descriptor from a loaded section.
+	 * 
+	 * @param offset The offset of the section from the start of the file.
+	 * @param section The section that was loaded from the offset.
+	 */
+	SectionDescriptor(long offset, Section section)
+	{
+		this(offset, section.getCompressionScheme(), section.getTotalSectionLength(),
+			section.getUncompressedLength());
+	}
+
+	/**
+	 * Get the offset of the section.
+	 * 
+	 * @return The offset from the start of the file, in bytes, is returned.
+	 */
+	public long getOffset()
+	{
+		return m_offset;
+	}
+
+	/**
+	 * Get the compression scheme.
+	 * 
+	 * @return Either <code>Section.UNCOMPRESSED</code> or <code>Section.ZLIB</code>
+	 * is returned.
+	 */
+	public int getCompressionScheme()
+	{
+		return m_compressionScheme;
+	}
+
+	/**
+	 * Get the total length of the section, including the section's
+	 * compression scheme, lengths and checksum.
+	 * 
+	 * @return The length in bytes is returned.
+	 */
+	public int getTotalSectionLength()
+	{
+		return m_totalSectionLength;
+	}
+
+	/**
+	 * Get the length of the section's objects once uncompressed.
+	 * 
+	 * @return The length in bytes is returned.
+	 */
+	public int getUncompressedLength()
+	{
+		return m_uncompressedLength;
+	}
+
+	public String toString()
+	{
+		return "SectionDescriptor[offset=" + m_offset + ", compressionScheme=" + m_compressionScheme +
+			", totalSectionLength=" + m_totalSectionLength + ", uncompressedLength=" + m_uncompressedLength + "]";
+	}
+}
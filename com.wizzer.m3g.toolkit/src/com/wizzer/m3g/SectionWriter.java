@@ -0,0 +1,540 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * The <code>SectionWriter</code> streams the sections of a M3G file to
+ * a seekable channel, such as a file channel.
+ * <p>
+ * Objects are deflated and written as they are marshalled, so that only
+ * the largest object is held in memory. The lengths of a section are not
+ * known until its data has been written; a placeholder is written for them
+ * and patched in place once the section is complete. The checksum is
+ * computed over the data as it is written, and combined with the checksum
+ * of the patched fields.
+ * </p><p>
+ * Given an executor, ZLIB sections are split into blocks deflated
+ * concurrently. Each block is primed with the end of the block before it,
+ * and all but the last are ended on a byte boundary, so that the blocks
+ * join into a single zlib stream.
+ * </p>
+ */
+class SectionWriter
+{
+	// The size of the buffer the section data is written through.
+	private static final int BUFFER_SIZE = 65536;
+	// The size of the blocks deflated concurrently.
+	private static final int BLOCK_SIZE = 131072;
+	// The size of the dictionary a block is primed with.
+	private static final int DICTIONARY_SIZE = 32768;
+	// The size of the compression scheme and the two length fields.
+	private static final int HEAD_SIZE = 9;
+	// The largest prime smaller than 65536, the modulus of Adler-32.
+	private static final int ADLER_BASE = 65521;
+
+	// The channel the file is written to.
+	private SeekableByteChannel m_channel;
+	// The level ZLIB sections are compressed with by default.
+	private int m_level;
+	// The strategy ZLIB sections are compressed with by default.
+	private int m_strategy;
+	// The size below which ZLIB sections are written uncompressed.
+	private int m_threshold;
+	// The executor blocks are deflated on, or null.
+	private Executor m_executor;
+	// The number of blocks being deflated at most.
+	private int m_maxBlocks;
+	// The compressor of ZLIB sections, if they are not split into blocks.
+	private Deflater m_deflater;
+	// The buffer of section data not written to the channel yet.
+	private ByteBuffer m_buffer;
+	// The input buffer of the compressor, or the block being filled.
+	private byte m_input[];
+	// The number of bytes in the input buffer.
+	private int m_inputLength;
+	// The output buffer of the compressor.
+	private byte m_deflated[];
+	// The checksum of the section data written.
+	private Adler32 m_adler32;
+	// The buffer objects are marshalled into, to find their length.
+	private ByteArrayOutputStream m_object;
+	// The sink of the section data, before compression.
+	private SectionOutputStream m_sink;
+	// The stream the fields of the section are written to.
+	private M3GOutputStream m_os;
+	// The position of the section being written.
+	private long m_start;
+	// The compression scheme of the section being written.
+	private int m_compressionScheme;
+	// The compression level of the section being written.
+	private int m_compressionLevel;
+	// The compression strategy of the section being written.
+	private int m_compressionStrategy;
+	// Flag indicating whether the section may still be written uncompressed.
+	private boolean m_belowThreshold;
+	// The number of bytes written to the section, before compression.
+	private long m_uncompressedLength;
+	// The number of bytes of section data written to the channel.
+	private long m_dataLength;
+	// The blocks being deflated, in section order.
+	private LinkedList m_blocks;
+	// The number of blocks of the section written.
+	private int m_blockCount;
+	// The last block submitted, the dictionary of the next one.
+	private byte m_previous[];
+	// The checksum of the section data before compression.
+	private Adler32 m_inputAdler32;
+
+	/**
+	 * Create a writer.
+	 * 
+	 * @param channel The channel to write to, at its current position.
+	 * @param level The level ZLIB sections are compressed with, unless
+	 * the section specifies one.
+	 * @param strategy The strategy ZLIB sections are compressed with,
+	 * unless the section specifies one.
+	 * @param threshold The size of uncompressed data below which ZLIB
+	 * sections are written uncompressed.
+	 * @param executor The executor blocks of ZLIB sections are deflated on,
+	 * or <b>null</b> to deflate sections on the calling thread.
+	 */
+	SectionWriter(SeekableByteChannel channel, int level, int strategy, int threshold, Executor executor)
+	{
+		m_channel = channel;
+		m_level = level;
+		m_strategy = strategy;
+		m_threshold = threshold;
+		m_executor = executor;
+		m_maxBlocks = 2 * Runtime.getRuntime().availableProcessors();
+		m_deflater = new Deflater(level, false);
+		m_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		m_input = new byte[Math.max((executor != null) ? BLOCK_SIZE : BUFFER_SIZE, threshold)];
+		m_deflated = new byte[BUFFER_SIZE];
+		m_adler32 = new Adler32();
+		m_object = new ByteArrayOutputStream();
+		m_sink = new SectionOutputStream();
+		m_os = new M3GOutputStream(m_sink);
+		m_blocks = new LinkedList();
+		m_inputAdler32 = new Adler32();
+	}
+
+	/**
+	 * Write a section, with the objects written by the section itself.
+	 * 
+	 * @param section The section to write.
+	 * @param table The cache of referenced objects.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the data.
+	 */
+	void writeSection(Section section, ReferenceTable table) throws IOException
+	{
+		beginSection(section);
+		section.writeObjects(m_os, table);
+		endSection(section);
+	}
+
+	/**
+	 * Begin a section. Its objects are written with
+	 * <code>writeObject()</code>.
+	 * 
+	 * @param section The section to write, specifying how it is compressed.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the data.
+	 */
+	void beginSection(Section section) throws IOException
+	{
+		int compressionScheme = section.getCompressionScheme();
+		if ((compressionScheme != Section.UNCOMPRESSED) && (compressionScheme != Section.ZLIB))
+			throw new IOException("Section:compressionScheme = " + compressionScheme);
+		m_compressionScheme = compressionScheme;
+		m_compressionLevel = section.getCompressionLevel();
+		if (m_compressionLevel == Section.FILE_DEFAULT)
+			m_compressionLevel = m_level;
+		m_compressionStrategy = section.getCompressionStrategy();
+		if (m_compressionStrategy == Section.FILE_DEFAULT)
+			m_compressionStrategy = m_strategy;
+		m_belowThreshold = (compressionScheme == Section.ZLIB) && (m_threshold > 0);
+		m_start = m_channel.position();
+		m_uncompressedLength = 0;
+		m_dataLength = 0;
+		m_inputLength = 0;
+		m_adler32.reset();
+		m_deflater.reset();
+		m_deflater.setLevel(m_compressionLevel);
+		m_deflater.setStrategy(m_compressionStrategy);
+		m_blockCount = 0;
+		m_previous = null;
+		m_inputAdler32.reset();
+
+		// Hold the place of the fields patched by endSection().
+		ByteBuffer head = ByteBuffer.allocate(HEAD_SIZE);
+		while (head.hasRemaining())
+			m_channel.write(head);
+	}
+
+	/**
+	 * Write an object to the current section.
+	 * 
+	 * @param object The object to write.
+	 * @param table The cache of referenced objects.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the data.
+	 */
+	void writeObject(Object3D object, ReferenceTable table) throws IOException
+	{
+		byte data[] = object.getEncoded(table);
+		if (data != null)
+		{
+			// Unchanged since it was read; copy its fields.
+			m_os.writeByte(object.getObjectType());
+			m_os.writeUInt32(data.length);
+			m_sink.write(data, 0, data.length);
+			return;
+		}
+		m_object.reset();
+		object.marshall(new M3GOutputStream(m_object), table);
+		m_os.writeByte(object.getObjectType());
+		m_os.writeUInt32(m_object.size());
+		m_object.writeTo(m_sink);
+	}
+
+	/**
+	 * End the current section, patching its length fields and writing
+	 * its checksum.
+	 * 
+	 * @param section The section written, which is updated with the
+	 * fields written.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * writing the data.
+	 */
+	void endSection(Section section) throws IOException
+	{
+		if (m_belowThreshold && (m_uncompressedLength < m_threshold))
+		{
+			// Too small to be worth compressing.
+			m_compressionScheme = Section.UNCOMPRESSED;
+			emit(m_input, 0, m_inputLength);
+		}
+		else if ((m_compressionScheme == Section.ZLIB) && (m_executor == null))
+		{
+			compress(m_input, 0, m_inputLength);
+			m_deflater.finish();
+			while (! m_deflater.finished())
+				deflate();
+		}
+		else if (m_compressionScheme == Section.ZLIB)
+		{
+			submitBlock(true);
+			while (! m_blocks.isEmpty())
+				writeBlock();
+			// The zlib stream ends with the big-endian checksum of
+			// the uncompressed data.
+			long adler32 = m_inputAdler32.getValue();
+			byte trailer[] = { (byte)(adler32 >> 24), (byte)(adler32 >> 16), (byte)(adler32 >> 8), (byte)adler32 };
+			emit(trailer, 0, trailer.length);
+		}
+		m_inputLength = 0;
+		flush();
+
+		long totalSectionLength = m_dataLength + HEAD_SIZE + 4;
+		if ((totalSectionLength > 0xffffffffL) || (m_uncompressedLength > 0xffffffffL))
+			throw new IOException("SectionWriter: section too large");
+
+		ByteBuffer head = ByteBuffer.allocate(HEAD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		head.put((byte)m_compressionScheme);
+		head.putInt((int)totalSectionLength);
+		head.putInt((int)m_uncompressedLength);
+		Adler32 adler32 = new Adler32();
+		adler32.update(head.array());
+		int checksum = (int)combine(adler32.getValue(), m_adler32.getValue(), m_dataLength);
+
+		head.flip();
+		long end = m_channel.position();
+		m_channel.position(m_start);
+		while (head.hasRemaining())
+			m_channel.write(head);
+		m_channel.position(end);
+		ByteBuffer tail = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		tail.putInt(checksum);
+		tail.flip();
+		while (tail.hasRemaining())
+			m_channel.write(tail);
+
+		section.setWritten((int)totalSectionLength, (int)m_uncompressedLength, checksum);
+	}
+
+	/**
+	 * Release the compressor, and cancel the blocks still being deflated.
+	 */
+	void close()
+	{
+		m_deflater.end();
+		while (! m_blocks.isEmpty())
+			((Future)m_blocks.removeFirst()).cancel(false);
+	}
+
+	// Compress the full input buffer.
+	private void compressInput() throws IOException
+	{
+		if (m_executor == null)
+			compress(m_input, 0, m_inputLength);
+		else
+			submitBlock(false);
+		m_inputLength = 0;
+	}
+
+	// Compress section data.
+	private void compress(byte b[], int off, int len) throws IOException
+	{
+		m_deflater.setInput(b, off, len);
+		while (! m_deflater.needsInput())
+			deflate();
+	}
+
+	// Write the output of the compressor.
+	private void deflate() throws IOException
+	{
+		int length = m_deflater.deflate(m_deflated);
+		if (length > 0)
+			emit(m_deflated, 0, length);
+	}
+
+	// Deflate the input buffer as a block, on the executor.
+	private void submitBlock(boolean last) throws IOException
+	{
+		m_inputAdler32.update(m_input, 0, m_inputLength);
+		FutureTask block = new FutureTask(new Block(m_input, m_inputLength, m_previous,
+			m_compressionLevel, m_compressionStrategy, last));
+		m_blocks.addLast(block);
+		try
+		{
+			m_executor.execute(block);
+		} catch (RejectedExecutionException ex)
+		{
+			// Deflate the block on the writing thread instead.
+			block.run();
+		}
+		m_previous = m_input;
+		m_input = new byte[m_input.length];
+
+		// Bound the memory held by blocks waiting to be written.
+		while (m_blocks.size() > m_maxBlocks)
+			writeBlock();
+	}
+
+	// Write the first block being deflated, once it is done.
+	private void writeBlock() throws IOException
+	{
+		byte data[];
+		try
+		{
+			data = (byte[])((Future)m_blocks.removeFirst()).get();
+		} catch (InterruptedException ex)
+		{
+			throw new InterruptedIOException("SectionWriter: interrupted");
+		} catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException)
+				throw (IOException)ex.getCause();
+			throw new IOException("SectionWriter: unable to deflate block", ex.getCause());
+		}
+		if (m_blockCount++ == 0)
+		{
+			// The zlib stream header, without a preset dictionary.
+			int flevel;
+			if (m_compressionLevel == Deflater.DEFAULT_COMPRESSION) flevel = 2;
+			else if (m_compressionLevel < 2) flevel = 0;
+			else if (m_compressionLevel < 6) flevel = 1;
+			else if (m_compressionLevel == 6) flevel = 2;
+			else flevel = 3;
+			int cmf = 0x78;
+			int flg = flevel << 6;
+			flg += (31 - ((cmf << 8) + flg) % 31) % 31;
+			byte header[] = { (byte)cmf, (byte)flg };
+			emit(header, 0, header.length);
+		}
+		emit(data, 0, data.length);
+	}
+
+	// Write section data to the channel, through the buffer.
+	private void emit(byte b[], int off, int len) throws IOException
+	{
+		while (len > 0)
+		{
+			int n = Math.min(len, m_buffer.remaining());
+			m_buffer.put(b, off, n);
+			off += n;
+			len -= n;
+			if (! m_buffer.hasRemaining())
+				flush();
+		}
+	}
+
+	// Write the buffered section data to the channel.
+	private void flush() throws IOException
+	{
+		m_buffer.flip();
+		m_adler32.update(m_buffer.array(), 0, m_buffer.limit());
+		m_dataLength += m_buffer.limit();
+		while (m_buffer.hasRemaining())
+			m_channel.write(m_buffer);
+		m_buffer.clear();
+	}
+
+	/**
+	 * Combine the Adler-32 checksums of two blocks of data into the
+	 * checksum of their concatenation.
+	 * 
+	 * @param adler1 The checksum of the first block.
+	 * @param adler2 The checksum of the second block.
+	 * @param length2 The length of the second block.
+	 * 
+	 * @return The checksum of the first block followed by the second
+	 * is returned.
+	 */
+	static long combine(long adler1, long adler2, long length2)
+	{
+		long rem = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (rem * sum1) % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+		if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+		if (sum2 >= (ADLER_BASE << 1)) sum2 -= (ADLER_BASE << 1);
+		if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+		return sum1 | (sum2 << 16);
+	}
+
+	// The sink of the section data, before compression.
+	private class SectionOutputStream extends OutputStream
+	{
+		private byte m_byte[] = new byte[1];
+
+		public void write(int b) throws IOException
+		{
+			m_byte[0] = (byte)b;
+			write(m_byte, 0, 1);
+		}
+
+		public void write(byte b[], int off, int len) throws IOException
+		{
+			m_uncompressedLength += len;
+			if (m_compressionScheme != Section.ZLIB)
+			{
+				emit(b, off, len);
+				return;
+			}
+			// Gather the data, so that the compressor is not called
+			// for each of the small fields.
+			while (len > 0)
+			{
+				if (m_inputLength == m_input.length)
+				{
+					m_belowThreshold = false;
+					compressInput();
+				}
+				int n = Math.min(len, m_input.length - m_inputLength);
+				System.arraycopy(b, off, m_input, m_inputLength, n);
+				m_inputLength += n;
+				off += n;
+				len -= n;
+			}
+		}
+	}
+
+	// A block of a section, deflated as part of a single zlib stream.
+	private static class Block implements Callable
+	{
+		private byte m_data[];
+		private int m_length;
+		private byte m_dictionary[];
+		private int m_level;
+		private int m_strategy;
+		private boolean m_last;
+
+		Block(byte data[], int length, byte dictionary[], int level, int strategy, boolean last)
+		{
+			m_data = data;
+			m_length = length;
+			m_dictionary = dictionary;
+			m_level = level;
+			m_strategy = strategy;
+			m_last = last;
+		}
+
+		public Object call()
+		{
+			Deflater deflater = new Deflater(m_level, true);
+			try
+			{
+				deflater.setStrategy(m_strategy);
+				if (m_dictionary != null)
+				{
+					// Prime the block with the end of the block before it,
+					// as if the section was deflated in one go.
+					int length = Math.min(DICTIONARY_SIZE, m_dictionary.length);
+					deflater.setDictionary(m_dictionary, m_dictionary.length - length, length);
+				}
+				deflater.setInput(m_data, 0, m_length);
+				ByteArrayOutputStream out = new ByteArrayOutputStream(m_length / 2 + 64);
+				byte buffer[] = new byte[BUFFER_SIZE];
+				if (m_last)
+				{
+					deflater.finish();
+					while (! deflater.finished())
+						out.write(buffer, 0, deflater.deflate(buffer));
+				}
+				else
+				{
+					// End the block on a byte boundary, so that the
+					// next block can be appended to it.
+					int n;
+					do
+					{
+						n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+						out.write(buffer, 0, n);
+					} while (n == buffer.length);
+				}
+				return out.toByteArray();
+			} finally
+			{
+				deflater.end();
+			}
+		}
+	}
+}
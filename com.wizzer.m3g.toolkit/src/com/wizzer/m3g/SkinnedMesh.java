@@ -70,6 +70,7 @@ public class SkinnedMesh extends Mesh
 	public void addTransform(Node bone, int weight, int firstVertex, int numVertices)
 	    throws ArithmeticException
 	{
+		setDirty();
 		if (bone == null)
 			throw new NullPointerException("SkinnedMesh: bone is null");
 		// Validate that the bone is either the skeleton Group or one of its descendants.
@@ -172,6 +173,7 @@ public class SkinnedMesh extends Mesh
 
 	public void setSkeleton(Group skeleton)
 	{
+		setDirty();
 		m_skeleton = skeleton;
 	}
 
@@ -262,7 +264,7 @@ public class SkinnedMesh extends Mesh
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os,ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os,ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -291,7 +293,7 @@ public class SkinnedMesh extends Mesh
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		m_skeleton.buildReferenceTable(table);
 		for (int i = 0; i < m_bones.size(); i++)
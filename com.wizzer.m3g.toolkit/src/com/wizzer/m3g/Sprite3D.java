@@ -71,6 +71,7 @@ public class Sprite3D extends Node
 
 	public void setAppearance(Appearance appearance)
 	{
+		setDirty();
 		m_appearance = appearance;
 	}
 
@@ -81,6 +82,7 @@ public class Sprite3D extends Node
 
 	public void setImage(Image2D image)
 	{
+		setDirty();
 		if (image == null)
 			throw new NullPointerException("Sprite3D: image is null");
 		
@@ -110,6 +112,7 @@ public class Sprite3D extends Node
 
 	public void setCrop(int cropX, int cropY, int width, int height)
 	{
+		setDirty();
 		m_cropX = cropX;
 		m_cropY = cropY;
 		m_cropWidth = width;
@@ -166,6 +169,7 @@ public class Sprite3D extends Node
 	
 	public void setScaled(boolean scaled)
 	{
+		setDirty();
 		m_scaled = scaled;
 	}
 
@@ -219,7 +223,7 @@ public class Sprite3D extends Node
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -249,7 +253,7 @@ public class Sprite3D extends Node
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		m_image.buildReferenceTable(table);
 		if (m_appearance != null)
@@ -0,0 +1,135 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A <code>SubGraph</code> is the form a referenced M3G file is cached in.
+ * It is not a runtime construct called out by the M3G Specification.
+ * <p>
+ * A <code>Node</code> can only have one parent, so the root of a referenced
+ * file is not handed out as it is. The sub-graph keeps the encoded fields
+ * of every <code>Node</code> reachable from the root, and each reference to
+ * the file gets its own copy of them from <code>newInstance()</code>. The
+ * other objects, such as images and vertex arrays, are not attached to a
+ * parent and are shared by all the copies.
+ * </p>
+ */
+class SubGraph extends M3GObject
+{
+	// The objects reachable from the root, in file order. The Nodes are
+	// not kept; their places are null.
+	private ArrayList m_table;
+	// The encoded fields of each Node, or null for the other objects.
+	private byte m_nodes[][];
+	// The type of each Node.
+	private int m_types[];
+	// The index of the root in the table.
+	private int m_rootIndex;
+	// The type of the root.
+	private int m_rootType;
+	// The registry the copies of the Nodes are created with.
+	private Object3DRegistry m_registry;
+
+	/**
+	 * Create a sub-graph of the objects reachable from the specified root.
+	 * 
+	 * @param root The root object of the referenced file.
+	 * @param registry The registry the copies of the Nodes are created with.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * encoding a Node.
+	 */
+	SubGraph(Object3D root, Object3DRegistry registry) throws IOException
+	{
+		ReferenceTable table = new ReferenceTable();
+		table.add(Boolean.FALSE);
+		root.buildReferenceTable(table);
+
+		m_nodes = new byte[table.size()][];
+		m_types = new int[table.size()];
+		for (int i = 1; i < table.size(); i++)
+		{
+			if (table.get(i) instanceof Node)
+			{
+				ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				((Node)table.get(i)).marshall(new M3GOutputStream(baos), table);
+				m_nodes[i] = baos.toByteArray();
+				m_types[i] = ((Node)table.get(i)).getObjectType();
+			}
+		}
+		m_rootIndex = table.indexOf(root);
+		m_rootType = root.getObjectType();
+		m_table = new ArrayList(table.size());
+		for (int i = 0; i < table.size(); i++)
+			m_table.add((m_nodes[i] == null) ? table.get(i) : null);
+		m_registry = registry;
+	}
+
+	/**
+	 * Create a copy of the root, with copies of the Nodes it references.
+	 * 
+	 * @return The root of the copy is returned. If the root is not a
+	 * <code>Node</code>, the shared root is returned.
+	 * 
+	 * @throws IOException This exception is thrown if an error occurs
+	 * decoding a Node.
+	 */
+	M3GObject newInstance() throws IOException
+	{
+		// Objects only reference objects before them in the table, so
+		// each Node is read after the copies it references.
+		ArrayList table = new ArrayList(m_table);
+		for (int i = 1; i <= m_rootIndex; i++)
+		{
+			if (m_nodes[i] == null)
+				continue;
+			Object3D node = m_registry.newObject3D(m_types[i]);
+			if (node == null)
+				throw new IOException("SubGraph: object of type " + m_types[i] + " skipped");
+			node.unmarshall(new M3GInputStream(ByteBuffer.wrap(m_nodes[i])), table);
+			table.set(i, node);
+		}
+		return (M3GObject)table.get(m_rootIndex);
+	}
+
+	public int getObjectType()
+	{
+		return m_rootType;
+	}
+
+	protected void unmarshall(M3GInputStream is, ArrayList table) throws IOException
+	{
+		throw new IOException("SubGraph: not part of a file");
+	}
+
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
+	{
+		throw new IOException("SubGraph: not part of a file");
+	}
+}
@@ -81,6 +81,7 @@ public class Texture2D extends Transformable
 
 	public void setImage(Image2D image)
 	{
+		setDirty();
 		if (image == null)
 			throw new NullPointerException("Texture2D: image is null");
 		if (! isPower2(image.getWidth()) || ! isPower2(image.getHeight()))
@@ -118,6 +119,7 @@ public class Texture2D extends Transformable
 
 	public void setFiltering(int levelFilter,int imageFilter)
 	{
+		setDirty();
 		if (levelFilter < FILTER_BASE_LEVEL || levelFilter>FILTER_NEAREST)
 			throw new IllegalArgumentException("Texture2D: levelFilter is not one of FILTER_BASE_LEVEL, FILTER_NEAREST, FILTER_LINEAR");
 		if (imageFilter < FILTER_LINEAR || imageFilter>FILTER_NEAREST)
@@ -139,6 +141,7 @@ public class Texture2D extends Transformable
 
 	public void setWrapping(int wrapS,int wrapT)
 	{
+		setDirty();
 		if (wrapS < WRAP_CLAMP || wrapS > WRAP_REPEAT || wrapT < WRAP_CLAMP || wrapT > WRAP_REPEAT)
 			throw new IllegalArgumentException("Texture2D: wrapS or wrapT is not one of WRAP_CLAMP, WRAP_REPEAT");
 		
@@ -158,6 +161,7 @@ public class Texture2D extends Transformable
 
 	public void setBlending(int func)
 	{
+		setDirty();
 		if (func < FUNC_ADD || func > FUNC_REPLACE)
 			throw new IllegalArgumentException("Texture2D: func is not one of FUNC_REPLACE, FUNC_MODULATE, FUNC_DECAL, FUNC_BLEND, FUNC_ADD");
 		
@@ -171,6 +175,7 @@ public class Texture2D extends Transformable
 
 	public void setBlendColor(int RGB)
 	{
+		setDirty();
 		m_blendColor = RGB;
 	}
 
@@ -246,7 +251,7 @@ public class Texture2D extends Transformable
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -268,7 +273,7 @@ public class Texture2D extends Transformable
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		m_image.buildReferenceTable(table);
 
@@ -59,6 +59,7 @@ public abstract class Transformable extends Object3D
 
 	public void setOrientation(float angle, float ax, float ay, float az)
 	{
+		setDirty();
 		if (ax == 0 && ay == 0 && az == 0 && angle != 0)
 			throw new IllegalArgumentException("Transformable: the rotation axis (ax ay az) is zero and angle is nonzero");
 		
@@ -68,6 +69,7 @@ public abstract class Transformable extends Object3D
 
 	public void preRotate(float angle, float ax, float ay, float az)
 	{
+		setDirty();
 		Transform t = new Transform();
 		t.postRotate(angle, ax, ay, az);
 		t.postMultiply(m_orientation);
@@ -76,6 +78,7 @@ public abstract class Transformable extends Object3D
 
 	public void postRotate(float angle, float ax, float ay, float az)
 	{
+		setDirty();
 		m_orientation.postRotate(angle, ax, ay, az);
 	}
 
@@ -109,6 +112,7 @@ public abstract class Transformable extends Object3D
 
 	public void setScale(float sx,float sy,float sz)
 	{
+		setDirty();
 		m_scale[0] = sx;
 		m_scale[1] = sy;
 		m_scale[2] = sz;
@@ -116,6 +120,7 @@ public abstract class Transformable extends Object3D
 
 	public void scale(float sx,float sy,float sz)
 	{
+		setDirty();
 		m_scale[0] *= sx;
 		m_scale[1] *= sy;
 		m_scale[2] *= sz;
@@ -131,6 +136,7 @@ public abstract class Transformable extends Object3D
 
 	public void setTranslation(float tx, float ty, float tz)
 	{
+		setDirty();
 		m_translation[0] = tx;
 		m_translation[1] = ty;
 		m_translation[2] = tz;
@@ -138,6 +144,7 @@ public abstract class Transformable extends Object3D
 
 	public void translate(float tx, float ty, float tz)
 	{
+		setDirty();
 		m_translation[0] += tx;
 		m_translation[1] += ty;
 		m_translation[2] += tz;
@@ -153,6 +160,7 @@ public abstract class Transformable extends Object3D
 
 	public void setTransform(Transform transform)
 	{
+		setDirty();
 		if (transform == null)
 			throw new NullPointerException("Transformable: transform can not be null");
 		
@@ -225,7 +233,7 @@ public abstract class Transformable extends Object3D
 			m_transform.set(is.readMatrix());
 	}
 
-	protected void marshall(M3GOutputStream os,ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os,ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
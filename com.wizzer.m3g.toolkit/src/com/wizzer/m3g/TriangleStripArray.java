@@ -27,6 +27,7 @@ package com.wizzer.m3g;
 import java.io.*;
 import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 // Import JOGL classes.
@@ -48,6 +49,17 @@ public class TriangleStripArray extends IndexBuffer
 	private int m_indices[];
 	// An array of per-strip vertex counts.
 	private int m_stripLengths[];
+	// The encoded strips written for the indices and strip lengths
+	// below, kept so that an unchanged array is not stripified again.
+	private byte m_strippedData[];
+	private int m_strippedIndices[];
+	private int m_strippedLengths[];
+	// Whether the strips were ordered for the vertex cache, and are to be
+	// written as they are rather than stripified again.
+	private boolean m_keepStrips;
+
+	// The largest minimum strip size tried when stripifying.
+	private static final int MAX_MIN_STRIP_SIZE = 10;
 
     ////////// Methods part of M3G Specification //////////
 
@@ -193,7 +205,7 @@ public class TriangleStripArray extends IndexBuffer
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -222,31 +234,249 @@ public class TriangleStripArray extends IndexBuffer
 				os.writeUInt32(m_stripLengths[i]);
 		}
 		else
+			os.write(getStrippedData(table.getStripificationPool(), table.getStripificationTimeBudget()));
+	}
+
+	// Get the encoded strips that deflate smallest, of the strips of the
+	// array and those found by the stripification trials run on the pool
+	// within the time budget, in milliseconds.
+	private synchronized byte[] getStrippedData(ForkJoinPool pool, long timeBudget) throws IOException
+	{
+		if ((m_strippedData != null) && Arrays.equals(m_strippedIndices, m_indices) &&
+			Arrays.equals(m_strippedLengths, m_stripLengths))
+			return m_strippedData;
+		if (m_keepStrips)
 		{
-			byte data[] = encode(m_indices, m_stripLengths);
-			int compressedLength = getCompressedLength(data);
+			m_strippedData = encode(m_indices, m_stripLengths);
+			m_strippedIndices = m_indices.clone();
+			m_strippedLengths = m_stripLengths.clone();
+			return m_strippedData;
+		}
 
-			int faces[] = getRawFaces();
-			// TriangleStripArray.
-			for (int i = 0; i < 2; i++)
+		long start = System.nanoTime();
+		long budget = timeBudget * 1000000L;
+		final StripSearch search = new StripSearch();
+		int trialCount = search.getTrialCount();
+		boolean complete = true;
+
+		if (pool == null)
+		{
+			for (int i = 0; i < trialCount; i++)
 			{
-				for (int j = 1; j <= 10; j++)
+				if ((budget > 0) && (System.nanoTime() - start >= budget))
 				{
-					int stripData[][] = strip(faces, j, i == 0);
-					byte data2[] = encode(stripData[0], stripData[1]);
-					int compressedLength2 = getCompressedLength(data2);
-					if (compressedLength2 < compressedLength)
+					complete = false;
+					break;
+				}
+				search.runTrial(i);
+			}
+		}
+		else
+		{
+			ForkJoinTask tasks[] = new ForkJoinTask[trialCount];
+			for (int i = 0; i < trialCount; i++)
+			{
+				final int trial = i;
+				tasks[i] = pool.submit(new Callable()
+				{
+					public Object call() throws IOException
 					{
-						data = data2;
-						compressedLength = compressedLength2;
+						search.runTrial(trial);
+						return null;
+					}
+				});
+			}
+			try
+			{
+				for (int i = 0; i < trialCount; i++)
+				{
+					if (budget <= 0)
+						tasks[i].get();
+					else if (complete)
+					{
+						try
+						{
+							long remaining = budget - (System.nanoTime() - start);
+							tasks[i].get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+						} catch (TimeoutException ex)
+						{
+							complete = false;
+						}
 					}
+					if (! complete)
+					{
+						// Out of time; keep the trials already done.
+						if (tasks[i].isDone() && ! tasks[i].isCancelled())
+							tasks[i].get();
+						else
+							tasks[i].cancel(false);
+					}
+				}
+			} catch (InterruptedException ex)
+			{
+				for (int i = 0; i < trialCount; i++)
+					tasks[i].cancel(false);
+				throw new InterruptedIOException("TriangleStripArray: interrupted");
+			} catch (ExecutionException ex)
+			{
+				if (ex.getCause() instanceof IOException)
+					throw (IOException)ex.getCause();
+				throw new IOException("TriangleStripArray: " + ex.getCause());
+			}
+		}
+
+		byte data[] = search.getResult();
+		if (complete)
+			keepStrippedData(search, data);
+		return data;
+	}
+
+	/**
+	 * Start a search for the strips to write, if the array needs one.
+	 * 
+	 * @return A search over the current strips of the array is returned,
+	 * or <b>null</b> if the array has implicit indices, was ordered for the
+	 * vertex cache, or has already been searched since it last changed.
+	 */
+	synchronized StripSearch newStripSearch()
+	{
+		if ((m_indices == null) || m_keepStrips)
+			return null;
+		if ((m_strippedData != null) && Arrays.equals(m_strippedIndices, m_indices) &&
+			Arrays.equals(m_strippedLengths, m_stripLengths))
+			return null;
+		return new StripSearch();
+	}
+
+	/**
+	 * Keep the result of a completed search, to be written in place of
+	 * searching again. The result is dropped if the strips of the array
+	 * have changed since the search was started.
+	 * 
+	 * @param search The search.
+	 * @param data The result of the search.
+	 * 
+	 * @return <b>true</b> is returned if the result was kept.
+	 */
+	synchronized boolean keepStrippedData(StripSearch search, byte data[])
+	{
+		if (m_keepStrips || ! Arrays.equals(search.m_indices, m_indices) ||
+			! Arrays.equals(search.m_stripLengths, m_stripLengths))
+			return false;
+		m_strippedData = data;
+		m_strippedIndices = search.m_indices;
+		m_strippedLengths = search.m_stripLengths;
+		return true;
+	}
+
+	/**
+	 * A search for the strips of an array that deflate smallest, over the
+	 * strips the array had when the search was started.
+	 * <p>
+	 * Trial -1 encodes the strips themselves, and the other trials
+	 * stripify the triangles with different settings. The trials may run
+	 * concurrently, on any thread.
+	 * </p>
+	 */
+	final class StripSearch
+	{
+		// The strips searched, and their triangles.
+		private int m_indices[];
+		private int m_stripLengths[];
+		private int m_faces[];
+		// The smallest strips found so far, their deflated length, and
+		// the trial that found them.
+		private byte m_data[];
+		private int m_compressedLength;
+		private int m_trial;
+		// Whether trial -1 has been run.
+		private boolean m_encoded;
+
+		// Must be created holding the lock of the array.
+		private StripSearch()
+		{
+			m_indices = TriangleStripArray.this.m_indices.clone();
+			m_stripLengths = TriangleStripArray.this.m_stripLengths.clone();
+			m_faces = getRawFaces();
+		}
+
+		TriangleStripArray getArray()
+		{
+			return TriangleStripArray.this;
+		}
+
+		/**
+		 * Get the number of stripification trials.
+		 * 
+		 * @return The number of trials, besides trial -1, is returned.
+		 */
+		int getTrialCount()
+		{
+			return 2 * MAX_MIN_STRIP_SIZE;
+		}
+
+		/**
+		 * Get the number of triangles searched.
+		 * 
+		 * @return The number of triangles is returned.
+		 */
+		int getFaceCount()
+		{
+			return m_faces.length / 3;
+		}
+
+		/**
+		 * Run a trial, keeping its strips if they are the smallest so far.
+		 * 
+		 * @param trial The trial, from -1 to <code>getTrialCount() - 1</code>.
+		 * 
+		 * @throws IOException This exception is thrown if an error occurs
+		 * encoding the strips.
+		 */
+		void runTrial(int trial) throws IOException
+		{
+			byte data[] = (trial < 0) ? encode(m_indices, m_stripLengths) : stripTrial(m_faces, trial);
+			int compressedLength = getCompressedLength(data);
+			synchronized (this)
+			{
+				if (trial < 0)
+					m_encoded = true;
+				// Prefer the strips of the array, then the earliest trial.
+				if ((m_data == null) || (compressedLength < m_compressedLength) ||
+					((compressedLength == m_compressedLength) && (trial < m_trial)))
+				{
+					m_data = data;
+					m_compressedLength = compressedLength;
+					m_trial = trial;
 				}
 			}
+		}
 
-			os.write(data);
+		/**
+		 * Get the smallest strips of the trials run, running trial -1 if
+		 * it has not been.
+		 * 
+		 * @return The encoded strips are returned.
+		 * 
+		 * @throws IOException This exception is thrown if an error occurs
+		 * encoding the strips.
+		 */
+		synchronized byte[] getResult() throws IOException
+		{
+			if (! m_encoded)
+				runTrial(-1);
+			return m_data;
 		}
 	}
 
+	// Stripify the faces with the settings of the specified trial, with
+	// stitching for the first half of the trials, and encode the strips.
+	private byte[] stripTrial(int faces[], int trial) throws IOException
+	{
+		int stripData[][] = strip(faces, (trial % MAX_MIN_STRIP_SIZE) + 1, trial < MAX_MIN_STRIP_SIZE);
+		return encode(stripData[0], stripData[1]);
+	}
+
 	private byte[] encode(int indices[], int stripLengths[]) throws IOException
 	{
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -289,7 +519,9 @@ public class TriangleStripArray extends IndexBuffer
 		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION,false);
 		deflater.setInput(data);
 		deflater.finish();
-		return deflater.deflate(new byte[data.length << 1]);
+		int length = deflater.deflate(new byte[(data.length << 1) + 64]);
+		deflater.end();
+		return length;
 	}
 
 	private int[] getRawFaces()
@@ -344,8 +576,13 @@ public class TriangleStripArray extends IndexBuffer
 		NvTriStrip strip = new NvTriStrip();
 		strip.setStitchStrips(stitchStrips);
 		strip.setMinStripSize(minStripSize);
-		PrimitiveGroup groups[] = strip.generateStrips(faces);
+		return toStripData(strip.generateStrips(faces));
+	}
 
+	// Gather the indices and strip lengths of the groups, making a strip
+	// of each triangle of a list.
+	private int[][] toStripData(PrimitiveGroup groups[])
+	{
 		// Calculate the total number of indices for the length of each strip.
 		int nindices = 0, nlengths = 0;
 		for (int i = 0; i < groups.length; i++)
@@ -408,6 +645,49 @@ public class TriangleStripArray extends IndexBuffer
 		return data;
 	}
 	
+	/**
+	 * Reorder the triangles for the vertex cache.
+	 * <p>
+	 * The triangles are reordered by the optimizer and joined into strips
+	 * where they follow each other, and those strips are written instead
+	 * of searching for the strips that deflate smallest.
+	 * Arrays of implicit indices are left as they are.
+	 * </p>
+	 * 
+	 * @param optimizer The optimizer to use.
+	 */
+	synchronized void optimizeVertexCache(VertexCacheOptimizer optimizer)
+	{
+		if (m_indices == null)
+			return;
+		int faces[] = getRawFaces();
+		if (faces.length == 0)
+			return;
+		int data[][] = toStripData(optimizer.generateStrips(faces));
+		setDirty();
+		m_indices = data[0];
+		m_stripLengths = data[1];
+		m_keepStrips = true;
+		fillIndexBuffer(checkInput(m_stripLengths), m_indices, m_stripLengths);
+	}
+
+	/**
+	 * Renumber the vertices the explicit indices refer to.
+	 * 
+	 * @param remap The new number of each vertex, indexed by its old number.
+	 */
+	synchronized void remapIndices(int remap[])
+	{
+		if (m_indices == null)
+			return;
+		setDirty();
+		int indices[] = new int[m_indices.length];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = remap[m_indices[i]];
+		m_indices = indices;
+		fillIndexBuffer(checkInput(m_stripLengths), m_indices, m_stripLengths);
+	}
+
 	// Validate the strip lengths, returning the sum, total length.
 	private int checkInput(int[] stripLengths)
 	{
@@ -27,6 +27,7 @@ package com.wizzer.m3g;
 import java.io.*;
 import java.util.*;
 import java.util.zip.*;
+import java.util.logging.*;
 import java.nio.*;
 
 // Import JOGL classes.
@@ -35,6 +36,31 @@ import com.sun.opengl.util.*; // BufferUtils
 
 public class VertexArray extends Object3D
 {
+	/**
+	 * Encoding policy choosing the encoding that deflates smaller, by
+	 * deflating both encodings of the array.
+	 */
+	public static final int ENCODING_THOROUGH = 0;
+	/**
+	 * Encoding policy choosing the encoding with the lower estimated
+	 * size, by quickly deflating a few samples of each encoding.
+	 */
+	public static final int ENCODING_ESTIMATE = 1;
+	/**
+	 * Encoding policy choosing the encoding with the lower estimated
+	 * size, from the entropy of the bytes of each encoding.
+	 */
+	public static final int ENCODING_ENTROPY = 2;
+	/** Encoding policy always choosing encoding 0, the components as is. */
+	public static final int ENCODING_RAW = 3;
+	/** Encoding policy always choosing encoding 1, the component deltas. */
+	public static final int ENCODING_DELTA = 4;
+
+	// The number of samples deflated to estimate the size of an encoding.
+	private static final int SAMPLE_COUNT = 4;
+	// The size of each sample.
+	private static final int SAMPLE_SIZE = 4096;
+
 	// The size of each component in the array.
 	int m_componentSize;
 	// The number of components.
@@ -45,6 +71,7 @@ public class VertexArray extends Object3D
 	int m_encoding;
 	// The actual vertex data.
 	private Buffer m_buffer;
+	// The vertex data converted to floats, created when first requested.
 	private FloatBuffer m_floatBuffer;
 
     ////////// Methods part of M3G Specification //////////
@@ -63,11 +90,9 @@ public class VertexArray extends Object3D
 		int numElements = m_vertexCount * m_componentCount;
 		if (componentSize == 1) m_buffer = BufferUtil.newByteBuffer(numElements);
 		else m_buffer = BufferUtil.newShortBuffer(numElements);
-		
-		m_floatBuffer = BufferUtil.newFloatBuffer(numElements);
 	}
 
-	public void set(int firstVertex, int numVertices, short values[])
+	public synchronized void set(int firstVertex, int numVertices, short values[])
 	{
 		if (! (m_buffer instanceof ShortBuffer))
 			throw new IllegalStateException("VertexArray: this is not a 16-bit VertexArray");
@@ -75,21 +100,23 @@ public class VertexArray extends Object3D
 			throw new IllegalArgumentException("VertexArray: numVertices < 0");
 		if (values.length < numVertices * m_componentCount)
 			throw new IllegalArgumentException("VertexArray: values.length <  numVertices * numComponents");
+		if (firstVertex < 0 || firstVertex + numVertices > m_vertexCount)
+			throw new IndexOutOfBoundsException("VertexArray: index out of bounds");
 
-		int numElements = m_vertexCount * m_componentCount;
+		setDirty();
+		copyOnWrite();
+		int firstElement = firstVertex * m_componentCount;
+		int numElements = numVertices * m_componentCount;
 		ShortBuffer shortBuffer = (ShortBuffer)m_buffer;
-		shortBuffer.position(firstVertex);
+		shortBuffer.position(firstElement);
 		shortBuffer.put(values, 0, numElements);
-
-		m_floatBuffer.position(firstVertex);
-		for (int i = 0; i < numElements; i++)
-			m_floatBuffer.put((float)values[i]);
-		
 		m_buffer.rewind();
-		m_floatBuffer.rewind();
+
+		// The float data is out of date.
+		m_floatBuffer = null;
 	}
 
-	public void set(int firstVertex, int numVertices, byte values[])
+	public synchronized void set(int firstVertex, int numVertices, byte values[])
 	{
 		if (! (m_buffer instanceof ByteBuffer))
 			throw new IllegalStateException("VertexArray: this is not a 8-bit VertexArray");
@@ -97,38 +124,42 @@ public class VertexArray extends Object3D
 			throw new IllegalArgumentException("VertexArray: numVertices < 0");
 		if (values.length < numVertices * m_componentCount)
 			throw new IllegalArgumentException("VertexArray: values.length <  numVertices * numComponents");
+		if (firstVertex < 0 || firstVertex + numVertices > m_vertexCount)
+			throw new IndexOutOfBoundsException("VertexArray: index out of bounds");
 
-		int numElements = m_vertexCount * m_componentCount;
+		setDirty();
+		copyOnWrite();
+		int firstElement = firstVertex * m_componentCount;
+		int numElements = numVertices * m_componentCount;
 		ByteBuffer byteBuffer = (ByteBuffer)m_buffer;
-		byteBuffer.position(firstVertex);
+		byteBuffer.position(firstElement);
 		byteBuffer.put(values, 0, numElements);
-
-		m_floatBuffer.position(firstVertex);
-		for (int i = 0; i < numElements; i++)
-			m_floatBuffer.put((float)values[i]);
-
 		m_buffer.rewind();
-		m_floatBuffer.rewind();
+
+		// The float data is out of date.
+		m_floatBuffer = null;
 	}
 
-	public void get(int firstVertex, int numVertices, short[] values)
+	public synchronized void get(int firstVertex, int numVertices, short[] values)
 	{
 		int numElements = numVertices * m_componentCount;
 		checkShortInput(firstVertex, numVertices, numElements, values);
 		
 		ShortBuffer shortBuffer = (ShortBuffer)m_buffer;
-		shortBuffer.position(firstVertex);
+		shortBuffer.position(firstVertex * m_componentCount);
 		shortBuffer.get(values, 0, numElements);
+		m_buffer.rewind();
 	}
 
-	public void get(int firstVertex, int numVertices, byte[] values)
+	public synchronized void get(int firstVertex, int numVertices, byte[] values)
 	{
 		int numElements = numVertices * m_componentCount;
 		checkByteInput(firstVertex, numVertices, numElements, values);
 
 		ByteBuffer byteBuffer = (ByteBuffer)m_buffer;
-		byteBuffer.position(firstVertex);
+		byteBuffer.position(firstVertex * m_componentCount);
 		byteBuffer.get(values, 0, numElements);
+		m_buffer.rewind();
 	}
 
 	private void checkShortInput(int firstVertex, int numVertices, int numElements, short[] values)
@@ -190,6 +221,13 @@ public class VertexArray extends Object3D
 		return m_componentSize;
 	}
 
+	/**
+	 * Get the encoding the array was last read or written with.
+	 * 
+	 * @return 0 if the components were stored as is, or 1 if the
+	 * differences between the components of consecutive vertices were
+	 * stored.
+	 */
 	public int getEncoding()
 	{
 		return m_encoding;
@@ -230,72 +268,113 @@ public class VertexArray extends Object3D
 		m_vertexCount = is.readUInt16();
 
 		int numElements = m_vertexCount * m_componentCount;
-		if (m_componentSize == 1) m_buffer = BufferUtil.newByteBuffer(numElements);
-		else m_buffer = BufferUtil.newShortBuffer(numElements);
-		
-		m_floatBuffer = BufferUtil.newFloatBuffer(numElements);
+		ByteBuffer data = is.readBuffer(numElements * m_componentSize);
+		if (encoding == 0) m_buffer = wrap(data);
+		else m_buffer = decode(data);
+		m_floatBuffer = null;
+	}
+
+	/**
+	 * Use the specified little-endian component data as the vertex data.
+	 * <p>
+	 * If the data can be passed to OpenGL as it is, that is if it is direct
+	 * and the platform is little-endian, the data is viewed in place and
+	 * shares the memory of the section it was read from. Otherwise, it is
+	 * copied into a new direct buffer.
+	 * </p>
+	 * 
+	 * @param data The component data.
+	 * 
+	 * @return Either a <code>ByteBuffer</code> or a <code>ShortBuffer</code>
+	 * is returned, depending on the commponent size.
+	 */
+	private Buffer wrap(ByteBuffer data)
+	{
+		if (m_componentSize == 1)
+		{
+			if (data.isDirect())
+				return data;
+			ByteBuffer byteBuffer = BufferUtil.newByteBuffer(data.remaining());
+			byteBuffer.put(data);
+			byteBuffer.rewind();
+			return byteBuffer;
+		}
+		else
+		{
+			ShortBuffer view = data.asShortBuffer();
+			if (data.isDirect() && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)
+				return view;
+			ShortBuffer shortBuffer = BufferUtil.newShortBuffer(view.remaining());
+			shortBuffer.put(view);
+			shortBuffer.rewind();
+			return shortBuffer;
+		}
+	}
 
+	/**
+	 * Decode the specified delta encoded component data into a new
+	 * buffer. Each component is stored as the difference from the same
+	 * component of the previous vertex.
+	 * 
+	 * @param data The little-endian component data.
+	 * 
+	 * @return Either a <code>ByteBuffer</code> or a <code>ShortBuffer</code>
+	 * is returned, depending on the commponent size.
+	 */
+	private Buffer decode(ByteBuffer data)
+	{
+		int numElements = m_vertexCount * m_componentCount;
 		if (m_componentSize == 1)
 		{
 			byte components[] = new byte[numElements];
-			if (encoding == 0)
-			{
-				for (int i = 0, index = 0; i < m_vertexCount; i++)
-				{
-					for (int c = 0; c < m_componentCount; c++)
-					{
-						short value = (short)is.readByte();
-						components[index++] = (byte)(value & 0xff);
-					}
-				}
-				this.set(0, m_vertexCount, components);
-			}
-			else if (encoding == 1)
-			{
-				short prev[] = new short[m_componentCount];
-				for (int i = 0, index = 0; i < m_vertexCount; i++)
-				{
-					for (int c = 0; c < m_componentCount; c++)
-					{
-						short value = (short)(is.readByte() + prev[c]);
-						components[index++] = (byte)(value & 0xff);
-						prev[c] = value;
-					}
-				}
-				this.set(0, m_vertexCount, components);
-			}
+			data.get(components);
+			for (int i = m_componentCount; i < numElements; i++)
+				components[i] += components[i - m_componentCount];
+			ByteBuffer byteBuffer = BufferUtil.newByteBuffer(numElements);
+			byteBuffer.put(components);
+			byteBuffer.rewind();
+			return byteBuffer;
 		}
-		else if (m_componentSize == 2)
+		else
 		{
 			short components[] = new short[numElements];
-			if (encoding == 0)
-			{
-				for (int i = 0, index = 0; i < m_vertexCount; i++)
-				{
-					for (int c = 0; c < m_componentCount; c++)
-					{
-				        int value = (int)is.readInt16();
-				        components[index++] = (short)(value & 0xffff);
-					}
-				}
-				this.set(0, m_vertexCount, components);
-			}
-			else if (encoding == 1)
-			{
-				int prev[] = new int[m_componentCount];
-				for (int i = 0, index = 0; i < m_vertexCount; i++)
-				{
-					for (int c = 0; c < m_componentCount; c++)
-					{
-						int value = (int)(is.readInt16() + prev[c]);
-						components[index++] = (short)(value & 0xffff);
-						prev[c] = value;
-					}
-				}
-				this.set(0, m_vertexCount, components);
-			}
+			data.asShortBuffer().get(components);
+			for (int i = m_componentCount; i < numElements; i++)
+				components[i] += components[i - m_componentCount];
+			ShortBuffer shortBuffer = BufferUtil.newShortBuffer(numElements);
+			shortBuffer.put(components);
+			shortBuffer.rewind();
+			return shortBuffer;
 		}
-	 }
+	}
+
+	// Copy the vertex data before it is modified if it is a read-only
+	// view of the data it was read from.
+	private void copyOnWrite()
+	{
+		if (! m_buffer.isReadOnly())
+			return;
+		if (m_buffer instanceof ByteBuffer)
+		{
+			// Copy from a rewound duplicate so the whole array is copied
+			// regardless of the current position of the shared buffer.
+			ByteBuffer source = ((ByteBuffer)m_buffer).duplicate();
+			source.rewind();
+			ByteBuffer byteBuffer = BufferUtil.newByteBuffer(m_buffer.capacity());
+			byteBuffer.put(source);
+			byteBuffer.rewind();
+			m_buffer = byteBuffer;
+		}
+		else
+		{
+			ShortBuffer source = ((ShortBuffer)m_buffer).duplicate();
+			source.rewind();
+			ShortBuffer shortBuffer = BufferUtil.newShortBuffer(m_buffer.capacity());
+			shortBuffer.put(source);
+			shortBuffer.rewind();
+			m_buffer = shortBuffer;
+		}
+	}
 
 	/**
 	 * Write field data.
@@ -306,15 +385,16 @@ public class VertexArray extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
 		if (m_componentSize == 2)
 		{
-			ShortBuffer buffer = (ShortBuffer)m_buffer;
+			ShortBuffer buffer = ((ShortBuffer)m_buffer).duplicate();
 			int numElements = m_vertexCount * m_componentCount;
 			short[] components = new short[numElements];
+			buffer.rewind();
 			buffer.get(components);
 			
 			boolean toByte = true;
@@ -330,112 +410,181 @@ public class VertexArray extends Object3D
 				byte c[] = new byte[components.length];
 				for (int i = 0; i < components.length; i++)
 					c[i] = (byte)components[i];
-				write(os, m_vertexCount, m_componentCount, 1, c);
+				write(os, table.getVertexEncodingPolicy(), m_vertexCount, m_componentCount, 1, c);
 			}
-			else write(os, m_vertexCount, m_componentCount, m_componentSize, components);
+			else write(os, table.getVertexEncodingPolicy(), m_vertexCount, m_componentCount, m_componentSize, components);
 		}
 		else if (m_componentSize == 1)
 		{
-			ByteBuffer buffer = (ByteBuffer)m_buffer;
+			ByteBuffer buffer = ((ByteBuffer)m_buffer).duplicate();
 			int numElements = m_vertexCount * m_componentCount;
 			byte[] components = new byte[numElements];
+			buffer.rewind();
 			buffer.get(components);
-			write(os, m_vertexCount, m_componentCount, m_componentSize, components);
+			write(os, table.getVertexEncodingPolicy(), m_vertexCount, m_componentCount, m_componentSize, components);
 		}
-		
-		// Rewind the buffer in case we need to marshall it again.
-		m_buffer.rewind();
 	}
 
-	private void write(M3GOutputStream os, int vertexCount, int componentCount, int componentSize, Object components) throws IOException
+	private void write(M3GOutputStream os, int policy, int vertexCount, int componentCount, int componentSize, Object components) throws IOException
 	{
-		// Encode.
-		byte encoding0[] = encode(0, vertexCount, componentCount, componentSize, components);
-		byte encoding1[] = encode(1, vertexCount, componentCount, componentSize, components);
-
-		int length0 = getCompressedLength(encoding0);
-		int length1 = getCompressedLength(encoding1);
+		byte data[];
+		if (policy == ENCODING_ESTIMATE)
+		{
+			// Deflate samples of both encodings.
+			byte encoding0[] = encode(0, componentCount, componentSize, components);
+			byte encoding1[] = encode(1, componentCount, componentSize, components);
+			int stride = componentCount * componentSize;
+			int length0 = getSampledCompressedLength(encoding0, stride);
+			int length1 = getSampledCompressedLength(encoding1, stride);
+			m_encoding = (length0 <= length1) ? 0 : 1;
+			data = (m_encoding == 0) ? encoding0 : encoding1;
+			Logger.global.logp(Level.FINE, "com.wizzer.m3g.VertexArray", "write",
+				"encoding " + m_encoding + " by sampled deflated length (" + length0 + "/" + length1 + ")");
+		}
+		else if (policy == ENCODING_THOROUGH)
+		{
+			// Deflate both encodings.
+			byte encoding0[] = encode(0, componentCount, componentSize, components);
+			byte encoding1[] = encode(1, componentCount, componentSize, components);
+			int length0 = getCompressedLength(encoding0);
+			int length1 = getCompressedLength(encoding1);
+			m_encoding = (length0 <= length1) ? 0 : 1;
+			data = (m_encoding == 0) ? encoding0 : encoding1;
+			Logger.global.logp(Level.FINE, "com.wizzer.m3g.VertexArray", "write",
+				"encoding " + m_encoding + " by deflated length (" + length0 + "/" + length1 + ")");
+		}
+		else
+		{
+			if (policy == ENCODING_ENTROPY)
+			{
+				double estimate[] = estimateEncodedBits(componentCount, componentSize, components);
+				m_encoding = (estimate[0] <= estimate[1]) ? 0 : 1;
+				Logger.global.logp(Level.FINE, "com.wizzer.m3g.VertexArray", "write",
+					"encoding " + m_encoding + " by entropy estimate (" + (long)estimate[0] / 8 + "/" + (long)estimate[1] / 8 + ")");
+			}
+			else
+				m_encoding = (policy == ENCODING_RAW) ? 0 : 1;
+			data = encode(m_encoding, componentCount, componentSize, components);
+		}
 
 		os.writeByte(componentSize);
 		os.writeByte(componentCount);
-		os.writeByte(length0 <= length1 ? 0 : 1);
+		os.writeByte(m_encoding);
 		os.writeUInt16(vertexCount);
-		os.write(length0 <= length1 ? encoding0 : encoding1);
+		os.write(data);
 	}
 
-	private byte[] encode(int encoding, int vertexCount, int componentCount, int componentSize, Object _components) throws IOException
+	// Encode the components in the specified encoding, little-endian.
+	private byte[] encode(int encoding, int componentCount, int componentSize, Object _components)
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		M3GOutputStream os = new M3GOutputStream(baos);
-
 		if (componentSize == 1)
 		{
 			byte components[] = (byte[])_components;
-			//short components[] = (short[])_components;
-			if (encoding == 0)
+			byte data[] = components.clone();
+			if (encoding == 1)
 			{
-				for (int i = 0, index = 0; i < vertexCount; i++)
-					for (int c = 0; c < componentCount; c++)
-						os.writeByte(components[index++]);
-						//os.writeByte(components[index++] & 0xff);
+				for (int i = data.length - 1; i >= componentCount; i--)
+					data[i] -= components[i - componentCount];
 			}
-			else if (encoding == 1)
+			return data;
+		}
+		else
+		{
+			short components[] = (short[])_components;
+			byte data[] = new byte[components.length * 2];
+			for (int i = 0; i < components.length; i++)
 			{
-				byte prev[] = new byte[componentCount];
-				//short prev[] = new short[componentCount];
-				for (int i = 0, index = 0; i < vertexCount; i++)
-				{
-					for (int c = 0; c < componentCount; c++)
-					{
-						byte value = components[index++];
-						//short value = components[index++];
-						os.writeByte(value - prev[c]);
-						//os.writeByte((value - prev[c]) & 0xff);
-						prev[c] = value;
-					}
-				}
+				int value = components[i];
+				if ((encoding == 1) && (i >= componentCount))
+					value -= components[i - componentCount];
+				data[2 * i] = (byte)value;
+				data[2 * i + 1] = (byte)(value >> 8);
 			}
+			return data;
 		}
-		else if (componentSize == 2)
+	}
+
+	// Estimate the size of both encodings once deflated, in bits, as the
+	// order-0 entropy of their bytes. Deflate codes literals with a single
+	// Huffman table, so this tracks its output closely unless the data has
+	// long repeats.
+	private double[] estimateEncodedBits(int componentCount, int componentSize, Object _components)
+	{
+		int histogram0[] = new int[256];
+		int histogram1[] = new int[256];
+		if (componentSize == 1)
 		{
-			short components[] = (short[])_components;
-			//int components[] = (int[])_components;
-			if (encoding == 0)
+			byte components[] = (byte[])_components;
+			for (int i = 0; i < components.length; i++)
 			{
-				for (int i = 0, index = 0; i < vertexCount; i++)
-					for (int c = 0; c < componentCount; c++)
-						os.writeInt16(components[index++]);
-						//os.writeInt16(components[index++] & 0xffff);
+				int value = components[i];
+				int delta = (i >= componentCount) ? value - components[i - componentCount] : value;
+				histogram0[value & 0xff]++;
+				histogram1[delta & 0xff]++;
 			}
-			else if (encoding == 1)
+		}
+		else
+		{
+			short components[] = (short[])_components;
+			for (int i = 0; i < components.length; i++)
 			{
-				short prev[] = new short[componentCount];
-				//int prev[] = new int[componentCount];
-				for (int i = 0, index = 0; i < vertexCount; i++)
-				{
-					for (int c = 0; c < componentCount;c++)
-					{
-						short value = components[index++];
-						//int value = components[index++];
-						os.writeInt16(value - prev[c]);
-						//os.writeInt16((value - prev[c]) & 0xffff);
-						prev[c] = value;
-					}
-				}
+				int value = components[i];
+				int delta = (i >= componentCount) ? value - components[i - componentCount] : value;
+				histogram0[value & 0xff]++;
+				histogram0[(value >> 8) & 0xff]++;
+				histogram1[delta & 0xff]++;
+				histogram1[(delta >> 8) & 0xff]++;
 			}
 		}
+		return new double[] { entropyBits(histogram0), entropyBits(histogram1) };
+	}
 
-		return baos.toByteArray();
+	// The number of bits the counted bytes take at their order-0 entropy.
+	private static double entropyBits(int histogram[])
+	{
+		long total = 0;
+		for (int i = 0; i < histogram.length; i++)
+			total += histogram[i];
+		double bits = 0;
+		for (int i = 0; i < histogram.length; i++)
+		{
+			if (histogram[i] > 0)
+				bits += histogram[i] * Math.log((double)total / histogram[i]);
+		}
+		return bits / Math.log(2);
+	}
+
+	// Get the deflated length of evenly spaced samples of the data, each
+	// starting on a vertex, or of all the data if it is small.
+	private int getSampledCompressedLength(byte data[], int stride)
+	{
+		if (data.length <= SAMPLE_COUNT * SAMPLE_SIZE)
+			return getCompressedLength(data, 0, data.length, Deflater.BEST_SPEED);
+		int length = 0;
+		int spacing = (data.length - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+		for (int i = 0; i < SAMPLE_COUNT; i++)
+		{
+			int offset = (i * spacing) / stride * stride;
+			length += getCompressedLength(data, offset, SAMPLE_SIZE, Deflater.BEST_SPEED);
+		}
+		return length;
 	}
 
 	private int getCompressedLength(byte data[])
 	{
-		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION,false);
-		deflater.setInput(data);
+		return getCompressedLength(data, 0, data.length, Deflater.BEST_COMPRESSION);
+	}
+
+	private int getCompressedLength(byte data[], int offset, int length, int level)
+	{
+		Deflater deflater = new Deflater(level, false);
+		deflater.setInput(data, offset, length);
 		deflater.finish();
-		return deflater.deflate(new byte[data.length << 1]);
+		int compressed = deflater.deflate(new byte[(length << 1) + 64]);
+		deflater.end();
+		return compressed;
 	}
-	
+
 	int getComponentTypeGL()
 	{
 		if (m_componentSize == 1)
@@ -457,11 +606,43 @@ public class VertexArray extends Object3D
 
 	/**
 	 * Get vertex buffer.
+	 * <p>
+	 * The float data is created from the vertex data the first time it is
+	 * requested, and kept until the vertex data is modified or
+	 * <code>releaseFloatBuffer()</code> is called.
+	 * </p>
 	 * 
 	 * @return A <code>FloatBuffer</code> is returned.
 	 */
-	public FloatBuffer getFloatBuffer()
+	public synchronized FloatBuffer getFloatBuffer()
 	{
+		if (m_floatBuffer == null)
+		{
+			int numElements = m_vertexCount * m_componentCount;
+			FloatBuffer floatBuffer = BufferUtil.newFloatBuffer(numElements);
+			if (m_componentSize == 1)
+			{
+				ByteBuffer byteBuffer = (ByteBuffer)m_buffer;
+				for (int i = 0; i < numElements; i++)
+					floatBuffer.put(i, (float)byteBuffer.get(i));
+			}
+			else
+			{
+				ShortBuffer shortBuffer = (ShortBuffer)m_buffer;
+				for (int i = 0; i < numElements; i++)
+					floatBuffer.put(i, (float)shortBuffer.get(i));
+			}
+			m_floatBuffer = floatBuffer;
+		}
 		return m_floatBuffer;
 	}
+
+	/**
+	 * Release the float data created by <code>getFloatBuffer()</code>.
+	 * It is created again when next requested.
+	 */
+	public synchronized void releaseFloatBuffer()
+	{
+		m_floatBuffer = null;
+	}
 }
@@ -72,6 +72,7 @@ public class VertexBuffer extends Object3D
 
 	public void setPositions(VertexArray positions,float scale,float bias[])
 	{
+		setDirty();
 		if (bias == null) bias = new float[3];
 		if (positions != null && positions.m_componentCount != 3)
 			throw new IllegalArgumentException("VertexBuffer: positions.numComponents != 3");
@@ -99,6 +100,7 @@ public class VertexBuffer extends Object3D
 
 	public void setTexCoords(int index,VertexArray texCoords,float scale,float bias[])
 	{
+		setDirty();
 		if (bias == null)
 			bias = new float[3];
 		if (texCoords != null && texCoords.m_componentCount < 2 || texCoords.m_componentCount > 3)
@@ -129,6 +131,7 @@ public class VertexBuffer extends Object3D
 
 	public void setNormals(VertexArray normals)
 	{
+		setDirty();
 		if (normals != null && normals.m_componentCount != 3)
 			throw new IllegalArgumentException("VertexBuffer: normals.numComponents != 3");
 		if (normals != null && normals.m_vertexCount != getVertexCount() && getVertexCount() > 0)
@@ -144,6 +147,7 @@ public class VertexBuffer extends Object3D
 
 	public void setColors(VertexArray colors)
 	{
+		setDirty();
 		if (colors != null && colors.m_componentCount != 1)
 			throw new IllegalArgumentException("VertexBuffer: colors.numComponents != 1");
 		if (colors != null && (colors.m_componentCount < 3 || colors.m_componentCount > 4))
@@ -161,6 +165,7 @@ public class VertexBuffer extends Object3D
 
 	public void setDefaultColor(int ARGB)
 	{
+		setDirty();
 		m_defaultColor = ARGB;
 	}
 
@@ -293,7 +298,7 @@ public class VertexBuffer extends Object3D
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os,ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os,ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -354,7 +359,7 @@ public class VertexBuffer extends Object3D
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		if (m_positions != null) m_positions.buildReferenceTable(table);
 		if (m_normals != null) m_normals.buildReferenceTable(table);
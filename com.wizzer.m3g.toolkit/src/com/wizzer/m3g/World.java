@@ -57,6 +57,7 @@ public class World extends Group
 	 */
 	public void setBackground(Background background)
 	{
+		setDirty();
 		m_background = background;
 	}
 
@@ -83,6 +84,7 @@ public class World extends Group
 	 */
 	public void setActiveCamera(Camera camera)
 	{
+		setDirty();
 		if (camera == null)
 			throw new NullPointerException("World: camera is null");
 		
@@ -167,7 +169,7 @@ public class World extends Group
 	 * @throws IOException This exception is thrown if an error occurs
 	 * writing the data.
 	 */
-	protected void marshall(M3GOutputStream os, ArrayList table) throws IOException
+	protected void marshall(M3GOutputStream os, ReferenceTable table) throws IOException
 	{
 		super.marshall(os,table);
 
@@ -192,7 +194,7 @@ public class World extends Group
 	 * 
 	 * @param table The reference table cache.
 	 */
-	protected void buildReferenceTable(ArrayList table)
+	protected void buildReferenceTable(ReferenceTable table)
 	{
 		if (m_activeCamera == null)
 			throw new NullPointerException("World:activeCamera is null");
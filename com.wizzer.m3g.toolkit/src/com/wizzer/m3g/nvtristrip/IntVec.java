@@ -59,7 +59,6 @@ class IntVec
 
 	public void clear()
 	{
-		Arrays.fill(m_data,0);
 		m_size = 0;
 	}
 
@@ -23,6 +23,22 @@
 // Declare package.
 package com.wizzer.m3g.nvtristrip;
 
+// Import standard Java classes.
+import java.util.*;
+
+/**
+ * The stripifier proper.
+ * <p>
+ * Faces, edges and strips are held in primitive arrays rather than one
+ * object each. A face is identified by its index in the face arrays; the
+ * fake degenerate faces (v0, v1, v0) inserted when a strip swaps direction
+ * are identified by negative values, <code>~k</code>, where <i>k</i> indexes
+ * their two vertices. Edges are found with an open-addressed hash on their
+ * unordered vertex pair, and the edges around each vertex with a compressed
+ * (CSR) index listing them most recently created first, which is the order
+ * the linked edge lists of the original implementation were walked in.
+ * </p>
+ */
 class NvStripifier
 {
 	public static final int CACHE_INEFFICIENCY  = 6;
@@ -33,6 +49,94 @@ class NvStripifier
 	protected float m_meshJump;
 	protected boolean m_firstTimeResetPoint;
 
+	// The vertices of each face, three per face.
+	private int m_faceVertices[];
+	// The edges 0-1, 1-2 and 2-0 of each face.
+	private int m_faceEdges[];
+	// The committed strip of each face, or -1.
+	private int m_faceStripIds[];
+	// The strip of each face in the experiment that last marked it.
+	private int m_faceTestStripIds[];
+	// The experiment that last marked each face, or -1.
+	private int m_faceExperimentIds[];
+	// The number of faces.
+	private int m_numFaces;
+
+	// The vertices of each edge, in the order it was created with.
+	private int m_edgeVertices[];
+	// The two faces of each edge, or -1.
+	private int m_edgeFaces[];
+	// The number of edges.
+	private int m_numEdges;
+	// The open-addressed hash of the edges; an entry is an edge index plus one.
+	private int m_edgeTable[];
+	// The start of the edges around each vertex in m_vertexEdges.
+	private int m_vertexEdgeStarts[];
+	// The edges around each vertex, most recently created first.
+	private int m_vertexEdges[];
+
+	// The vertices of the fake faces of the committed strips, two per face.
+	private IntVec m_fakeVertices;
+	// The vertices of the fake faces of the current experiments.
+	private IntVec m_testFakeVertices;
+	// The strips of the current experiments.
+	private StripList m_experimentStrips;
+	// The faces of the strip being built forward and backward.
+	private IntVec m_forwardFaces;
+	private IntVec m_backwardFaces;
+	// The build each vertex of the strip being built was last seen in.
+	private int m_vertexStamps[];
+	// The current build.
+	private int m_stamp;
+	// The number of degenerates inserted in the strip last built.
+	private int m_numDegenerates;
+	// The start of the strip last found by findTraversal().
+	private int m_traversalEdge;
+	private boolean m_traversalToV1;
+
+	// A list of strips, each a run of face identifiers.
+	private static class StripList
+	{
+		// The faces of all the strips.
+		IntVec m_faces = new IntVec();
+		// The end of each strip in m_faces.
+		IntVec m_ends = new IntVec();
+		// The ID of each strip.
+		IntVec m_ids = new IntVec();
+		// The number of degenerates in each strip.
+		IntVec m_numDegenerates = new IntVec();
+
+		int size()
+		{
+			return m_ends.size();
+		}
+
+		int start(int strip)
+		{
+			return (strip == 0 ? 0 : m_ends.get(strip - 1));
+		}
+
+		int length(int strip)
+		{
+			return m_ends.get(strip) - start(strip);
+		}
+
+		void endStrip(int id, int numDegenerates)
+		{
+			m_ends.add(m_faces.size());
+			m_ids.add(id);
+			m_numDegenerates.add(numDegenerates);
+		}
+
+		void clear()
+		{
+			m_faces.clear();
+			m_ends.clear();
+			m_ids.clear();
+			m_numDegenerates.clear();
+		}
+	}
+
 	public NvStripifier()
 	{
 		m_indices = new IntVec();
@@ -45,11 +149,15 @@ class NvStripifier
 	 * @param in_cacheSize The target cache size.
 	 * @param in_minStripLength The minimal strip length.
 	 * @param maxIndex The maximum index to process.
-	 * @param outStrips The structure to place the strips in.
-	 * @param outFaceList The structure to place the faces in.
+	 * @param outStripFaces The structure to place the vertices of the faces
+	 * of the strips in, three per face.
+	 * @param outStripLengths The structure to place the number of faces of
+	 * each strip in.
+	 * @param outFaceList The structure to place the vertices of the faces
+	 * left out of the strips in, three per face.
 	 */
 	public void stripify(IntVec in_indices, int in_cacheSize, int in_minStripLength, 
-		int maxIndex, NvStripInfoVec outStrips, NvFaceInfoVec outFaceList)
+		int maxIndex, IntVec outStripFaces, IntVec outStripLengths, IntVec outFaceList)
 	{
 		m_meshJump = 0.0f;
 		m_firstTimeResetPoint = true; // Used in FindGoodResetPoint()
@@ -60,128 +168,144 @@ class NvStripifier
 		m_minStripLength = in_minStripLength;  // This is the strip size threshold below which we dump the strip into a list
 		m_indices = in_indices;
 		// Build the stripification info.
-		NvFaceInfoVec allFaceInfos = new NvFaceInfoVec();
-		NvEdgeInfoVec allEdgeInfos = new NvEdgeInfoVec();
-		buildStripifyInfo(allFaceInfos, allEdgeInfos, maxIndex);
-		NvStripInfoVec allStrips = new NvStripInfoVec();
+		buildStripifyInfo(maxIndex);
+		m_fakeVertices = new IntVec();
+		m_testFakeVertices = new IntVec();
+		m_experimentStrips = new StripList();
+		m_forwardFaces = new IntVec();
+		m_backwardFaces = new IntVec();
+		m_vertexStamps = new int[maxIndex + 1];
+		m_stamp = 0;
+		StripList allStrips = new StripList();
 		// stripify
-		findAllStrips(allStrips, allFaceInfos, allEdgeInfos, numSamples);
+		findAllStrips(allStrips, numSamples);
 		// Split up the strips into cache friendly pieces,  optimize them,
 		// then dump these into outStrips.
-		splitUpStripsAndOptimize(allStrips, outStrips, allEdgeInfos, outFaceList);
+		splitUpStripsAndOptimize(allStrips, outStripFaces, outStripLengths, outFaceList, maxIndex);
 	}
 
 	/**
 	 * Generates actual strips from the list-in-strip-order.
+	 * 
+	 * @param stripFaces The vertices of the faces of the strips, three per face.
+	 * @param stripLengths The number of faces of each strip.
 	 */ 
-	public int createStrips(NvStripInfoVec allStrips, IntVec stripIndices, boolean stitchStrips,
+	public int createStrips(IntVec stripFaces, IntVec stripLengths, IntVec stripIndices, boolean stitchStrips,
 		boolean restart,int restartVal)
 	{
 		int numSeparateStrips = 0;
-		NvFaceInfo tLastFace = new NvFaceInfo(0,0,0);
-		int nStripCount = allStrips.size();
+		int last0 = 0, last1 = 0, last2 = 0;
+		int nStripCount = stripLengths.size();
 		assert(nStripCount > 0);
 		// We infer the cw/ccw ordering depending on the number of indices.
 		// This is screwed up by the fact that we insert -1s to denote changing strips.
 		// this is to account for that
 		int accountForNegatives = 0;
+		int f = 0;
 		for (int i = 0; i < nStripCount; i++)
 		{
-			NvStripInfo strip = allStrips.get(i);
-			int nStripFaceCount = strip.m_faces.size();
+			int nStripFaceCount = stripLengths.get(i);
 			assert(nStripFaceCount > 0);
+			int f0 = stripFaces.get(f), f1 = stripFaces.get(f + 1), f2 = stripFaces.get(f + 2);
 			// Handle the first face in the strip.
 			{
-				NvFaceInfo tFirstFace = new NvFaceInfo(strip.m_faces.get(0).m_v0, strip.m_faces.get(0).m_v1, strip.m_faces.get(0).m_v2);
+				int first0 = f0, first1 = f1, first2 = f2;
 				// If there is a second face,reorder vertices such that the
 				// unique vertex is first.
 				if (nStripFaceCount > 1)
 				{
-					int nUnique = NvStripifier.getUniqueVertexInB(strip.m_faces.get(1), tFirstFace);
-					if (nUnique == tFirstFace.m_v1)
+					int s0 = stripFaces.get(f + 3), s1 = stripFaces.get(f + 4), s2 = stripFaces.get(f + 5);
+					int nUnique = getUniqueVertexInB(s0, s1, s2, first0, first1, first2);
+					if (nUnique == first1)
 					{
-						int temp = tFirstFace.m_v0;
-						tFirstFace.m_v0 = tFirstFace.m_v1;
-						tFirstFace.m_v1 = temp;
+						int temp = first0;
+						first0 = first1;
+						first1 = temp;
 					}
-					else if (nUnique == tFirstFace.m_v2)
+					else if (nUnique == first2)
 					{
-						int temp = tFirstFace.m_v0;
-						tFirstFace.m_v0 = tFirstFace.m_v2;
-						tFirstFace.m_v2 = temp;
+						int temp = first0;
+						first0 = first2;
+						first2 = temp;
 					}
 					// If there is a third face,reorder vertices such that the
 					// shared vertex is last.
 					if (nStripFaceCount > 2)
 					{
-						if (isDegenerate(strip.m_faces.get(1)))
+						if (isDegenerate(s0, s1, s2))
 						{
-							int pivot = strip.m_faces.get(1).m_v1;
-							if (tFirstFace.m_v1 == pivot)
+							int pivot = s1;
+							if (first1 == pivot)
 							{
-								int temp = tFirstFace.m_v1;
-								tFirstFace.m_v1 = tFirstFace.m_v2;
-								tFirstFace.m_v2 = temp;
+								int temp = first1;
+								first1 = first2;
+								first2 = temp;
 							}
 						}
 						else
 						{
 							int nShared[] = new int[2];
-							getSharedVertices(strip.m_faces.get(2), tFirstFace,nShared);
-							if ((nShared[0] == tFirstFace.m_v1) && (nShared[1] == -1))
+							getSharedVertices(stripFaces.get(f + 6), stripFaces.get(f + 7), stripFaces.get(f + 8),
+								first0, first1, first2, nShared);
+							if ((nShared[0] == first1) && (nShared[1] == -1))
 							{
-								int temp = tFirstFace.m_v1;
-								tFirstFace.m_v1 = tFirstFace.m_v2;
-								tFirstFace.m_v2 = temp;
+								int temp = first1;
+								first1 = first2;
+								first2 = temp;
 							}
 						}
 					}
 				}
 				if ((i == 0) || ! stitchStrips || restart)
 				{
-					if (! isCW(strip.m_faces.get(0), tFirstFace.m_v0, tFirstFace.m_v1))
-						stripIndices.add(tFirstFace.m_v0);
+					if (! isCW(f0, f1, f2, first0, first1))
+						stripIndices.add(first0);
 				}
 				else
 				{
 					// Double tap the first in the new strip.
-					stripIndices.add(tFirstFace.m_v0);
+					stripIndices.add(first0);
 					// Check CW/CCW ordering.
-					if (nextIsCW(stripIndices.size() - accountForNegatives) != isCW(strip.m_faces.get(0), tFirstFace.m_v0, tFirstFace.m_v1))
+					if (nextIsCW(stripIndices.size() - accountForNegatives) != isCW(f0, f1, f2, first0, first1))
 					{
-						stripIndices.add(tFirstFace.m_v0);
+						stripIndices.add(first0);
 					}
 				}
-				stripIndices.add(tFirstFace.m_v0);
-				stripIndices.add(tFirstFace.m_v1);
-				stripIndices.add(tFirstFace.m_v2);
+				stripIndices.add(first0);
+				stripIndices.add(first1);
+				stripIndices.add(first2);
 				// Update last face info.
-				tLastFace.set(tFirstFace);
+				last0 = first0;
+				last1 = first1;
+				last2 = first2;
 			}
 			for (int j = 1; j < nStripFaceCount; j++)
 			{
-				int nUnique = getUniqueVertexInB(tLastFace, strip.m_faces.get(j));
+				int v0 = stripFaces.get(f + 3 * j);
+				int v1 = stripFaces.get(f + 3 * j + 1);
+				int v2 = stripFaces.get(f + 3 * j + 2);
+				int nUnique = getUniqueVertexInB(last0, last1, last2, v0, v1, v2);
 				if (nUnique != -1)
 				{
 					stripIndices.add(nUnique);
 					// Update last face info.
-					tLastFace.m_v0 = tLastFace.m_v1;
-					tLastFace.m_v1 = tLastFace.m_v2;
-					tLastFace.m_v2 = nUnique;
+					last0 = last1;
+					last1 = last2;
+					last2 = nUnique;
 				}
 				else
 				{
 					// We've hit a degenerate.
-					stripIndices.add(strip.m_faces.get(j).m_v2);
-					tLastFace.m_v0 = strip.m_faces.get(j).m_v0; // tLastFace.v1;
-					tLastFace.m_v1 = strip.m_faces.get(j).m_v1; // tLastFace.v2;
-					tLastFace.m_v2 = strip.m_faces.get(j).m_v2; // tLastFace.v1;
+					stripIndices.add(v2);
+					last0 = v0;
+					last1 = v1;
+					last2 = v2;
 				}
 			}
 			// Double tap between strips.
 			if (stitchStrips && ! restart)
 			{
-				if (i != nStripCount-1) stripIndices.add(tLastFace.m_v2);
+				if (i != nStripCount-1) stripIndices.add(last2);
 			}
 			else if (restart)
 			{
@@ -195,31 +319,29 @@ class NvStripifier
 				numSeparateStrips++;
 			}
 			// Update last face info.
-			tLastFace.m_v0 = tLastFace.m_v1;
-			tLastFace.m_v1 = tLastFace.m_v2;
-			//tLastFace.v2 = tLastFace.v2;
+			last0 = last1;
+			last1 = last2;
+			f += 3 * nStripFaceCount;
 		}
 		if (stitchStrips || restart) numSeparateStrips=1;
 		return numSeparateStrips;
 	}
 
-	protected boolean isMoneyFace(NvFaceInfo face)
-	{
-		return (faceContainsIndex(face, 800) && faceContainsIndex(face, 812) && 
-				faceContainsIndex(face, 731));
-	}
-
-	protected boolean faceContainsIndex(NvFaceInfo face, int index)
+	// Get a vertex of the specified face.
+	private int vertex(int face, int i)
 	{
-		return ((face.m_v0 == index) || (face.m_v1 == index) || (face.m_v2 == index));
+		if (face >= 0)
+			return m_faceVertices[3 * face + i];
+		// A fake face (v0, v1, v0).
+		return m_fakeVertices.get(2 * ~face + (i & 1));
 	}
 
 	// Returns true if the face is ordered in CW fashion.
-	protected boolean isCW(NvFaceInfo faceInfo, int v0, int v1)
+	protected static boolean isCW(int f0, int f1, int f2, int v0, int v1)
 	{
-		if (faceInfo.m_v0 == v0) return (faceInfo.m_v1 == v1);
-		else if (faceInfo.m_v1 == v0) return (faceInfo.m_v2 == v1);
-		else return (faceInfo.m_v0 == v1);
+		if (f0 == v0) return (f1 == v1);
+		else if (f1 == v0) return (f2 == v1);
+		else return (f0 == v1);
 	}
 
 	// Returns true if the next face should be ordered in CW fashion.
@@ -231,52 +353,46 @@ class NvStripifier
 	// A good reset point is one near other committed areas so that
 	// we know that when we've made the longest strips its because
 	// we're stripifying in the same general orientation.
-	protected NvFaceInfo findGoodResetPoint(NvFaceInfoVec faceInfos, NvEdgeInfoVec edgeInfos)
+	protected int findGoodResetPoint()
 	{
 		// We hop into different areas of the mesh to try to get
 		// other large open spans done.  Areas of small strips can
 		// just be left to triangle lists added at the end.
-		NvFaceInfo result = null;
-		if (result == null)
+		int result = -1;
+		int numFaces = m_numFaces;
+		int startPoint;
+		if (m_firstTimeResetPoint)
 		{
-			int numFaces = faceInfos.size();
-			int startPoint;
-			if (m_firstTimeResetPoint)
-			{
-				// First time, find a face with few neighbors (look for an edge of the mesh).
-				startPoint = findStartPoint(faceInfos, edgeInfos);
-				m_firstTimeResetPoint = false;
-			}
-			else startPoint = (int)(((float)numFaces - 1) * m_meshJump);
-			if (startPoint == -1)
+			// First time, find a face with few neighbors (look for an edge of the mesh).
+			startPoint = findStartPoint();
+			m_firstTimeResetPoint = false;
+		}
+		else startPoint = (int)(((float)numFaces - 1) * m_meshJump);
+		if (startPoint == -1)
+		{
+			startPoint = (int)(((float)numFaces - 1) * m_meshJump);
+		}
+		int i = startPoint;
+		do
+		{
+			// If this guy isn't visited, try him.
+			if (m_faceStripIds[i] < 0)
 			{
-				startPoint = (int)(((float)numFaces - 1) * m_meshJump);
-				//meshJump += 0.1f;
-				//if (meshJump > 1.0f)
-				//	meshJump = .05f;
+				result = i;
+				break;
 			}
-			int i = startPoint;
-			do
-			{
-				// If this guy isn't visited, try him.
-				if (faceInfos.get(i).m_stripId < 0)
-				{
-					result = faceInfos.get(i);
-					break;
-				}
-				// Update the index and clamp to 0-(numFaces-1).
-				if (++i >= numFaces) i = 0;
-			} while (i != startPoint);
-			// Update the meshJump.
-			m_meshJump += 0.1f;
-			if (m_meshJump > 1.0f) m_meshJump = .05f;
-		}
+			// Update the index and clamp to 0-(numFaces-1).
+			if (++i >= numFaces) i = 0;
+		} while (i != startPoint);
+		// Update the meshJump.
+		m_meshJump += 0.1f;
+		if (m_meshJump > 1.0f) m_meshJump = .05f;
 		// Return the best face we found.
 		return result;
 	}
 
 	/**
-	 * Does the stripification and puts output strips into vector <i>allStrips</i>
+	 * Does the stripification and puts output strips into <i>allStrips</i>
 	 *
 	 * Works by running a number of experiments in different areas of the mesh, and
 	 * accepting the one which results in the longest strips.  It then accepts this, and moves
@@ -284,69 +400,59 @@ class NvStripifier
 	 * large open spans of strips get generated.
 	 * 
 	 * @param allStrips
-	 * @param allFaceInfos
-	 * @param allEdgeInfos
 	 * @param numSamples
 	 */
-	protected void findAllStrips(NvStripInfoVec allStrips,NvFaceInfoVec allFaceInfos,NvEdgeInfoVec allEdgeInfos,int numSamples)
+	protected void findAllStrips(StripList allStrips, int numSamples)
 	{
 		// The experiments.
 		int experimentId = 0;
 		int stripId = 0;
 		boolean done = false;
-		int loopCtr = 0;
+		int numExperiments = numSamples * 6;
+		int startFaces[] = new int[numExperiments];
+		int startEdges[] = new int[numExperiments];
+		boolean startToV1[] = new boolean[numExperiments];
+		int startStripIds[] = new int[numExperiments];
+		int startExperimentIds[] = new int[numExperiments];
+		int experimentEnds[] = new int[numExperiments];
+		int resetPoints[] = new int[numSamples];
 		while (! done)
 		{
-			loopCtr++;
 			//
 			// PHASE 1: Set up numSamples * numEdges experiments
 			//
-			NvStripInfoVec experiments[] = new NvStripInfoVec[numSamples*6];
-			for (int i = 0; i < experiments.length; i++)
-				experiments[i] = new NvStripInfoVec();
 			int experimentIndex = 0;
-			NvFaceInfoVec resetPoints = new NvFaceInfoVec();
+			int numResetPoints = 0;
 			for (int i = 0; i < numSamples; i++)
 			{
 				// Try to find another good reset point.
 				// If there are none to be found, we are done.
-				NvFaceInfo nextFace = findGoodResetPoint(allFaceInfos,allEdgeInfos);
-				if (nextFace == null)
+				int nextFace = findGoodResetPoint();
+				if (nextFace == -1)
 				{
 					done=true;
 					break;
 				}
 				// If we have already evaluated starting at this face in this slew
 				// of experiments, then skip going any further.
-				else if (resetPoints.contains(nextFace)) continue;
+				boolean evaluated = false;
+				for (int j = 0; j < numResetPoints; j++)
+					if (resetPoints[j] == nextFace) evaluated = true;
+				if (evaluated) continue;
 				// Trying it now...
-				resetPoints.add(nextFace);
+				resetPoints[numResetPoints++] = nextFace;
 				// Otherwise, we shall now try experiments for starting on the 01,12,and 20 edges.
-				assert(nextFace.m_stripId < 0);
-				// Build the strip off of this face's 0-1 edge.
-				NvEdgeInfo edge01 = findEdgeInfo(allEdgeInfos, nextFace.m_v0, nextFace.m_v1);
-				NvStripInfo strip01 = new NvStripInfo(new NvStripStartInfo(nextFace, edge01, true), stripId++, experimentId++);
-				experiments[experimentIndex++].add(strip01);
-				// Build the strip off of this face's 1-0 edge.
-				NvEdgeInfo edge10 = findEdgeInfo(allEdgeInfos, nextFace.m_v0, nextFace.m_v1);
-				NvStripInfo strip10 = new NvStripInfo(new NvStripStartInfo(nextFace, edge10, false), stripId++, experimentId++);
-				experiments[experimentIndex++].add(strip10);
-				// Build the strip off of this face's 1-2 edge.
-				NvEdgeInfo edge12 = findEdgeInfo(allEdgeInfos, nextFace.m_v1, nextFace.m_v2);
-				NvStripInfo strip12 = new NvStripInfo(new NvStripStartInfo(nextFace,edge12, true), stripId++, experimentId++);
-				experiments[experimentIndex++].add(strip12);
-				// Build the strip off of this face's 2-1 edge.
-				NvEdgeInfo edge21 = findEdgeInfo(allEdgeInfos, nextFace.m_v1, nextFace.m_v2);
-				NvStripInfo strip21 = new NvStripInfo(new NvStripStartInfo(nextFace, edge21, false), stripId++, experimentId++);
-				experiments[experimentIndex++].add(strip21);
-				// Build the strip off of this face's 2-0 edge.
-				NvEdgeInfo edge20 = findEdgeInfo(allEdgeInfos,nextFace.m_v2,nextFace.m_v0);
-				NvStripInfo strip20 = new NvStripInfo(new NvStripStartInfo(nextFace, edge20, true),stripId++,experimentId++);
-				experiments[experimentIndex++].add(strip20);
-				// Build the strip off of this face's 0-2 edge.
-				NvEdgeInfo edge02 = findEdgeInfo(allEdgeInfos, nextFace.m_v2, nextFace.m_v0);
-				NvStripInfo strip02 = new NvStripInfo(new NvStripStartInfo(nextFace, edge02, false),  stripId++,experimentId++);
-				experiments[experimentIndex++].add(strip02);
+				assert(m_faceStripIds[nextFace] < 0);
+				// Build the strips off of this face's 0-1, 1-0, 1-2, 2-1, 2-0 and 0-2 edges.
+				for (int j = 0; j < 6; j++)
+				{
+					startFaces[experimentIndex] = nextFace;
+					startEdges[experimentIndex] = m_faceEdges[3 * nextFace + (j >> 1)];
+					startToV1[experimentIndex] = ((j & 1) == 0);
+					startStripIds[experimentIndex] = stripId++;
+					startExperimentIds[experimentIndex] = experimentId++;
+					experimentIndex++;
+				}
 			}
 			
 			//
@@ -354,24 +460,26 @@ class NvStripifier
 			// and really build each of the strips and strips that follow to see how
 			// far we get
 			//
-			int numExperiments = experimentIndex;
-			for (int i = 0; i < numExperiments; i++)
+			m_experimentStrips.clear();
+			m_testFakeVertices.clear();
+			for (int i = 0; i < experimentIndex; i++)
 			{
-				// Get the strip set and
-				// build the first strip of the list.
-				experiments[i].get(0).build(allEdgeInfos,allFaceInfos);
-				int experimentId2 = experiments[i].get(0).m_experimentId;
-				NvStripInfo stripIter = experiments[i].get(0);
-				NvStripStartInfo startInfo = new NvStripStartInfo(null, null, false);
-				while (findTraversal(allFaceInfos, allEdgeInfos, stripIter, startInfo))
+				// Build the first strip of the list.
+				int experimentId2 = startExperimentIds[i];
+				int stripEdge = startEdges[i];
+				boolean stripToV1 = startToV1[i];
+				int stripId2 = startStripIds[i];
+				build(m_experimentStrips, startFaces[i], stripEdge, stripToV1, stripId2, experimentId2);
+				int nextFace;
+				while ((nextFace = findTraversal(stripEdge, stripToV1, stripId2, experimentId2)) != -1)
 				{
-					// Create the new strip info.
-					stripIter = new NvStripInfo(startInfo, stripId++, experimentId2);
 					// Build the next strip.
-					stripIter.build(allEdgeInfos,allFaceInfos);
-					// Add it to the list.
-					experiments[i].add(stripIter);
+					stripEdge = m_traversalEdge;
+					stripToV1 = m_traversalToV1;
+					stripId2 = stripId++;
+					build(m_experimentStrips, nextFace, stripEdge, stripToV1, stripId2, experimentId2);
 				}
+				experimentEnds[i] = m_experimentStrips.size();
 			}
 			
 			//
@@ -379,16 +487,14 @@ class NvStripifier
 			//
 			int bestIndex = 0;
 			double bestValue = 0;
-			for (int i = 0; i < numExperiments; i++)
+			for (int i = 0; i < experimentIndex; i++)
 			{
 				float avgStripSizeWeight = 1.0f;
-				float numTrisWeight = 0.0f;
 				float numStripsWeight = 0.0f;
-				float avgStripSize = avgStripSize(experiments[i]);
-				float numStrips=(float)experiments[i].size();
+				int first = (i == 0 ? 0 : experimentEnds[i - 1]);
+				float avgStripSize = avgStripSize(m_experimentStrips, first, experimentEnds[i]);
+				float numStrips=(float)(experimentEnds[i] - first);
 				float value = avgStripSize*avgStripSizeWeight+(numStrips*numStripsWeight);
-				//float value = 1.f / numStrips;
-				//float value = numStrips * avgStripSize;
 				if (value > bestValue)
 				{
 					bestValue = value;
@@ -399,50 +505,228 @@ class NvStripifier
 			//
 			// Phase 4: commit the best experiment of the bunch.
 			//
-			commitStrips(allStrips, experiments[bestIndex]);
+			if (experimentIndex > 0)
+				commitStrips(allStrips, bestIndex == 0 ? 0 : experimentEnds[bestIndex - 1], experimentEnds[bestIndex]);
+		}
+	}
+
+	// Returns true if the face is in the specified strip.
+	private boolean isInStrip(int face, int stripId, int experimentId)
+	{
+		if (face < 0) return false;
+		return (experimentId >= 0 ? m_faceTestStripIds[face] == stripId : m_faceStripIds[face] == stripId);
+	}
+
+	// If either the face has a real strip index because it is
+	// already assigned to a committed strip OR it is assigned in an
+	// experiment and the experiment index is the one we are building
+	// for, then it is marked and unavailable.
+	private boolean isMarked(int face, int experimentId)
+	{
+		return (m_faceStripIds[face] >= 0) || (experimentId >= 0 && m_faceExperimentIds[face] == experimentId);
+	}
+
+	// Marks the face with the strip ID.
+	private void markTriangle(int face, int stripId, int experimentId)
+	{
+		if (experimentId >= 0)
+		{
+			m_faceExperimentIds[face] = experimentId;
+			m_faceTestStripIds[face] = stripId;
+		}
+		else
+		{
+			m_faceExperimentIds[face] = -1;
+			m_faceStripIds[face] = stripId;
+		}
+	}
+
+	// Add the vertices of the face to those of the strip being built.
+	private void stamp(int face)
+	{
+		m_vertexStamps[vertexOf(face, 0)] = m_stamp;
+		m_vertexStamps[vertexOf(face, 1)] = m_stamp;
+		m_vertexStamps[vertexOf(face, 2)] = m_stamp;
+	}
+
+	// Get a vertex of a real face, or of a fake face of the experiments.
+	private int vertexOf(int face, int i)
+	{
+		if (face >= 0)
+			return m_faceVertices[3 * face + i];
+		return m_testFakeVertices.get(2 * ~face + (i & 1));
+	}
+
+	// Add a fake face (v0, v1, v0) to the experiments.
+	private int addFakeFace(int v0, int v1)
+	{
+		int face = ~(m_testFakeVertices.size() >> 1);
+		m_testFakeVertices.add(v0);
+		m_testFakeVertices.add(v1);
+		return face;
+	}
+
+	// Returns true if the face is "unique", i.e. has a vertex which
+	// isn't in the strip being built.
+	private boolean unique(int face)
+	{
+		return (m_vertexStamps[m_faceVertices[3 * face]] != m_stamp) ||
+			(m_vertexStamps[m_faceVertices[3 * face + 1]] != m_stamp) ||
+			(m_vertexStamps[m_faceVertices[3 * face + 2]] != m_stamp);
+	}
+
+	// Builds a strip forward as far as we can go, then builds backwards, and
+	// joins the two lists, adding it to the strips.
+	private void build(StripList strips, int startFace, int startEdge, boolean toV1, int stripId, int experimentId)
+	{
+		m_stamp++;
+		m_numDegenerates = 0;
+		// build forward... start with the initial face.
+		IntVec forwardFaces = m_forwardFaces, backwardFaces = m_backwardFaces;
+		forwardFaces.clear();
+		backwardFaces.clear();
+		forwardFaces.add(startFace);
+		markTriangle(startFace, stripId, experimentId);
+		stamp(startFace);
+		int v0 = (toV1 ? m_edgeVertices[2 * startEdge] : m_edgeVertices[2 * startEdge + 1]);
+		int v1 = (toV1 ? m_edgeVertices[2 * startEdge + 1] : m_edgeVertices[2 * startEdge]);
+		// The last two indices of the strip, which the next index is found from.
+		int index0 = v0, index1 = v1;
+		int v2 = getNextIndex(index0, index1, startFace);
+		index0 = index1;
+		index1 = v2;
+		// build the forward list
+		int nv0 = v1;
+		int nv1 = v2;
+		int nextFace = findOtherFace(nv0, nv1, startFace);
+		while (nextFace != -1 && ! isMarked(nextFace, experimentId))
+		{
+			// Check to see if this next face is going to cause us to die soon.
+			int testnv0 = nv1;
+			int testnv1 = getNextIndex(index0, index1, nextFace);
+			int nextNextFace = findOtherFace(testnv0, testnv1, nextFace);
+			if ((nextNextFace == -1) || (isMarked(nextNextFace, experimentId)))
+			{
+				//Uh, oh, we're following a dead end, try swapping.
+				int testNextFace = findOtherFace(nv0, testnv1, nextFace);
+				if ((testNextFace != -1) && ! isMarked(testNextFace, experimentId))
+				{
+					// We only swap if it buys us something
+					// Add a "fake" degenerate face.
+					int tempFace = addFakeFace(nv0, nv1);
+					forwardFaces.add(tempFace);
+					stamp(tempFace);
+					index0 = index1;
+					index1 = nv0;
+					testnv0 = nv0;
+					++m_numDegenerates;
+				}
+			}
+			// Add this to the strip.
+			forwardFaces.add(nextFace);
+			markTriangle(nextFace, stripId, experimentId);
+			stamp(nextFace);
+			// Add the index.
+			index0 = index1;
+			index1 = testnv1;
+			// and get the next face.
+			nv0 = testnv0;
+			nv1 = testnv1;
+			nextFace = findOtherFace(nv0, nv1, nextFace);
 		}
+		// Reset the indices for building the strip backwards and do so.
+		index0 = v1;
+		index1 = v0;
+		nv0 = v1;
+		nv1 = v0;
+		nextFace = findOtherFace(nv0, nv1, startFace);
+		while (nextFace != -1 && ! isMarked(nextFace, experimentId))
+		{
+			// This tests to see if a face is "unique", meaning that its vertices aren't already in the list
+			// so, strips which "wrap-around" are not allowed.
+			if (! unique(nextFace)) break;
+			// Check to see if this next face is going to cause us to die soon.
+			int testnv0 = nv1;
+			int testnv1 = getNextIndex(index0, index1, nextFace);
+			int nextNextFace = findOtherFace(testnv0, testnv1, nextFace);
+			if ((nextNextFace == -1) || (isMarked(nextNextFace, experimentId)))
+			{
+				// Uh, oh, we're following a dead end, try swapping.
+				int testNextFace = findOtherFace(nv0, testnv1, nextFace);
+				if ((testNextFace != -1) && ! isMarked(testNextFace, experimentId))
+				{
+					// We only swap if it buys us something
+					// Add a "fake" degenerate face
+					backwardFaces.add(addFakeFace(nv0, nv1));
+					index0 = index1;
+					index1 = nv0;
+					testnv0 = nv0;
+					++m_numDegenerates;
+				}
+			}
+			// Add this to the strip.
+			backwardFaces.add(nextFace);
+			// This is just so Unique() will work.
+			stamp(nextFace);
+			markTriangle(nextFace, stripId, experimentId);
+			// Add the index.
+			index0 = index1;
+			index1 = testnv1;
+			// and get the next face.
+			nv0 = testnv0;
+			nv1 = testnv1;
+			nextFace = findOtherFace(nv0, nv1, nextFace);
+		}
+		// Combine the forward and backwards stripification lists.
+		for (int i = backwardFaces.size() - 1; i >= 0; i--)
+			strips.m_faces.add(backwardFaces.get(i));
+		for (int i = 0; i < forwardFaces.size(); i++)
+			strips.m_faces.add(forwardFaces.get(i));
+		strips.endStrip(stripId, m_numDegenerates);
 	}
 
 	/**
-	 * Splits the input vector of strips (allStrips) into smaller, cache friendly pieces, then
+	 * Splits the input strips (allStrips) into smaller, cache friendly pieces, then
 	 * reorders these pieces to maximize cache hits.
-	 * The final strips are output through outStrips
+	 * The final strips are output through outStripFaces and outStripLengths.
 	 * 
 	 * @param allStrips
-	 * @param outStrips
-	 * @param edgeInfos
+	 * @param outStripFaces
+	 * @param outStripLengths
 	 * @param outFaceList
+	 * @param maxIndex
 	 */
-	protected void splitUpStripsAndOptimize(NvStripInfoVec allStrips, NvStripInfoVec outStrips, 
-		NvEdgeInfoVec edgeInfos, NvFaceInfoVec outFaceList)
+	protected void splitUpStripsAndOptimize(StripList allStrips, IntVec outStripFaces, IntVec outStripLengths,
+		IntVec outFaceList, int maxIndex)
 	{
 		int threshold = m_cacheSize;
-		NvStripInfoVec tempStrips = new NvStripInfoVec();
+		StripList tempStrips = new StripList();
+		IntVec tempFaces = tempStrips.m_faces;
 		int j;
 		// Split up strips into threshold-sized pieces.
-		for (int i = 0; i <allStrips.size(); i++)
+		for (int i = 0; i < allStrips.size(); i++)
 		{
-			NvStripInfo currentStrip = null;
-			NvStripStartInfo startInfo = new NvStripStartInfo(null,null,false);
+			int start = allStrips.start(i);
+			int length = allStrips.length(i);
+			IntVec faces = allStrips.m_faces;
 			int actualStripSize = 0;
-			for (j = 0; j < allStrips.get(i).m_faces.size(); ++j)
+			for (j = 0; j < length; ++j)
 			{
-				if (! isDegenerate(allStrips.get(i).m_faces.get(j)))
+				if (faces.get(start + j) >= 0)
 					actualStripSize++;
 			}
-			if (actualStripSize/*allStrips[i].faces.size()*/ > threshold)
+			if (actualStripSize > threshold)
 			{
-				int numTimes = actualStripSize /*allStrips[i].faces.size()*//threshold;
-				int numLeftover = actualStripSize /*allStrips[i].faces.size()*/%threshold;
+				int numTimes = actualStripSize / threshold;
+				int numLeftover = actualStripSize % threshold;
 				int degenerateCount = 0;
 				for (j=0; j < numTimes; j++)
 				{
-					currentStrip = new NvStripInfo(startInfo, 0, -1);
 					int faceCtr = j * threshold + degenerateCount;
 					boolean firstTime = true;
 					while (faceCtr < threshold + (j * threshold) + degenerateCount)
 					{
-						if (isDegenerate(allStrips.get(i).m_faces.get(faceCtr)))
+						if (faces.get(start + faceCtr) < 0)
 						{
 							degenerateCount++;
 							// Last time or first time through, no need for a degenerate.
@@ -450,22 +734,16 @@ class NvStripifier
 								 ((j == numTimes-1) && (numLeftover < 4) && (numLeftover > 0))) &&
 								 ! firstTime)
 							{
-								currentStrip.m_faces.add(allStrips.get(i).m_faces.get(faceCtr++));
+								tempFaces.add(faces.get(start + faceCtr++));
 							}
 							else ++faceCtr;
 						}
 						else
 						{
-							currentStrip.m_faces.add(allStrips.get(i).m_faces.get(faceCtr++));
+							tempFaces.add(faces.get(start + faceCtr++));
 							firstTime = false;
 						}
 					}
-					/*
-					 for (int faceCtr = j*threshold; faceCtr < threshold+(j*threshold); faceCtr++)
-					 {
-						 currentStrip.faces.add(allStrips[i].faces[faceCtr]);
-					 }
-					 */
 					if (j == numTimes - 1) // Last time through.
 					{
 						if ((numLeftover < 4) && (numLeftover > 0)) // Way too small.
@@ -474,296 +752,419 @@ class NvStripifier
 							int ctr = 0;
 							while (ctr < numLeftover)
 							{
-								if (! isDegenerate(allStrips.get(i).m_faces.get(faceCtr)))
+								if (faces.get(start + faceCtr) >= 0)
 								{
-								    currentStrip.m_faces.add(allStrips.get(i).m_faces.get(faceCtr++));
-								    ++ctr;
+									tempFaces.add(faces.get(start + faceCtr++));
+									++ctr;
 								}
 								else
 								{
-								    currentStrip.m_faces.add(allStrips.get(i).m_faces.get(faceCtr++));
-								    ++degenerateCount;
+									tempFaces.add(faces.get(start + faceCtr++));
+									++degenerateCount;
 								}
 							}
 							numLeftover = 0;
 						}
 					}
-					tempStrips.add(currentStrip);
+					tempStrips.endStrip(0, 0);
 				}
 				int leftOff = j * threshold + degenerateCount;
 				if (numLeftover != 0)
 				{
-					currentStrip = new NvStripInfo(startInfo, 0, -1);
 					int ctr = 0;
 					boolean firstTime = true;
 					while (ctr < numLeftover)
 					{
-						if (! isDegenerate(allStrips.get(i).m_faces.get(leftOff)))
+						if (faces.get(start + leftOff) >= 0)
 						{
 							ctr++;
 							firstTime = false;
-							currentStrip.m_faces.add(allStrips.get(i).m_faces.get(leftOff++));
+							tempFaces.add(faces.get(start + leftOff++));
 						}
 						else if (! firstTime)
-							currentStrip.m_faces.add(allStrips.get(i).m_faces.get(leftOff++));
+							tempFaces.add(faces.get(start + leftOff++));
 						else leftOff++;
 					}
-					/*
-					 for(int k = 0; k < numLeftover; k++)
-					 {
-						 currentStrip.faces.add(allStrips[i].faces[leftOff++]);
-					 }
-					 */
-					tempStrips.add(currentStrip);
+					tempStrips.endStrip(0, 0);
 				}
 			}
 			else
 			{
-				// We're not just doing a tempStrips.add(allStrips[i]) because
-				// this way we can delete allStrips later to free the memory.
-				currentStrip = new NvStripInfo(startInfo,0,-1);
-				for (j = 0; j < allStrips.get(i).m_faces.size(); j++)
-					currentStrip.m_faces.add(allStrips.get(i).m_faces.get(j));
-				tempStrips.add(currentStrip);
+				for (j = 0; j < length; j++)
+					tempFaces.add(faces.get(start + j));
+				tempStrips.endStrip(0, 0);
 			}
 		}
 		// Add small strips to face list.
-		NvStripInfoVec tempStrips2 = new NvStripInfoVec();
-		removeSmallStrips(tempStrips, tempStrips2, outFaceList);
-		outStrips.clear();
-		// Screw optimization for now.
-		//	for(i = 0; i < tempStrips.size(); ++i)
-		//    outStrips.add(tempStrips[i]);
-		if (tempStrips2.size() != 0)
+		StripList tempStrips2 = new StripList();
+		removeSmallStrips(tempStrips, tempStrips2, outFaceList, maxIndex);
+		outStripFaces.clear();
+		outStripLengths.clear();
+		int numStrips = tempStrips2.size();
+		if (numStrips != 0)
 		{
 			// Optimize for the vertex cache.
-			VertexCache vcache = new VertexCache(m_cacheSize);
-			float bestNumHits = -1.0f;
-			float numHits;
-			int bestIndex = 0;
+			VertexCache vcache = new VertexCache(m_cacheSize, maxIndex);
 			int firstIndex = 0;
 			float minCost = 10000.0f;
-			for (int i = 0; i < tempStrips2.size(); i++)
+			boolean firstCW[] = new boolean[numStrips];
+			for (int i = 0; i < numStrips; i++)
 			{
 				int numNeighbors = 0;
+				int start = tempStrips2.start(i);
+				int length = tempStrips2.length(i);
 				// Find strip with least number of neighbors per face.
-				for (j = 0; j < tempStrips2.get(i).m_faces.size();j++)
+				for (j = 0; j < length; j++)
 				{
-					numNeighbors += numNeighbors(tempStrips2.get(i).m_faces.get(j),edgeInfos);
+					numNeighbors += numNeighbors(tempStrips2.m_faces.get(start + j));
 				}
-				float currCost = (float)numNeighbors / (float)tempStrips2.get(i).m_faces.size();
+				float currCost = (float)numNeighbors / (float)length;
 				if (currCost < minCost)
 				{
 					minCost = currCost;
 					firstIndex = i;
 				}
+				if (length > 0)
+					firstCW[i] = isFirstCW(tempStrips2, i);
 			}
-			updateCacheStrip(vcache,tempStrips2.get(firstIndex));
-			outStrips.add(tempStrips2.get(firstIndex));
-			tempStrips2.get(firstIndex).m_visited = true;
-			boolean wantsCW = (tempStrips2.get(firstIndex).m_faces.size() % 2 == 0);
-			// This n^2 algo is what slows down stripification so much....
-			// needs to be improved.
+			// Index the strips using each vertex, counting the vertices of
+			// each strip in the cache as they enter and leave it.
+			int hits[] = new int[numStrips];
+			int useStarts[] = new int[maxIndex + 2];
+			int uses[] = indexUses(tempStrips2, useStarts);
+			boolean visited[] = new boolean[numStrips];
+			int bestIndex = firstIndex;
+			boolean wantsCW = (tempStrips2.length(firstIndex) % 2 == 0);
 			while (true)
 			{
-				bestNumHits = -1.0f;
-				// Find best strip to add next,given the current cache.
-				for (int i = 0; i < tempStrips2.size(); i++)
+				visited[bestIndex] = true;
+				int start = tempStrips2.start(bestIndex);
+				int length = tempStrips2.length(bestIndex);
+				for (int i = 0; i < length; i++)
+				{
+					int face = tempStrips2.m_faces.get(start + i);
+					for (int k = 0; k < 3; k++)
+					{
+						int v = vertex(face, k);
+						outStripFaces.add(v);
+						cache(vcache, v, useStarts, uses, hits, null, visited);
+					}
+				}
+				outStripLengths.add(length);
+				// Find best strip to add next, given the current cache.
+				// This n^2 algo is what slows down stripification so much;
+				// the hits of each strip are counted incrementally.
+				float bestNumHits = -1.0f;
+				int nextIndex = -1;
+				for (int i = 0; i < numStrips; i++)
 				{
-					if (tempStrips2.get(i).m_visited) continue;
-					numHits = calcNumHitsStrip(vcache, tempStrips2.get(i));
+					if (visited[i]) continue;
+					float numHits = (float)hits[i] / (float)tempStrips2.length(i);
 					if (numHits > bestNumHits)
 					{
 						bestNumHits = numHits;
-						bestIndex = i;
+						nextIndex = i;
 					}
 					else if (numHits >= bestNumHits)
 					{
 						// Check previous strip to see if this one requires it to switch polarity.
-						NvStripInfo strip = tempStrips2.get(i);
-						int nStripFaceCount = strip.m_faces.size();
-						NvFaceInfo tFirstFace = new NvFaceInfo(strip.m_faces.get(0).m_v0,strip.m_faces.get(0).m_v1,strip.m_faces.get(0).m_v2);
-						// If there is a second face,reorder vertices such that the
-						// unique vertex is first.
-						if (nStripFaceCount > 1)
-						{
-							int nUnique = NvStripifier.getUniqueVertexInB(strip.m_faces.get(1), tFirstFace);
-							if (nUnique == tFirstFace.m_v1)
-							{
-								int temp = tFirstFace.m_v0;
-								tFirstFace.m_v0 = tFirstFace.m_v1;
-								tFirstFace.m_v1 = temp;
-							}
-							else if (nUnique == tFirstFace.m_v2)
-							{
-								int temp = tFirstFace.m_v0;
-								tFirstFace.m_v0 = tFirstFace.m_v2;
-								tFirstFace.m_v2 = temp;
-							}
-							// If there is a third face, reorder vertices such that the
-							// shared vertex is last.
-							if (nStripFaceCount > 2)
-							{
-								int nShared[] = new int[2];
-								getSharedVertices(strip.m_faces.get(2), tFirstFace,nShared);
-								if ((nShared[0] == tFirstFace.m_v1) && (nShared[1] == -1))
-								{
-									int temp = tFirstFace.m_v1;
-									tFirstFace.m_v1 = tFirstFace.m_v2;
-									tFirstFace.m_v2 = temp;
-								}
-							}
-						}
-						// Check CW/CCW ordering.
-						if (wantsCW == isCW(strip.m_faces.get(0), tFirstFace.m_v0, tFirstFace.m_v1))
+						if (wantsCW == firstCW[i])
 						{
 							// I like this one!
-							bestIndex = i;
+							nextIndex = i;
 						}
 					}
 				}
 				if (bestNumHits == -1.0f) break;
-				tempStrips2.get(bestIndex).m_visited = true;
-				updateCacheStrip(vcache, tempStrips2.get(bestIndex));
-				outStrips.add(tempStrips2.get(bestIndex));
-				wantsCW = ((tempStrips2.get(bestIndex).m_faces.size() % 2 == 0) ? wantsCW : ! wantsCW);
+				bestIndex = nextIndex;
+				wantsCW = ((tempStrips2.length(bestIndex) % 2 == 0) ? wantsCW : ! wantsCW);
+			}
+		}
+	}
+
+	// Determine whether the first face of the strip is ordered in CW
+	// fashion once its vertices are ordered to start the strip.
+	private boolean isFirstCW(StripList strips, int strip)
+	{
+		int start = strips.start(strip);
+		int nStripFaceCount = strips.length(strip);
+		int face0 = strips.m_faces.get(start);
+		int f0 = vertex(face0, 0), f1 = vertex(face0, 1), f2 = vertex(face0, 2);
+		int first0 = f0, first1 = f1, first2 = f2;
+		// If there is a second face,reorder vertices such that the
+		// unique vertex is first.
+		if (nStripFaceCount > 1)
+		{
+			int face1 = strips.m_faces.get(start + 1);
+			int nUnique = getUniqueVertexInB(vertex(face1, 0), vertex(face1, 1), vertex(face1, 2),
+				first0, first1, first2);
+			if (nUnique == first1)
+			{
+				int temp = first0;
+				first0 = first1;
+				first1 = temp;
+			}
+			else if (nUnique == first2)
+			{
+				int temp = first0;
+				first0 = first2;
+				first2 = temp;
+			}
+			// If there is a third face, reorder vertices such that the
+			// shared vertex is last.
+			if (nStripFaceCount > 2)
+			{
+				int face2 = strips.m_faces.get(start + 2);
+				int nShared[] = new int[2];
+				getSharedVertices(vertex(face2, 0), vertex(face2, 1), vertex(face2, 2),
+					first0, first1, first2, nShared);
+				if ((nShared[0] == first1) && (nShared[1] == -1))
+				{
+					int temp = first1;
+					first1 = first2;
+					first2 = temp;
+				}
+			}
+		}
+		return isCW(f0, f1, f2, first0, first1);
+	}
+
+	// Index the strips, or faces, using each vertex. The index of the
+	// strip is listed once for each use of the vertex.
+	private int[] indexUses(StripList strips, int starts[])
+	{
+		IntVec faces = strips.m_faces;
+		for (int i = 0; i < faces.size(); i++)
+		{
+			int face = faces.get(i);
+			for (int k = 0; k < 3; k++)
+				starts[vertex(face, k) + 1]++;
+		}
+		for (int i = 1; i < starts.length; i++)
+			starts[i] += starts[i - 1];
+		int uses[] = new int[starts[starts.length - 1]];
+		int next[] = new int[starts.length];
+		System.arraycopy(starts, 0, next, 0, starts.length);
+		for (int i = 0; i < strips.size(); i++)
+		{
+			for (int j = strips.start(i); j < strips.m_ends.get(i); j++)
+			{
+				int face = faces.get(j);
+				for (int k = 0; k < 3; k++)
+					uses[next[vertex(face, k)]++] = i;
+			}
+		}
+		return uses;
+	}
+
+	// Add the vertex to the cache if it is not in it, updating the number
+	// of hits of the strips or faces using the vertices entering and leaving
+	// the cache. If levels are specified, the unvisited faces are also kept
+	// in the level for their number of hits.
+	private void cache(VertexCache vcache, int v, int useStarts[], int uses[],
+		int hits[], BitSet levels[], boolean visited[])
+	{
+		if (vcache.inCache(v)) return;
+		int removed = vcache.addEntry(v);
+		for (int i = useStarts[v]; i < useStarts[v + 1]; i++)
+		{
+			int use = uses[i];
+			if ((levels != null) && ! visited[use])
+			{
+				levels[hits[use]].clear(use);
+				levels[hits[use] + 1].set(use);
+			}
+			hits[use]++;
+		}
+		if (removed < 0) return;
+		for (int i = useStarts[removed]; i < useStarts[removed + 1]; i++)
+		{
+			int use = uses[i];
+			if ((levels != null) && ! visited[use])
+			{
+				levels[hits[use]].clear(use);
+				levels[hits[use] - 1].set(use);
 			}
+			hits[use]--;
 		}
 	}
 
 	/**
 	 * Remove the small strips.
 	 * 
-	 * @param allStrips The whole strip vector. All small strips will be deleted from this list,
-	 * to avoid leaking memory.
+	 * @param allStrips The whole strip list.
 	 * @param allBigStrips An out parameter which will contain all strips above <i>m_minStripLength</i>.
-	 * @param faceList An out parameter which will contain all faces which were removed from the striplist.
+	 * @param faceList An out parameter which will contain the vertices of all faces which were
+	 * removed from the strip list.
+	 * @param maxIndex The maximum vertex index.
 	 */
-	protected void removeSmallStrips(NvStripInfoVec allStrips, NvStripInfoVec allBigStrips, NvFaceInfoVec faceList)
+	protected void removeSmallStrips(StripList allStrips, StripList allBigStrips, IntVec faceList, int maxIndex)
 	{
 		faceList.clear();
 		allBigStrips.clear();  // Make sure these are empty.
-		NvFaceInfoVec tempFaceList = new NvFaceInfoVec();
+		// Each small face is a strip of one face.
+		StripList tempFaceList = new StripList();
 		for (int i = 0; i < allStrips.size(); i++)
 		{
-			if (allStrips.get(i).m_faces.size() < m_minStripLength)
+			int start = allStrips.start(i);
+			int length = allStrips.length(i);
+			if (length < m_minStripLength)
 			{
 				// Strip is too small, add faces to faceList.
-				for (int j = 0; j < allStrips.get(i).m_faces.size();j++)
-					tempFaceList.add(allStrips.get(i).m_faces.get(j));
+				for (int j = 0; j < length; j++)
+				{
+					tempFaceList.m_faces.add(allStrips.m_faces.get(start + j));
+					tempFaceList.endStrip(0, 0);
+				}
+			}
+			else
+			{
+				for (int j = 0; j < length; j++)
+					allBigStrips.m_faces.add(allStrips.m_faces.get(start + j));
+				allBigStrips.endStrip(0, 0);
 			}
-			else allBigStrips.add(allStrips.get(i));
 		}
-		if (tempFaceList.size() > 0)
+		int numFaces = tempFaceList.size();
+		if (numFaces > 0)
 		{
-			boolean visitedList[] = new boolean[tempFaceList.size()];
-			VertexCache vcache = new VertexCache(m_cacheSize);
-			int bestNumHits = -1;
-			int numHits = 0;
-			int bestIndex = 0;
+			VertexCache vcache = new VertexCache(m_cacheSize, maxIndex);
+			boolean visitedList[] = new boolean[numFaces];
+			int hits[] = new int[numFaces];
+			int useStarts[] = new int[maxIndex + 2];
+			int uses[] = indexUses(tempFaceList, useStarts);
+			// The unvisited faces with 0 to 3 vertices in the cache.
+			BitSet levels[] = new BitSet[4];
+			for (int i = 0; i < levels.length; i++)
+				levels[i] = new BitSet(numFaces);
+			levels[0].set(0, numFaces);
 			while (true)
 			{
-				bestNumHits = -1;
-				// Find best face to add next, given the current cache.
-				for (int i = 0; i < tempFaceList.size(); i++)
+				// Find best face to add next, given the current cache:
+				// the first one with the most hits.
+				int bestIndex = -1;
+				for (int i = levels.length - 1; (i >= 0) && (bestIndex == -1); i--)
+					bestIndex = levels[i].nextSetBit(0);
+				if (bestIndex == -1) break;
+				visitedList[bestIndex] = true;
+				levels[hits[bestIndex]].clear(bestIndex);
+				int face = tempFaceList.m_faces.get(bestIndex);
+				for (int k = 0; k < 3; k++)
 				{
-					if (visitedList[i]) continue;
-					numHits = calcNumHitsFace(vcache, tempFaceList.get(i));
-					if (numHits > bestNumHits)
-					{
-						bestNumHits = numHits;
-						bestIndex = i;
-					}
+					int v = vertex(face, k);
+					faceList.add(v);
 				}
-				if (bestNumHits == -1) break;
-				visitedList[bestIndex] = true;
-				updateCacheFace(vcache, tempFaceList.get(bestIndex));
-				faceList.add(tempFaceList.get(bestIndex));
+				for (int k = 0; k < 3; k++)
+					cache(vcache, vertex(face, k), useStarts, uses, hits, levels, visitedList);
 			}
 		}
 	}
 
 	/**
 	 * Finds the next face to start the next strip on.
+	 * 
+	 * @return The face is returned, or -1 if there is none. The edge
+	 * and direction to start on are left in m_traversalEdge and
+	 * m_traversalToV1.
 	 */
-	protected boolean findTraversal(NvFaceInfoVec faceInfos, NvEdgeInfoVec edgeInfos, NvStripInfo strip, NvStripStartInfo startInfo)
+	protected int findTraversal(int startEdge, boolean toV1, int stripId, int experimentId)
 	{
 		// If the strip was v0.v1 on the edge, then v1 will be a vertex in the next edge.
-		int v = (strip.m_startInfo.m_toV1 ? strip.m_startInfo.m_startEdge.m_v1 : strip.m_startInfo.m_startEdge.m_v0);
-		NvFaceInfo untouchedFace = null;
-		NvEdgeInfo edgeIter = edgeInfos.get(v);
-		while (edgeIter != null)
+		int v = (toV1 ? m_edgeVertices[2 * startEdge + 1] : m_edgeVertices[2 * startEdge]);
+		int untouchedFace = -1;
+		int edge = -1;
+		for (int i = m_vertexEdgeStarts[v]; i < m_vertexEdgeStarts[v + 1]; i++)
 		{
-			NvFaceInfo face0 = edgeIter.m_face0;
-			NvFaceInfo face1 = edgeIter.m_face1;
-			if ((face0 != null && ! strip.isInStrip(face0)) && face1 != null && ! strip.isMarked(face1))
+			int e = m_vertexEdges[i];
+			int face0 = m_edgeFaces[2 * e];
+			int face1 = m_edgeFaces[2 * e + 1];
+			if ((face0 != -1 && ! isInStrip(face0, stripId, experimentId)) && face1 != -1 && ! isMarked(face1, experimentId))
 			{
 				untouchedFace = face1;
+				edge = e;
 				break;
 			}
-			if ((face1 != null && ! strip.isInStrip(face1)) && face0 != null && ! strip.isMarked(face0))
+			if ((face1 != -1 && ! isInStrip(face1, stripId, experimentId)) && face0 != -1 && ! isMarked(face0, experimentId))
 			{
 				untouchedFace = face0;
+				edge = e;
 				break;
 			}
-			// Find the next edgeIter.
-			edgeIter=(edgeIter.m_v0 == v ? edgeIter.m_nextV0 : edgeIter.m_nextV1);
 		}
-		startInfo.m_startFace = untouchedFace;
-		startInfo.m_startEdge = edgeIter;
-		if (edgeIter != null)
+		m_traversalEdge = edge;
+		if (edge != -1)
 		{
 			//note! used to be v1
-			if (strip.sharesEdge(startInfo.m_startFace, edgeInfos))
-				startInfo.m_toV1 = (edgeIter.m_v0 == v);
+			if (sharesEdge(untouchedFace, stripId, experimentId))
+				m_traversalToV1 = (m_edgeVertices[2 * edge] == v);
 			else
-				startInfo.m_toV1 = (edgeIter.m_v1 == v);
+				m_traversalToV1 = (m_edgeVertices[2 * edge + 1] == v);
 		}
-		return (startInfo.m_startFace != null);
+		return untouchedFace;
+	}
+
+	// Returns true if the face and the strip share an edge.
+	private boolean sharesEdge(int face, int stripId, int experimentId)
+	{
+		for (int k = 0; k < 3; k++)
+		{
+			int edge = m_faceEdges[3 * face + k];
+			if (isInStrip(m_edgeFaces[2 * edge], stripId, experimentId) ||
+				isInStrip(m_edgeFaces[2 * edge + 1], stripId, experimentId))
+				return true;
+		}
+		return false;
 	}
 
 	/**
-	 * Commits the input strips by setting their m_experimentId to -1
-	 * and adding to the allStrips vector.
+	 * Commits the strips of an experiment by marking their faces with
+	 * their strip IDs and adding them to allStrips.
 	 * 
 	 * @param allStrips
-	 * @param strips
+	 * @param first The first strip of the experiment.
+	 * @param end The end of the strips of the experiment.
 	 */
-	protected void commitStrips(NvStripInfoVec allStrips, NvStripInfoVec strips)
+	protected void commitStrips(StripList allStrips, int first, int end)
 	{
-		// Iterate through strips.
-		int numStrips = strips.size();
-		for (int i = 0; i < numStrips; i++)
+		StripList strips = m_experimentStrips;
+		for (int i = first; i < end; i++)
 		{
-			// Tell the strip that it is now real.
-			NvStripInfo strip = strips.get(i);
-			strip.m_experimentId = -1;
-			// Add to the list of real strips.
-			allStrips.add(strip);
-			// Iterate through the faces of the strip.
+			int id = strips.m_ids.get(i);
 			// Tell the faces of the strip that they belong to a real strip now.
-			NvFaceInfoVec faces = strips.get(i).m_faces;
-			int numFaces = faces.size();
-			for (int j = 0; j < numFaces; j++)
-				strip.markTriangle(faces.get(j));
+			for (int j = strips.start(i); j < strips.m_ends.get(i); j++)
+			{
+				int face = strips.m_faces.get(j);
+				if (face >= 0)
+					markTriangle(face, id, -1);
+				else
+				{
+					int v0 = m_testFakeVertices.get(2 * ~face);
+					int v1 = m_testFakeVertices.get(2 * ~face + 1);
+					face = ~(m_fakeVertices.size() >> 1);
+					m_fakeVertices.add(v0);
+					m_fakeVertices.add(v1);
+				}
+				allStrips.m_faces.add(face);
+			}
+			allStrips.endStrip(id, strips.m_numDegenerates.get(i));
 		}
 	}
 
 	/**
-	 * Finds the average strip size of the input vector of strips.
+	 * Finds the average strip size of the specified strips.
 	 * 
 	 * @param strips
+	 * @param first
+	 * @param end
 	 * @return
 	 */
-	protected float avgStripSize(NvStripInfoVec strips)
+	protected float avgStripSize(StripList strips, int first, int end)
 	{
 		int sizeAccum =0;
-		int numStrips = strips.size();
-		for (int i = 0; i < numStrips; i++)
+		int numStrips = end - first;
+		for (int i = first; i < end; i++)
 		{
-			NvStripInfo strip = strips.get(i);
-			sizeAccum += strip.m_faces.size();
-			sizeAccum -= strip.m_numDegenerates;
+			sizeAccum += strips.length(i);
+			sizeAccum -= strips.m_numDegenerates.get(i);
 		}
 		return ((float)sizeAccum) / ((float)numStrips);
 	}
@@ -771,304 +1172,254 @@ class NvStripifier
 	/**
 	 * Finds a good starting point, namely one which has only one neighbor.
 	 * 
-	 * @param faceInfos
-	 * @param edgeInfos
 	 * @return
 	 */
-	protected int findStartPoint(NvFaceInfoVec faceInfos, NvEdgeInfoVec edgeInfos)
+	protected int findStartPoint()
 	{
 		int bestCtr = -1;
 		int bestIndex = -1;
-		for (int i = 0; i < faceInfos.size(); i++)
+		for (int i = 0; i < m_numFaces; i++)
 		{
-			int ctr = 0;
-			if (findOtherFace(edgeInfos,faceInfos.get(i).m_v0, faceInfos.get(i).m_v1, faceInfos.get(i)) == null) ctr++;
-			if (findOtherFace(edgeInfos,faceInfos.get(i).m_v1, faceInfos.get(i).m_v2, faceInfos.get(i)) == null) ctr++;
-			if (findOtherFace(edgeInfos,faceInfos.get(i).m_v2, faceInfos.get(i).m_v0, faceInfos.get(i)) == null) ctr++;
+			int ctr = 3 - numNeighbors(i);
 			if (ctr > bestCtr)
 			{
 				bestCtr = ctr;
 				bestIndex = i;
-				// return i;
 			}
 		}
-		// return -1;
 		if (bestCtr == 0) return -1;
 		else return bestIndex;
 	}
 
-	/**
-	 * Updates the input vertex cache with this strip's vertices.
-	 * 
-	 * @param vcache
-	 * @param strip
-	 */
-	protected void updateCacheStrip(VertexCache vcache, NvStripInfo strip)
-	{
-		for (int i = 0; i < strip.m_faces.size(); ++i)
-		{
-			if (! vcache.inCache(strip.m_faces.get(i).m_v0)) vcache.addEntry(strip.m_faces.get(i).m_v0);
-			if (! vcache.inCache(strip.m_faces.get(i).m_v1)) vcache.addEntry(strip.m_faces.get(i).m_v1);
-			if (! vcache.inCache(strip.m_faces.get(i).m_v2)) vcache.addEntry(strip.m_faces.get(i).m_v2);
-		}
-	}
-
-	/**
-	 * Updates the input vertex cache with this face's vertices.
-	 * 
-	 * @param vcache
-	 * @param face
-	 */
-	protected void updateCacheFace(VertexCache vcache,NvFaceInfo face)
-	{
-		if (! vcache.inCache(face.m_v0)) vcache.addEntry(face.m_v0);
-		if (! vcache.inCache(face.m_v1)) vcache.addEntry(face.m_v1);
-		if (! vcache.inCache(face.m_v2)) vcache.addEntry(face.m_v2);
-
-	}
-
-	/**
-	 * Returns the number of cache hits per face in the strip.
-	 * 
-	 * @param vcache
-	 * @param strip
-	 * @return
-	 */
-	protected float calcNumHitsStrip(VertexCache vcache, NvStripInfo strip)
-	{
-		int numHits = 0;
-		int numFaces = 0;
-
-		for (int i = 0; i < strip.m_faces.size(); i++)
-		{
-			if (vcache.inCache(strip.m_faces.get(i).m_v0)) ++numHits;
-			if (vcache.inCache(strip.m_faces.get(i).m_v1)) ++numHits;
-			if (vcache.inCache(strip.m_faces.get(i).m_v2)) ++numHits;
-			numFaces++;
-		}
-		return ((float)numHits / (float)numFaces);
-	}
-
-	/**
-	 * Returns the number of cache hits in the face.
-	 * 
-	 * @param vcache
-	 * @param face
-	 * @return
-	 */
-	protected int calcNumHitsFace(VertexCache vcache, NvFaceInfo face)
-	{
-		int numHits = 0;
-		if (vcache.inCache(face.m_v0)) numHits++;
-		if (vcache.inCache(face.m_v1)) numHits++;
-		if (vcache.inCache(face.m_v2)) numHits++;
-		return numHits;
-	}
-
 	/**
 	 * Returns the number of neighbors that this face has.
 	 * 
 	 * @param face
-	 * @param edgeInfoVec
 	 * @return
 	 */
-	protected int numNeighbors(NvFaceInfo face,NvEdgeInfoVec edgeInfoVec)
+	protected int numNeighbors(int face)
 	{
+		int v0 = vertex(face, 0), v1 = vertex(face, 1), v2 = vertex(face, 2);
 		int numNeighbors = 0;
-		if (findOtherFace(edgeInfoVec,face.m_v0,face.m_v1,face) != null) numNeighbors++;
-		if (findOtherFace(edgeInfoVec,face.m_v1,face.m_v2,face) != null) numNeighbors++;
-		if (findOtherFace(edgeInfoVec,face.m_v2,face.m_v0,face) != null) numNeighbors++;
+		if (findOtherFace(v0, v1, face) != -1) numNeighbors++;
+		if (findOtherFace(v1, v2, face) != -1) numNeighbors++;
+		if (findOtherFace(v2, v0, face) != -1) numNeighbors++;
 		return numNeighbors;
 	}
 
 	/**
-	 * Builds the list of all face and edge infos.
+	 * Builds the faces and edges.
 	 * 
-	 * @param faceInfos
-	 * @param edgeInfos
 	 * @param maxIndex
 	 */
-	protected void buildStripifyInfo(NvFaceInfoVec faceInfos, NvEdgeInfoVec edgeInfos, int maxIndex)
+	protected void buildStripifyInfo(int maxIndex)
 	{
-		// Reserve space for the face infos, but do not resize them.
 		int numIndices = m_indices.size();
-		faceInfos.ensureCapacity(numIndices / 3);
-		// We actually resize the edge infos, so we must initialize to NULL.
-		for (int i = 0; i < maxIndex + 1; i++) edgeInfos.add(null);
-		// Iterate through the triangles of the triangle list.
 		int numTriangles = numIndices / 3;
+		m_faceVertices = new int[3 * numTriangles];
+		m_faceEdges = new int[3 * numTriangles];
+		m_numFaces = 0;
+		m_edgeVertices = new int[6 * numTriangles];
+		m_edgeFaces = new int[6 * numTriangles];
+		m_numEdges = 0;
+		int capacity = 16;
+		while (capacity < 6 * numTriangles)
+			capacity <<= 1;
+		m_edgeTable = new int[capacity];
+		// The faces, hashed on their vertices, to find duplicates.
+		int faceTable[] = new int[capacity];
+		// Iterate through the triangles of the triangle list.
 		int index = 0;
 		boolean faceUpdated[] = new boolean[3];
+		int edges[] = new int[3];
 		for (int i = 0; i < numTriangles; i++)
 		{
 			boolean mightAlreadyExist = true;
-			faceUpdated[0] = false;
-			faceUpdated[1] = false;
-			faceUpdated[2] = false;
 			// Grab the indices
 			int v0 = m_indices.get(index++);
 			int v1 = m_indices.get(index++);
 			int v2 = m_indices.get(index++);
 			// We disregard degenerates.
 			if (isDegenerate(v0,v1,v2)) continue;
-			// Create the face info and add it to the list of faces, but only if this exact face doesn't already
-			// exist in the list.
-			NvFaceInfo faceInfo = new NvFaceInfo(v0,v1,v2);
+			// Add the face to the list of faces, but only if this exact face
+			// doesn't already exist in the list.
+			int face = m_numFaces;
 			// Grab the edge infos, creating them if they do not already exist.
-			NvEdgeInfo edgeInfo01 = findEdgeInfo(edgeInfos,v0,v1);
-			if (edgeInfo01 == null)
+			for (int k = 0; k < 3; k++)
 			{
-				// Since one of it's edges isn't in the edge data structure, it can't already exist in the face structure
-				mightAlreadyExist = false;
-				// Create the info.
-				edgeInfo01 = new NvEdgeInfo(v0,v1);
-				// Update the linked list on both.
-				edgeInfo01.m_nextV0 = edgeInfos.get(v0);
-				edgeInfo01.m_nextV1 = edgeInfos.get(v1);
-				edgeInfos.set(v0,edgeInfo01);
-				edgeInfos.set(v1,edgeInfo01);
-				// Set face 0.
-				edgeInfo01.m_face0 = faceInfo;
-			}
-			else
-			{
-				if (edgeInfo01.m_face1 == null)
+				int a = (k == 0 ? v0 : (k == 1 ? v1 : v2));
+				int b = (k == 0 ? v1 : (k == 1 ? v2 : v0));
+				faceUpdated[k] = false;
+				int edge = findEdge(a, b);
+				if (edge == -1)
 				{
-					edgeInfo01.m_face1 = faceInfo;
-					faceUpdated[0] = true;
+					// Since one of it's edges isn't in the edge data structure, it can't already exist in the face structure
+					mightAlreadyExist = false;
+					edge = addEdge(a, b);
+					// Set face 0.
+					m_edgeFaces[2 * edge] = face;
 				}
-				else System.out.println("BuildStripifyInfo: > 2 triangles on an edge... uncertain consequences\n");
-			}
-			// Grab the edge infos, creating them if they do not already exist.
-			NvEdgeInfo edgeInfo12 = findEdgeInfo(edgeInfos,v1,v2);
-			if (edgeInfo12 == null)
-			{
-				mightAlreadyExist = false;
-				// Create the info.
-				edgeInfo12 = new NvEdgeInfo(v1,v2);
-				// Update the linked list on both.
-				edgeInfo12.m_nextV0 = edgeInfos.get(v1);
-				edgeInfo12.m_nextV1 = edgeInfos.get(v2);
-				edgeInfos.set(v1, edgeInfo12);
-				edgeInfos.set(v2, edgeInfo12);
-				// Set face 0.
-				edgeInfo12.m_face0 = faceInfo;
-			}
-			else
-			{
-				if (edgeInfo12.m_face1 == null)
+				else
 				{
-					edgeInfo12.m_face1 = faceInfo;
-					faceUpdated[1] = true;
+					if (m_edgeFaces[2 * edge + 1] == -1)
+					{
+						m_edgeFaces[2 * edge + 1] = face;
+						faceUpdated[k] = true;
+					}
+					else System.out.println("BuildStripifyInfo: > 2 triangles on an edge... uncertain consequences\n");
 				}
-				else System.out.println("BuildStripifyInfo: > 2 triangles on an edge... uncertain consequences\n");
+				edges[k] = edge;
 			}
-			// Grab the edge infos, creating them if they do not already exist.
-			NvEdgeInfo edgeInfo20 = findEdgeInfo(edgeInfos,v2,v0);
-			if (edgeInfo20 == null)
+			if (mightAlreadyExist && (findFace(faceTable, v0, v1, v2) != -1))
 			{
-				mightAlreadyExist = false;
-				// Vreate the info.
-				edgeInfo20 = new NvEdgeInfo(v2,v0);
-				// Update the linked list on both
-				edgeInfo20.m_nextV0 = edgeInfos.get(v2);
-				edgeInfo20.m_nextV1 = edgeInfos.get(v0);
-				edgeInfos.set(v2, edgeInfo20);
-				edgeInfos.set(v0, edgeInfo20);
-				// Set face 0.
-				edgeInfo20.m_face0 = faceInfo;
+				// Cleanup pointers that point to this deleted face.
+				for (int k = 0; k < 3; k++)
+					if (faceUpdated[k]) m_edgeFaces[2 * edges[k] + 1] = -1;
 			}
 			else
 			{
-				if (edgeInfo20.m_face1 == null)
-				{
-					edgeInfo20.m_face1 = faceInfo;
-					faceUpdated[2] = true;
-				}
-				else System.out.println("BuildStripifyInfo: > 2 triangles on an edge... uncertain consequences\n");
-			}
-			if (mightAlreadyExist)
-			{
-				if (alreadyExists(faceInfo,faceInfos))
-				{
-					// Cleanup pointers that point to this deleted face.
-					if (faceUpdated[0]) edgeInfo01.m_face1 = null;
-					if (faceUpdated[1])	edgeInfo12.m_face1 = null;
-					if (faceUpdated[2])	edgeInfo20.m_face1 = null;
-				}
-				else faceInfos.add(faceInfo);
+				m_faceVertices[3 * face] = v0;
+				m_faceVertices[3 * face + 1] = v1;
+				m_faceVertices[3 * face + 2] = v2;
+				m_faceEdges[3 * face] = edges[0];
+				m_faceEdges[3 * face + 1] = edges[1];
+				m_faceEdges[3 * face + 2] = edges[2];
+				m_numFaces++;
+				addFace(faceTable, face);
 			}
-			else faceInfos.add(faceInfo);
 		}
+		m_faceStripIds = new int[m_numFaces];
+		m_faceTestStripIds = new int[m_numFaces];
+		m_faceExperimentIds = new int[m_numFaces];
+		Arrays.fill(m_faceStripIds, -1);
+		Arrays.fill(m_faceTestStripIds, -1);
+		Arrays.fill(m_faceExperimentIds, -1);
+		// Index the edges around each vertex, most recently created first.
+		m_vertexEdgeStarts = new int[maxIndex + 2];
+		for (int i = 0; i < 2 * m_numEdges; i++)
+			m_vertexEdgeStarts[m_edgeVertices[i] + 1]++;
+		for (int i = 1; i < m_vertexEdgeStarts.length; i++)
+			m_vertexEdgeStarts[i] += m_vertexEdgeStarts[i - 1];
+		m_vertexEdges = new int[2 * m_numEdges];
+		int next[] = new int[maxIndex + 1];
+		System.arraycopy(m_vertexEdgeStarts, 0, next, 0, maxIndex + 1);
+		for (int edge = m_numEdges - 1; edge >= 0; edge--)
+		{
+			m_vertexEdges[next[m_edgeVertices[2 * edge]]++] = edge;
+			m_vertexEdges[next[m_edgeVertices[2 * edge + 1]]++] = edge;
+		}
+	}
+
+	// Hash an unordered pair of vertices.
+	private static int hashEdge(int v0, int v1)
+	{
+		int lo = Math.min(v0, v1), hi = Math.max(v0, v1);
+		int h = lo * 0x9E3779B1 + hi * 0x85EBCA6B;
+		return h ^ (h >>> 15);
 	}
 
-	protected boolean alreadyExists(NvFaceInfo faceInfo, NvFaceInfoVec faceInfos)
+	// Find the edge for these two indices, in either order, or -1.
+	private int findEdge(int v0, int v1)
 	{
-		for (int i = 0; i < faceInfos.size(); ++i)
+		int mask = m_edgeTable.length - 1;
+		for (int i = hashEdge(v0, v1) & mask; ; i = (i + 1) & mask)
 		{
-			NvFaceInfo fi = faceInfos.get(i);
-			if ((fi.m_v0 == faceInfo.m_v0) && (fi.m_v1 == faceInfo.m_v1) && (fi.m_v2 == faceInfo.m_v2)) return true;
+			int entry = m_edgeTable[i];
+			if (entry == 0)
+				return -1;
+			int edge = entry - 1;
+			int e0 = m_edgeVertices[2 * edge], e1 = m_edgeVertices[2 * edge + 1];
+			if (((e0 == v0) && (e1 == v1)) || ((e0 == v1) && (e1 == v0)))
+				return edge;
+		}
+	}
+
+	// Create an edge, with no faces.
+	private int addEdge(int v0, int v1)
+	{
+		int edge = m_numEdges++;
+		m_edgeVertices[2 * edge] = v0;
+		m_edgeVertices[2 * edge + 1] = v1;
+		m_edgeFaces[2 * edge] = -1;
+		m_edgeFaces[2 * edge + 1] = -1;
+		int mask = m_edgeTable.length - 1;
+		int i = hashEdge(v0, v1) & mask;
+		while (m_edgeTable[i] != 0)
+			i = (i + 1) & mask;
+		m_edgeTable[i] = edge + 1;
+		return edge;
+	}
+
+	// Hash an ordered triple of vertices.
+	private static int hashFace(int v0, int v1, int v2)
+	{
+		int h = v0 * 0x9E3779B1 + v1 * 0x85EBCA6B + v2 * 0xC2B2AE35;
+		return h ^ (h >>> 15);
+	}
+
+	// Find the face with exactly these vertices, in this order, or -1.
+	private int findFace(int table[], int v0, int v1, int v2)
+	{
+		int mask = table.length - 1;
+		for (int i = hashFace(v0, v1, v2) & mask; ; i = (i + 1) & mask)
+		{
+			int entry = table[i];
+			if (entry == 0)
+				return -1;
+			int face = entry - 1;
+			if ((m_faceVertices[3 * face] == v0) && (m_faceVertices[3 * face + 1] == v1) &&
+				(m_faceVertices[3 * face + 2] == v2))
+				return face;
 		}
-		return false;
+	}
+
+	// Add the face to the table of faces.
+	private void addFace(int table[], int face)
+	{
+		int mask = table.length - 1;
+		int i = hashFace(m_faceVertices[3 * face], m_faceVertices[3 * face + 1], m_faceVertices[3 * face + 2]) & mask;
+		while (table[i] != 0)
+			i = (i + 1) & mask;
+		table[i] = face + 1;
 	}
 
 	// Returns the vertex unique to faceB
-	public static int getUniqueVertexInB(NvFaceInfo faceA,NvFaceInfo faceB)
+	public static int getUniqueVertexInB(int a0, int a1, int a2, int b0, int b1, int b2)
 	{
-		int facev0 = faceB.m_v0;
-		if (facev0 != faceA.m_v0 && facev0 != faceA.m_v1 && facev0 != faceA.m_v2) return facev0;
-		int facev1 = faceB.m_v1;
-		if (facev1 != faceA.m_v0 && facev1 != faceA.m_v1 && facev1 != faceA.m_v2) return facev1;
-		int facev2 = faceB.m_v2;
-		if (facev2 != faceA.m_v0 && facev2 != faceA.m_v1 && facev2 != faceA.m_v2) return facev2;
+		if (b0 != a0 && b0 != a1 && b0 != a2) return b0;
+		if (b1 != a0 && b1 != a1 && b1 != a2) return b1;
+		if (b2 != a0 && b2 != a1 && b2 != a2) return b2;
 		// Nothing is different.
 		return -1;
 	}
 
-	public static void getSharedVertices(NvFaceInfo faceA,NvFaceInfo faceB,int vertex[])
+	// Gets the vertices of faceB shared with faceA.
+	public static void getSharedVertices(int a0, int a1, int a2, int b0, int b1, int b2, int vertex[])
 	{
 		vertex[0] = -1;
 		vertex[1] = -1;
-		int facev0 = faceB.m_v0;
-		if (facev0 == faceA.m_v0 || facev0 == faceA.m_v1 || facev0 == faceA.m_v2)
-		{
-			if (vertex[0] != -1)
-			{
-				vertex[1] = facev0;
-				return;
-			}
-			else vertex[0] = facev0;
-		}
-		int facev1 = faceB.m_v1;
-		if (facev1 == faceA.m_v0 || facev1 == faceA.m_v1 || facev1 == faceA.m_v2)
+		if (b0 == a0 || b0 == a1 || b0 == a2)
+			vertex[0] = b0;
+		if (b1 == a0 || b1 == a1 || b1 == a2)
 		{
 			if (vertex[0] != -1)
 			{
-				vertex[1] = facev1;
+				vertex[1] = b1;
 				return;
 			}
-			else vertex[0] = facev1;
+			else vertex[0] = b1;
 		}
-		int facev2 = faceB.m_v2;
-		if (facev2 == faceA.m_v0 || facev2 == faceA.m_v1 || facev2 == faceA.m_v2)
+		if (b2 == a0 || b2 == a1 || b2 == a2)
 		{
 			if (vertex[0] != -1)
 			{
-				vertex[1] = facev2;
+				vertex[1] = b2;
 				return;
 			}
-			else vertex[0] = facev2;
+			else vertex[0] = b2;
 		}
 	}
 
-	public static boolean isDegenerate(NvFaceInfo face)
-	{
-		if (face.m_v0 == face.m_v1) return true;
-		else if (face.m_v0 == face.m_v2) return true;
-		else if (face.m_v1 == face.m_v2) return true;
-		else return false;
-	}
-
 	public static boolean isDegenerate(int v0,int v1,int v2)
 	{
 		if (v0 == v1) return true;
@@ -1078,21 +1429,19 @@ class NvStripifier
 	}
 
 	/**
-	// Returns vertex of the input face which is "next" in the input index list.
+	 * Returns vertex of the input face which is "next" in the strip,
+	 * given its last two indices.
 	 * 
-	 * @param indices
+	 * @param v0
+	 * @param v1
 	 * @param face
 	 * @return
 	 */
-	protected static int getNextIndex(IntVec indices, NvFaceInfo face)
+	private int getNextIndex(int v0, int v1, int face)
 	{
-		int numIndices = indices.size();
-		assert(numIndices >= 2);
-		int v0 = indices.get(numIndices-2);
-		int v1 = indices.get(numIndices-1);
-		int fv0 = face.m_v0;
-		int fv1 = face.m_v1;
-		int fv2 = face.m_v2;
+		int fv0 = m_faceVertices[3 * face];
+		int fv1 = m_faceVertices[3 * face + 1];
+		int fv2 = m_faceVertices[3 * face + 2];
 		if (fv0 != v0 && fv0 != v1)
 		{
 			if ((fv1 != v0 && fv1 != v1) || (fv2 != v0 && fv2 != v1))
@@ -1128,52 +1477,34 @@ class NvStripifier
 	}
 
 	/**
-	 * Find the edge info for these two indices.
+	 * Find the other face sharing these vertices.
 	 * 
-	 * @param edgeInfos
 	 * @param v0
 	 * @param v1
-	 * @return
+	 * @param face
+	 * @return The face is returned, or -1 if there is none.
 	 */
-	protected static NvEdgeInfo findEdgeInfo(NvEdgeInfoVec edgeInfos, int v0, int v1)
+	private int findOtherFace(int v0, int v1, int face)
 	{
-		// We can get to it through either array
-		// because the edge infos have a v0 and v1
-		// and there is no order except how it was
-		// first created.
-		NvEdgeInfo infoIter = edgeInfos.get(v0);
-		while (infoIter != null)
+		int edge = -1;
+		if (face >= 0)
 		{
-			if (infoIter.m_v0 == v0)
-			{
-				if (infoIter.m_v1 == v1) return infoIter;
-				else infoIter = infoIter.m_nextV0;
-			}
-			else
+			// Most often, this is an edge of the face.
+			for (int k = 0; k < 3; k++)
 			{
-				assert(infoIter.m_v1 == v0);
-				if (infoIter.m_v0 == v1) return infoIter;
-				else infoIter = infoIter.m_nextV1;
+				int e = m_faceEdges[3 * face + k];
+				int e0 = m_edgeVertices[2 * e], e1 = m_edgeVertices[2 * e + 1];
+				if (((e0 == v0) && (e1 == v1)) || ((e0 == v1) && (e1 == v0)))
+				{
+					edge = e;
+					break;
+				}
 			}
 		}
-		return null;
-	}
-
-	/**
-	 * Find the other face sharing these vertices exactly like the edge info above
-	 * 
-	 * @param edgeInfos
-	 * @param v0
-	 * @param v1
-	 * @param faceInfo
-	 * @return
-	 */
-	protected static NvFaceInfo findOtherFace(NvEdgeInfoVec edgeInfos, int v0, int v1, NvFaceInfo faceInfo)
-	{
-		NvEdgeInfo edgeInfo = findEdgeInfo(edgeInfos,v0,v1);
+		if (edge == -1)
+			edge = findEdge(v0, v1);
 		// We've hit a degenerate.
-		if ((edgeInfo == null) && (v0 == v1)) return null;
-		assert(edgeInfo != null);
-		return (edgeInfo.m_face0 == faceInfo ? edgeInfo.m_face1 : edgeInfo.m_face0);
+		if (edge == -1) return -1;
+		return (m_edgeFaces[2 * edge] == face ? m_edgeFaces[2 * edge + 1] : m_edgeFaces[2 * edge]);
 	}
-}
\ No newline at end of file
+}
@@ -232,11 +232,14 @@ public class NvTriStrip
 			if (in_indices[i] > maxIndex) maxIndex = in_indices[i];
 			if (in_indices[i] < minIndex) minIndex = in_indices[i];
 		}
-		NvStripInfoVec tempStrips = new NvStripInfoVec();
-		NvFaceInfoVec tempFaces = new NvFaceInfoVec();
+		// The vertices of the faces of the strips and of the list, three per face.
+		IntVec tempStripFaces = new IntVec();
+		IntVec tempStripLengths = new IntVec();
+		IntVec tempFaces = new IntVec();
 		NvStripifier stripifier = new NvStripifier();
 		// Do actual stripification.
-		stripifier.stripify(tempIndices, m_cacheSize, m_minStripSize, maxIndex, tempStrips, tempFaces);
+		stripifier.stripify(tempIndices, m_cacheSize, m_minStripSize, maxIndex, tempStripFaces, tempStripLengths, tempFaces);
+		int numFaces = tempFaces.size() / 3;
 		// Stitch strips together.
 		IntVec stripIndices = new IntVec();
 		int numSeparateStrips = 0;
@@ -248,49 +251,44 @@ public class NvTriStrip
 			PrimitiveGroup primGroupArray[] = primGroups;
 			// Count the total number of indices.
 			int numIndices = 0;
-			for (int i = 0; i < tempStrips.size(); i++)
-				numIndices += (tempStrips.get(i).m_faces.size() * 3);
+			numIndices += tempStripFaces.size();
 			// Add in the list.
-			numIndices += tempFaces.size() * 3;
+			numIndices += numFaces * 3;
 			primGroupArray[0].m_type = PrimitiveGroup.PT_LIST;
 			primGroupArray[0].m_numIndices = numIndices;
 			primGroupArray[0].m_indices = new int[numIndices];
 			// Do strips.
 			int indexCtr = 0;
-			for (int i = 0; i < tempStrips.size(); i++)
+			for (int i = 0; i < tempStripFaces.size(); i += 3)
 			{
-				for (int j = 0; j < tempStrips.get(i).m_faces.size(); j++)
+				int v0 = tempStripFaces.get(i);
+				int v1 = tempStripFaces.get(i + 1);
+				int v2 = tempStripFaces.get(i + 2);
+				// Degenerates are of no use with lists.
+				if (! NvStripifier.isDegenerate(v0, v1, v2))
 				{
-					// Degenerates are of no use with lists.
-					if (! NvStripifier.isDegenerate(tempStrips.get(i).m_faces.get(j)))
-					{
-						primGroupArray[0].m_indices[indexCtr++] = tempStrips.get(i).m_faces.get(j).m_v0;
-						primGroupArray[0].m_indices[indexCtr++] = tempStrips.get(i).m_faces.get(j).m_v1;
-						primGroupArray[0].m_indices[indexCtr++] = tempStrips.get(i).m_faces.get(j).m_v2;
-					}
-					else
-					{
-						// We've removed a tri, reduce the number of indices.
-						primGroupArray[0].m_numIndices -= 3;
-					}
+					primGroupArray[0].m_indices[indexCtr++] = v0;
+					primGroupArray[0].m_indices[indexCtr++] = v1;
+					primGroupArray[0].m_indices[indexCtr++] = v2;
+				}
+				else
+				{
+					// We've removed a tri, reduce the number of indices.
+					primGroupArray[0].m_numIndices -= 3;
 				}
 			}
 			// Do lists.
 			for (int i = 0; i < tempFaces.size(); i++)
-			{
-				primGroupArray[0].m_indices[indexCtr++] = tempFaces.get(i).m_v0;
-				primGroupArray[0].m_indices[indexCtr++] = tempFaces.get(i).m_v1;
-				primGroupArray[0].m_indices[indexCtr++] = tempFaces.get(i).m_v2;
-			}
+				primGroupArray[0].m_indices[indexCtr++] = tempFaces.get(i);
 		}
 		else
 		{
-			numSeparateStrips = stripifier.createStrips(tempStrips, stripIndices, m_stitchStrips, m_restart, m_restartVal);
+			numSeparateStrips = stripifier.createStrips(tempStripFaces, tempStripLengths, stripIndices, m_stitchStrips, m_restart, m_restartVal);
 			// If we're stitching strips together,we better get back only one strip from CreateStrips().
 			assert((m_stitchStrips&&(numSeparateStrips == 1)) || ! m_stitchStrips);
 			// Convert to output format
 			numGroups = numSeparateStrips; // For the strips.
-			if (tempFaces.size() != 0) numGroups++;  // We've got a list as well, increment.
+			if (numFaces != 0) numGroups++;  // We've got a list as well, increment.
 			primGroups = new PrimitiveGroup[numGroups];
 			for (int i = 0; i < numGroups; i++)
 				primGroups[i] = new PrimitiveGroup();
@@ -320,19 +318,15 @@ public class NvTriStrip
 				startingLoc += stripLength + 1;
 			}
 			// Next, the list.
-			if (tempFaces.size() != 0)
+			if (numFaces != 0)
 			{
 				int faceGroupLoc = numGroups - 1;    // The face group is the last one.
 				primGroupArray[faceGroupLoc].m_type = PrimitiveGroup.PT_LIST;
-				primGroupArray[faceGroupLoc].m_indices = new int[tempFaces.size() * 3];
-				primGroupArray[faceGroupLoc].m_numIndices = tempFaces.size() * 3;
+				primGroupArray[faceGroupLoc].m_indices = new int[numFaces * 3];
+				primGroupArray[faceGroupLoc].m_numIndices = numFaces * 3;
 				int indexCtr = 0;
 				for (int i = 0; i < tempFaces.size(); i++)
-				{
-					primGroupArray[faceGroupLoc].m_indices[indexCtr++] = tempFaces.get(i).m_v0;
-					primGroupArray[faceGroupLoc].m_indices[indexCtr++] = tempFaces.get(i).m_v1;
-					primGroupArray[faceGroupLoc].m_indices[indexCtr++] = tempFaces.get(i).m_v2;
-				}
+					primGroupArray[faceGroupLoc].m_indices[indexCtr++] = tempFaces.get(i);
 			}
 		}
 		// Validate generated data against input.
@@ -26,10 +26,24 @@ package com.wizzer.m3g.nvtristrip;
 // Import standard Java classes.
 import java.util.*;
 
+/**
+ * A FIFO post-transform vertex cache.
+ * <p>
+ * The entries are held in a ring, so adding an entry moves the start of
+ * the ring instead of the entries, and entry 0 is always the most recently
+ * added. Whether a vertex is in the cache is answered from a count of the
+ * entries holding it, indexed by vertex, so it does not scan the entries.
+ * Empty entries are -1.
+ * </p>
+ */
 class VertexCache
 {
 	private int m_entries[];
 	private int m_numEntries;
+	// The position in m_entries of entry 0.
+	private int m_first;
+	// The number of entries holding each vertex.
+	private int m_counts[];
 
 	public VertexCache()
 	{
@@ -37,46 +51,106 @@ class VertexCache
 	}
 
 	public VertexCache(int size)
+	{
+		this(size, 0);
+	}
+
+	/**
+	 * Construct a cache.
+	 * 
+	 * @param size The number of entries.
+	 * @param maxIndex The largest vertex expected to be added. Larger
+	 * vertices may still be added.
+	 */
+	public VertexCache(int size, int maxIndex)
 	{
 		m_entries = new int[m_numEntries = size];
+		m_counts = new int[maxIndex + 1];
 		clear();
 	}
 
 	public boolean inCache(int entry)
 	{
-		for (int i = 0; i < m_entries.length; i++)
-			if (m_entries[i] == entry) return true;
-		return false;
+		if (entry < 0)
+		{
+			// Only empty entries are expected to be negative.
+			for (int i = 0; i < m_numEntries; i++)
+				if (m_entries[i] == entry) return true;
+			return false;
+		}
+		return (entry < m_counts.length) && (m_counts[entry] > 0);
 	}
 
+	/**
+	 * Add an entry, dropping the oldest.
+	 * 
+	 * @param entry The vertex to add.
+	 * 
+	 * @return The vertex dropped from the cache is returned, or -1 if the
+	 * entry dropped was empty.
+	 */
 	public int addEntry(int entry)
 	{
-		int removed = m_entries[m_entries.length - 1];
-		// Push everything right one.
-		for (int i = m_numEntries - 2; i >= 0; i--)
-			m_entries[i+1] = m_entries[i];
-		m_entries[0] = entry;
+		if (m_numEntries == 0)
+			return entry;
+		m_first = (m_first == 0 ? m_numEntries : m_first) - 1;
+		int removed = m_entries[m_first];
+		release(removed);
+		m_entries[m_first] = entry;
+		hold(entry);
 		return removed;
 	}
 
 	public void clear()
 	{
 		Arrays.fill(m_entries, -1);
+		Arrays.fill(m_counts, 0);
+		m_first = 0;
 	}
 
 	public void copy(VertexCache inVcache)
 	{
 		for (int i = 0; i < m_numEntries; i++)
-			inVcache.set(i, m_entries[i]);
+			inVcache.set(i, at(i));
 	}
 
 	public int at(int index)
 	{
-		return m_entries[index];
+		index += m_first;
+		return m_entries[index < m_numEntries ? index : index - m_numEntries];
 	}
 
 	public void set(int index,int value)
 	{
+		index += m_first;
+		if (index >= m_numEntries)
+			index -= m_numEntries;
+		release(m_entries[index]);
 		m_entries[index] = value;
+		hold(value);
+	}
+
+	public int size()
+	{
+		return m_numEntries;
+	}
+
+	// Count an entry holding the vertex.
+	private void hold(int entry)
+	{
+		if (entry < 0) return;
+		if (entry >= m_counts.length)
+		{
+			int counts[] = new int[Math.max(entry + 1, (m_counts.length * 3) / 2 + 1)];
+			System.arraycopy(m_counts, 0, counts, 0, m_counts.length);
+			m_counts = counts;
+		}
+		m_counts[entry]++;
+	}
+
+	// Uncount an entry holding the vertex.
+	private void release(int entry)
+	{
+		if (entry >= 0) m_counts[entry]--;
 	}
 }
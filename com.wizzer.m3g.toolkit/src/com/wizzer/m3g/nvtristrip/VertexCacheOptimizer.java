@@ -0,0 +1,389 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g.nvtristrip;
+
+// Import standard Java classes.
+import java.util.*;
+
+/**
+ * Reorders triangles for a post-transform vertex cache.
+ * <p>
+ * This is Tom Forsyth's linear-speed vertex cache optimisation. Each
+ * vertex is scored on its position in a simulated LRU cache and on the
+ * number of triangles still to be emitted that use it, and the triangle
+ * with the highest total score among those using the cached vertices is
+ * emitted next. Unlike the search done by <code>NvTriStrip</code>, the
+ * time taken grows linearly with the number of triangles.
+ * </p>
+ * <p>
+ * Degenerate triangles are dropped.
+ * </p>
+ */
+public class VertexCacheOptimizer
+{
+	// The cache size the scores are tuned for.
+	public static final int DEFAULT_CACHE_SIZE = 32;
+
+	// The scoring parameters.
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRI_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+	// The number of valences whose boost is tabulated.
+	private static final int MAX_TABULATED_VALENCE = 64;
+
+	private int m_cacheSize = DEFAULT_CACHE_SIZE;
+
+	public VertexCacheOptimizer()
+	{
+	}
+
+	/**
+	 * Set the size of the cache to optimize for.
+	 * 
+	 * @param cacheSize The number of vertices the cache holds.
+	 */
+	public void setCacheSize(int cacheSize)
+	{
+		if (cacheSize < 1)
+			throw new IllegalArgumentException("VertexCacheOptimizer: cacheSize must be positive");
+		m_cacheSize = cacheSize;
+	}
+
+	public int getCacheSize()
+	{
+		return m_cacheSize;
+	}
+
+	/**
+	 * Reorder the triangles of a triangle list.
+	 * 
+	 * @param indices The triangle list, three indices per triangle.
+	 * 
+	 * @return The reordered triangle list is returned. The vertices of each
+	 * triangle keep their order, so the winding is unchanged.
+	 */
+	public int[] optimize(int indices[])
+	{
+		int numTris = indices.length / 3;
+		int numVerts = 0;
+		for (int i = 0; i < numTris * 3; i++)
+		{
+			if (indices[i] < 0)
+				throw new IllegalArgumentException("VertexCacheOptimizer: negative index");
+			numVerts = Math.max(numVerts, indices[i] + 1);
+		}
+
+		// Index the live triangles of each vertex; the live ones are kept
+		// at the start of each vertex's run.
+		int starts[] = new int[numVerts + 1];
+		int live[] = new int[numVerts];
+		boolean emitted[] = new boolean[numTris];
+		int numLive = 0;
+		for (int t = 0; t < numTris; t++)
+		{
+			int v0 = indices[3 * t], v1 = indices[3 * t + 1], v2 = indices[3 * t + 2];
+			if (NvStripifier.isDegenerate(v0, v1, v2))
+			{
+				emitted[t] = true;
+				continue;
+			}
+			live[v0]++;
+			live[v1]++;
+			live[v2]++;
+			numLive++;
+		}
+		for (int v = 0; v < numVerts; v++)
+			starts[v + 1] = starts[v] + live[v];
+		int tris[] = new int[starts[numVerts]];
+		int next[] = new int[numVerts];
+		System.arraycopy(starts, 0, next, 0, numVerts);
+		for (int t = 0; t < numTris; t++)
+		{
+			if (emitted[t]) continue;
+			for (int k = 0; k < 3; k++)
+				tris[next[indices[3 * t + k]]++] = t;
+		}
+
+		// Score the vertices and the triangles.
+		float positionScores[] = new float[m_cacheSize];
+		for (int i = 0; i < m_cacheSize; i++)
+		{
+			if (i < 3)
+				positionScores[i] = LAST_TRI_SCORE;
+			else
+				positionScores[i] = (float)Math.pow(1.0f - (float)(i - 3) / (float)(m_cacheSize - 3), CACHE_DECAY_POWER);
+		}
+		float valenceScores[] = new float[MAX_TABULATED_VALENCE];
+		for (int i = 1; i < MAX_TABULATED_VALENCE; i++)
+			valenceScores[i] = valenceScore(i);
+		int cachePositions[] = new int[numVerts];
+		Arrays.fill(cachePositions, -1);
+		float vertexScores[] = new float[numVerts];
+		for (int v = 0; v < numVerts; v++)
+			vertexScores[v] = score(live[v], -1, positionScores, valenceScores);
+		float triScores[] = new float[numTris];
+		int best = -1;
+		float bestScore = -1.0f;
+		for (int t = 0; t < numTris; t++)
+		{
+			if (emitted[t]) continue;
+			triScores[t] = vertexScores[indices[3 * t]] + vertexScores[indices[3 * t + 1]] + vertexScores[indices[3 * t + 2]];
+			if (triScores[t] > bestScore)
+			{
+				bestScore = triScores[t];
+				best = t;
+			}
+		}
+
+		// The simulated cache, most recent first, with room for the
+		// vertices of a triangle pushed out by the next.
+		int cache[] = new int[m_cacheSize + 3];
+		int newCache[] = new int[m_cacheSize + 3];
+		int cacheCount = 0;
+		int output[] = new int[numLive * 3];
+		int outputCount = 0;
+		int cursor = 0;
+		for (int n = 0; n < numLive; n++)
+		{
+			if (best == -1)
+			{
+				// No cached vertex has a triangle left; start afresh from
+				// the next triangle not yet emitted.
+				while (emitted[cursor])
+					cursor++;
+				best = cursor;
+			}
+
+			// Emit the triangle, and remove it from its vertices.
+			emitted[best] = true;
+			int newCount = 0;
+			for (int k = 0; k < 3; k++)
+			{
+				int v = indices[3 * best + k];
+				output[outputCount++] = v;
+				int end = starts[v] + live[v] - 1;
+				for (int i = starts[v]; i <= end; i++)
+				{
+					if (tris[i] == best)
+					{
+						tris[i] = tris[end];
+						tris[end] = best;
+						break;
+					}
+				}
+				live[v]--;
+				newCache[newCount++] = v;
+			}
+
+			// Move its vertices to the front of the cache.
+			for (int i = 0; i < cacheCount; i++)
+			{
+				int v = cache[i];
+				if ((v != newCache[0]) && (v != newCache[1]) && (v != newCache[2]))
+					newCache[newCount++] = v;
+			}
+			int temp[] = cache;
+			cache = newCache;
+			newCache = temp;
+			cacheCount = newCount;
+
+			// Rescore the vertices in the cache and those falling out of it,
+			// and their triangles, choosing the best of those.
+			for (int i = 0; i < cacheCount; i++)
+			{
+				int v = cache[i];
+				cachePositions[v] = (i < m_cacheSize ? i : -1);
+				vertexScores[v] = score(live[v], cachePositions[v], positionScores, valenceScores);
+			}
+			best = -1;
+			bestScore = -1.0f;
+			for (int i = 0; i < cacheCount; i++)
+			{
+				int v = cache[i];
+				for (int j = starts[v]; j < starts[v] + live[v]; j++)
+				{
+					int t = tris[j];
+					triScores[t] = vertexScores[indices[3 * t]] + vertexScores[indices[3 * t + 1]] +
+						vertexScores[indices[3 * t + 2]];
+					if (triScores[t] > bestScore)
+					{
+						bestScore = triScores[t];
+						best = t;
+					}
+				}
+			}
+			if (cacheCount > m_cacheSize)
+				cacheCount = m_cacheSize;
+		}
+		return output;
+	}
+
+	/**
+	 * Reorder the triangles of a triangle list and join them into strips.
+	 * <p>
+	 * Successive triangles of the reordered list which share an edge are
+	 * joined into one strip, swapping with a degenerate triangle where the
+	 * strip has to turn the other way; no triangle is moved to lengthen a
+	 * strip, so the strips keep the order found for the cache.
+	 * </p>
+	 * 
+	 * @param indices The triangle list, three indices per triangle.
+	 * 
+	 * @return One strip group is returned for each strip.
+	 */
+	public PrimitiveGroup[] generateStrips(int indices[])
+	{
+		int list[] = optimize(indices);
+		int numTris = list.length / 3;
+		ArrayList groups = new ArrayList();
+		IntVec strip = new IntVec();
+		for (int t = 0; t < numTris; t++)
+		{
+			int v0 = list[3 * t], v1 = list[3 * t + 1], v2 = list[3 * t + 2];
+			int size = strip.size();
+			if (size > 0)
+			{
+				int a = strip.get(size - 2), b = strip.get(size - 1);
+				int c = nextIndex(a, b, size, v0, v1, v2);
+				if (c != -1)
+				{
+					// If the next triangle shares the edge a-c rather than b-c,
+					// swap with a degenerate triangle (a, b, a) to reach it.
+					if (t + 1 < numTris)
+					{
+						int w0 = list[3 * t + 3], w1 = list[3 * t + 4], w2 = list[3 * t + 5];
+						if ((nextIndex(b, c, size + 1, w0, w1, w2) == -1) &&
+							(nextIndex(a, c, size + 2, w0, w1, w2) != -1))
+							strip.add(a);
+					}
+					strip.add(c);
+					continue;
+				}
+				groups.add(toGroup(strip));
+				strip.clear();
+			}
+			// Start a new strip, ending with the edge the next triangle
+			// shares, if it shares one.
+			if (t + 1 < numTris)
+			{
+				int w0 = list[3 * t + 3], w1 = list[3 * t + 4], w2 = list[3 * t + 5];
+				for (int k = 0; k < 3; k++)
+				{
+					// The next triangle continues (v0, v1, v2) if it has the edge v2-v1.
+					if (((w0 == v2) && (w1 == v1)) || ((w1 == v2) && (w2 == v1)) || ((w2 == v2) && (w0 == v1)))
+						break;
+					int swap = v0;
+					v0 = v1;
+					v1 = v2;
+					v2 = swap;
+				}
+			}
+			strip.add(v0);
+			strip.add(v1);
+			strip.add(v2);
+		}
+		if (strip.size() > 0)
+			groups.add(toGroup(strip));
+		return (PrimitiveGroup[])groups.toArray(new PrimitiveGroup[groups.size()]);
+	}
+
+	/**
+	 * Number the vertices in the order they are first used.
+	 * <p>
+	 * The indices are rewritten in place. The vertices not used by the
+	 * indices follow those used, in their original order.
+	 * </p>
+	 * 
+	 * @param indices The indices to renumber.
+	 * @param numVertices The number of vertices.
+	 * 
+	 * @return The new number of each vertex is returned, indexed by its
+	 * old number.
+	 */
+	public static int[] remapVertices(int indices[], int numVertices)
+	{
+		int remap[] = new int[numVertices];
+		Arrays.fill(remap, -1);
+		int next = 0;
+		for (int i = 0; i < indices.length; i++)
+		{
+			int v = indices[i];
+			if ((v < 0) || (v >= numVertices))
+				throw new IndexOutOfBoundsException("VertexCacheOptimizer: index " + v + " out of range");
+			if (remap[v] == -1)
+				remap[v] = next++;
+			indices[i] = remap[v];
+		}
+		for (int v = 0; v < numVertices; v++)
+		{
+			if (remap[v] == -1)
+				remap[v] = next++;
+		}
+		return remap;
+	}
+
+	// Get the index continuing a strip of the specified number of indices,
+	// ending with s0 and s1, with the triangle, or -1 if it does not.
+	private static int nextIndex(int s0, int s1, int size, int v0, int v1, int v2)
+	{
+		// An even triangle of a strip is (s0, s1, c) and an odd one (s1, s0, c).
+		if ((size & 1) == 1)
+		{
+			int swap = s0;
+			s0 = s1;
+			s1 = swap;
+		}
+		if ((v0 == s0) && (v1 == s1)) return v2;
+		else if ((v1 == s0) && (v2 == s1)) return v0;
+		else if ((v2 == s0) && (v0 == s1)) return v1;
+		return -1;
+	}
+
+	// Score a vertex on its position in the cache and the number of
+	// triangles left to use it.
+	private float score(int valence, int position, float positionScores[], float valenceScores[])
+	{
+		if (valence == 0)
+			return -1.0f;
+		float score = (position < 0 ? 0.0f : positionScores[position]);
+		return score + (valence < MAX_TABULATED_VALENCE ? valenceScores[valence] : valenceScore(valence));
+	}
+
+	private static float valenceScore(int valence)
+	{
+		return VALENCE_BOOST_SCALE * (float)Math.pow(valence, -VALENCE_BOOST_POWER);
+	}
+
+	private static PrimitiveGroup toGroup(IntVec strip)
+	{
+		PrimitiveGroup group = new PrimitiveGroup();
+		group.m_type = PrimitiveGroup.PT_STRIP;
+		group.m_numIndices = strip.size();
+		group.m_indices = new int[strip.size()];
+		for (int i = 0; i < strip.size(); i++)
+			group.m_indices[i] = strip.get(i);
+		return group;
+	}
+}
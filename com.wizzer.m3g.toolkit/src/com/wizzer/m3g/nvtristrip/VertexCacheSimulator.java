@@ -0,0 +1,280 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g.nvtristrip;
+
+// Import standard Java classes.
+import java.util.*;
+
+/**
+ * Simulates a FIFO post-transform vertex cache over index streams to
+ * grade how well they reuse transformed vertices.
+ * <p>
+ * Every index submitted is looked up in the cache; a miss is a vertex that
+ * has to be transformed. Two ratios are reported:
+ * <ul>
+ * <li>the ACMR (average cache miss ratio), the number of misses per
+ * triangle, which is 0.5 at best on a regular mesh and 3 at worst,</li>
+ * <li>the ATVR (average transformed vertex ratio), the number of misses
+ * per distinct vertex, which is 1 at best.</li>
+ * </ul>
+ * Degenerate triangles, such as those stitching strips together, are
+ * not counted as triangles, but their indices are looked up like any
+ * other. Successive primitives share the cache unless it is reset.
+ * </p>
+ */
+public class VertexCacheSimulator
+{
+	private VertexCache m_cache;
+	// The distinct vertices submitted.
+	private BitSet m_vertices;
+	private int m_numIndices;
+	private int m_numMisses;
+	private int m_numTriangles;
+	private int m_restartVal;
+	private boolean m_restart;
+
+	/**
+	 * Construct a simulator.
+	 * 
+	 * @param cacheSize The number of entries in the cache, for example
+	 * <code>NvTriStrip.CACHESIZE_GEFORCE1_2</code>.
+	 */
+	public VertexCacheSimulator(int cacheSize)
+	{
+		if (cacheSize < 1)
+			throw new IllegalArgumentException("VertexCacheSimulator: cacheSize must be positive");
+		m_cache = new VertexCache(cacheSize);
+		m_vertices = new BitSet();
+	}
+
+	/**
+	 * Treat the specified index in strips as a primitive restart, as
+	 * produced by <code>NvTriStrip.enableRestart()</code>.
+	 * 
+	 * @param restartVal The restart index.
+	 */
+	public void enableRestart(int restartVal)
+	{
+		m_restartVal = restartVal;
+		m_restart = true;
+	}
+
+	/**
+	 * Stop treating any index as a primitive restart.
+	 */
+	public void disableRestart()
+	{
+		m_restart = false;
+	}
+
+	/**
+	 * Empty the cache and clear the counts.
+	 */
+	public void reset()
+	{
+		m_cache.clear();
+		m_vertices.clear();
+		m_numIndices = 0;
+		m_numMisses = 0;
+		m_numTriangles = 0;
+	}
+
+	/**
+	 * Submit a triangle list.
+	 * 
+	 * @param indices The indices, three per triangle.
+	 * @param offset The first index to submit.
+	 * @param length The number of indices to submit.
+	 */
+	public void addList(int indices[], int offset, int length)
+	{
+		for (int i = 0; i + 2 < length; i += 3)
+		{
+			int v0 = indices[offset + i];
+			int v1 = indices[offset + i + 1];
+			int v2 = indices[offset + i + 2];
+			fetch(v0);
+			fetch(v1);
+			fetch(v2);
+			if (! NvStripifier.isDegenerate(v0, v1, v2)) m_numTriangles++;
+		}
+	}
+
+	/**
+	 * Submit a triangle strip.
+	 * 
+	 * @param indices The indices of the strip.
+	 * @param offset The first index to submit.
+	 * @param length The number of indices to submit.
+	 */
+	public void addStrip(int indices[], int offset, int length)
+	{
+		// The number of indices since the strip began or restarted.
+		int run = 0;
+		int v0 = 0, v1 = 0;
+		for (int i = 0; i < length; i++)
+		{
+			int v2 = indices[offset + i];
+			if (m_restart && (v2 == m_restartVal))
+			{
+				run = 0;
+				continue;
+			}
+			fetch(v2);
+			if ((++run >= 3) && ! NvStripifier.isDegenerate(v0, v1, v2)) m_numTriangles++;
+			v0 = v1;
+			v1 = v2;
+		}
+	}
+
+	/**
+	 * Submit a triangle fan.
+	 * 
+	 * @param indices The indices of the fan.
+	 * @param offset The first index to submit.
+	 * @param length The number of indices to submit.
+	 */
+	public void addFan(int indices[], int offset, int length)
+	{
+		for (int i = 0; i < length; i++)
+		{
+			fetch(indices[offset + i]);
+			if ((i >= 2) && ! NvStripifier.isDegenerate(indices[offset], indices[offset + i - 1], indices[offset + i]))
+				m_numTriangles++;
+		}
+	}
+
+	/**
+	 * Submit a group generated by <code>NvTriStrip</code>.
+	 * 
+	 * @param group The primitive group.
+	 */
+	public void addPrimitiveGroup(PrimitiveGroup group)
+	{
+		switch (group.m_type)
+		{
+			case PrimitiveGroup.PT_LIST:
+				addList(group.m_indices, 0, group.m_numIndices);
+				break;
+			case PrimitiveGroup.PT_STRIP:
+				addStrip(group.m_indices, 0, group.m_numIndices);
+				break;
+			case PrimitiveGroup.PT_FAN:
+				addFan(group.m_indices, 0, group.m_numIndices);
+				break;
+		}
+	}
+
+	/**
+	 * Submit strips laid out as in a <code>TriangleStripArray</code>:
+	 * the indices of all the strips, one after the other.
+	 * 
+	 * @param indices The indices of the strips.
+	 * @param stripLengths The number of indices in each strip.
+	 */
+	public void addStrips(int indices[], int stripLengths[])
+	{
+		int offset = 0;
+		for (int i = 0; i < stripLengths.length; i++)
+		{
+			addStrip(indices, offset, stripLengths[i]);
+			offset += stripLengths[i];
+		}
+	}
+
+	/**
+	 * Get the number of indices submitted, excluding restarts.
+	 * 
+	 * @return The number of indices is returned.
+	 */
+	public int getNumIndices()
+	{
+		return m_numIndices;
+	}
+
+	/**
+	 * Get the number of indices that missed the cache, which is the number
+	 * of vertices transformed.
+	 * 
+	 * @return The number of misses is returned.
+	 */
+	public int getNumMisses()
+	{
+		return m_numMisses;
+	}
+
+	/**
+	 * Get the number of non-degenerate triangles submitted.
+	 * 
+	 * @return The number of triangles is returned.
+	 */
+	public int getNumTriangles()
+	{
+		return m_numTriangles;
+	}
+
+	/**
+	 * Get the number of distinct vertices submitted.
+	 * 
+	 * @return The number of vertices is returned.
+	 */
+	public int getNumVertices()
+	{
+		return m_vertices.cardinality();
+	}
+
+	/**
+	 * Get the average cache miss ratio: the misses per triangle.
+	 * 
+	 * @return The ACMR is returned, or 0 if no triangle was submitted.
+	 */
+	public float getACMR()
+	{
+		return (m_numTriangles == 0 ? 0.0f : (float)m_numMisses / (float)m_numTriangles);
+	}
+
+	/**
+	 * Get the average transformed vertex ratio: the misses per distinct
+	 * vertex.
+	 * 
+	 * @return The ATVR is returned, or 0 if no vertex was submitted.
+	 */
+	public float getATVR()
+	{
+		int numVertices = getNumVertices();
+		return (numVertices == 0 ? 0.0f : (float)m_numMisses / (float)numVertices);
+	}
+
+	// Look the vertex up in the cache, adding it if it misses.
+	private void fetch(int v)
+	{
+		m_numIndices++;
+		if (v >= 0) m_vertices.set(v);
+		if (! m_cache.inCache(v))
+		{
+			m_numMisses++;
+			m_cache.addEntry(v);
+		}
+	}
+}
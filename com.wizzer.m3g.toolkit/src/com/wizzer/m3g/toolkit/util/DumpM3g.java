@@ -199,7 +199,7 @@ public class DumpM3g
 		println("************************************************************");
 		println("******************* External References ********************");
 		println("************************************************************");
-		println("Current Working Directory: " + ExternalReference.getCwd());
+		println("Current Working Directory: " + m_m3gFile.getCwd());
 		for (int i = 0; i < refs.length; i++)
 		{
 			String uri = refs[i].getURI();
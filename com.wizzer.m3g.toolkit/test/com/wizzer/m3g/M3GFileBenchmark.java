@@ -0,0 +1,153 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class benchmarks the time it takes to load Mobile 3D Graphics
+ * files with <code>M3GFile</code>.
+ * <p>
+ * If no files are specified on the command line, two large files (one
+ * uncompressed and one ZLIB compressed) are synthesized in the temporary
+ * directory and used instead.
+ * </p><p>
+ * Usage: <code>M3GFileBenchmark [-n iterations] [-map] [file ...]</code>
+ * </p><p>
+ * The <code>-map</code> option loads the files with <code>M3GFile.map</code>
+ * instead of the <code>M3GFile(File)</code> constructor.
+ * </p>
+ */
+public class M3GFileBenchmark
+{
+	// The default number of timed iterations per file.
+	private static final int DEFAULT_ITERATIONS = 10;
+	// The number of vertex arrays in a synthesized file.
+	private static final int SYNTHETIC_ARRAYS = 64;
+	// The number of vertices in each synthesized vertex array.
+	private static final int SYNTHETIC_VERTICES = 65535;
+
+	// Flag indicating whether to memory-map the files.
+	private static boolean g_map = false;
+
+	/**
+	 * The main entry point for the benchmark.
+	 * 
+	 * @param args The command-line arguments.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int iterations = DEFAULT_ITERATIONS;
+		ArrayList files = new ArrayList();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-n") && (i + 1 < args.length))
+				iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-map"))
+				g_map = true;
+			else
+				files.add(new File(args[i]));
+		}
+
+		if (files.isEmpty())
+		{
+			files.add(synthesize(Section.UNCOMPRESSED));
+			files.add(synthesize(Section.ZLIB));
+		}
+
+		for (int i = 0; i < files.size(); i++)
+			benchmark((File)files.get(i), iterations);
+	}
+
+	/**
+	 * Time the loading of the specified file.
+	 * 
+	 * @param file The M3G file to load.
+	 * @param iterations The number of timed iterations.
+	 */
+	private static void benchmark(File file, int iterations) throws IOException
+	{
+		// Warm up.
+		load(file);
+
+		long min = Long.MAX_VALUE;
+		long total = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			long start = System.nanoTime();
+			load(file);
+			long elapsed = System.nanoTime() - start;
+			min = Math.min(min, elapsed);
+			total += elapsed;
+		}
+
+		System.out.println(file.getName() + " (" + file.length() + " bytes): min " +
+			(min / 1000000.0) + " ms, avg " + (total / iterations / 1000000.0) + " ms");
+	}
+
+	/**
+	 * Load the specified file.
+	 * 
+	 * @param file The M3G file to load.
+	 */
+	private static M3GFile load(File file) throws IOException
+	{
+		if (g_map)
+			return M3GFile.map(file.toPath());
+		else
+			return new M3GFile(file);
+	}
+
+	/**
+	 * Synthesize a large M3G file consisting of 16-bit vertex arrays.
+	 * 
+	 * @param compressionScheme The compression scheme for the scene section.
+	 * 
+	 * @return The temporary file is returned.
+	 */
+	private static File synthesize(int compressionScheme) throws IOException
+	{
+		Random random = new Random(184);
+		SceneSection scene = new SceneSection();
+		scene.setCompressionScheme(compressionScheme);
+		for (int i = 0; i < SYNTHETIC_ARRAYS; i++)
+		{
+			VertexArray array = new VertexArray(SYNTHETIC_VERTICES, 3, 2);
+			short values[] = new short[SYNTHETIC_VERTICES * 3];
+			for (int j = 0; j < values.length; j++)
+				values[j] = (short)random.nextInt();
+			array.set(0, SYNTHETIC_VERTICES, values);
+			scene.addObject3D(array);
+		}
+
+		M3GFile m3gFile = new M3GFile();
+		m3gFile.addSceneSection(scene);
+		File file = File.createTempFile("benchmark" + compressionScheme, ".m3g");
+		file.deleteOnExit();
+		m3gFile.marshall(file);
+		return file;
+	}
+}
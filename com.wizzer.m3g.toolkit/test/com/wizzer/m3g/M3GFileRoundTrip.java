@@ -0,0 +1,88 @@
+// COPYRIGHT_BEGIN
+//
+// Copyright (C) 2000-2008  Wizzer Works (msm@wizzerworks.com)
+// 
+// This file is part of the M3G Toolkit.
+//
+// The M3G Toolkit is free software; you can redistribute it and/or modify it
+// under the terms of the GNU Lesser General Public License as published by the Free
+// Software Foundation; either version 2 of the License, or (at your option)
+// any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT
+// ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+// FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for
+// more details.
+//
+// You should have received a copy of the GNU Lesser General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+//
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.m3g;
+
+// Import standard Java classes.
+import java.io.*;
+
+/**
+ * This class checks that saving a Mobile 3D Graphics file loaded with
+ * <code>LOAD_KEEP_ENCODED</code> is stable: the file is loaded and saved,
+ * and the saved file loaded and saved again, and both saves must have the
+ * same size.
+ * <p>
+ * The saved files are written next to the original, so that its external
+ * references resolve the same way, and are deleted afterwards.
+ * </p><p>
+ * Usage: <code>M3GFileRoundTrip file ...</code>
+ * </p>
+ */
+public class M3GFileRoundTrip
+{
+	/**
+	 * The main entry point for the check.
+	 * 
+	 * @param args The files to check.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int failures = 0;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (! check(new File(args[i])))
+				failures++;
+		}
+		if (failures > 0)
+		{
+			System.out.println(failures + " file(s) changed size when saved again");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Save the specified file twice, through a reload.
+	 * 
+	 * @param file The M3G file to check.
+	 * 
+	 * @return <b>true</b> is returned if both saves have the same size.
+	 */
+	private static boolean check(File file) throws IOException
+	{
+		File first = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".roundtrip1");
+		File second = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".roundtrip2");
+		try
+		{
+			M3GFile.map(file.toPath(), M3GFile.LOAD_KEEP_ENCODED).marshall(first);
+			M3GFile.map(first.toPath(), M3GFile.LOAD_KEEP_ENCODED).marshall(second);
+			boolean same = (first.length() == second.length());
+			System.out.println(file.getName() + ": " + first.length() + " bytes, then " +
+				second.length() + " bytes" + (same ? "" : " (FAILED)"));
+			return same;
+		} finally
+		{
+			first.delete();
+			second.delete();
+		}
+	}
+}
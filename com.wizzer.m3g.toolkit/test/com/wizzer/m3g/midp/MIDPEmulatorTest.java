@@ -155,7 +155,15 @@ public class MIDPEmulatorTest
 			// Load the file. The returned objects are guaranteed
 			// to be a root node; however, there is no guarantee
 			// what order they will be returned in.
-			Object3D[] objects = Loader.load(filename);
+			Object3D[] objects = new Object3D[0];
+			try
+			{
+				objects = Loader.load(filename);
+			} catch (IOException ex)
+			{
+				Logger.global.logp(Level.WARNING, "com.wizzer.m3g.midp.MIDPEmulatorTest",
+					"main(String[] args)", ex.getMessage());
+			}
 			
 		    // Find the World object;
 		    Object3D root = null;
@@ -116,7 +116,7 @@ public class ExternalReferencePropertySource implements IPropertySource
 			return m_reference.getURI();
 		} else if (id.equals(PROPERTY_EXTERNALREFERENCE_CWD))
 		{
-			return ExternalReference.getCwd();
+			return m_reference.getBase();
 		} else
 		    return null;
 	}